@@ -18,7 +18,9 @@ package cl.io.gateway;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,6 +31,7 @@ import cl.io.gateway.classloader.GatewayClassLoader;
 import cl.io.gateway.exception.GatewayProcessException;
 import cl.io.gateway.messaging.GatewayMessageContext;
 import cl.io.gateway.messaging.IGatewayMessageHandler;
+import cl.io.gateway.messaging.MessageExecution;
 import cl.io.gateway.messaging.NetworkServiceSource;
 import cl.io.gateway.network.NetworkMessage;
 import cl.io.gateway.network.driver.exception.NetworkDriverException;
@@ -59,9 +62,9 @@ public abstract class AbstractGateway<I, E extends InternalElement<I>> implement
             // Add anotated message handlers
             for (Map.Entry<String, MethodParameterType> messageHandler : this.element.getEventMethodMap().entrySet()) {
                 // Add listener for event
-                this.gateway.addMessageHandler(
-                        messageHandler.getKey(), this.createHandler(messageHandler.getKey(),
-                                messageHandler.getValue().getParameterType(), messageHandler.getValue().getMethod()),
+                this.gateway.addMessageHandler(messageHandler.getKey(), messageHandler.getValue().getParameterType(),
+                        this.createHandler(messageHandler.getKey(), messageHandler.getValue().getParameterType(),
+                                messageHandler.getValue().getMethod(), messageHandler.getValue().getExecution()),
                         messageHandler.getValue().getOrigins());
             }
         }
@@ -90,11 +93,24 @@ public abstract class AbstractGateway<I, E extends InternalElement<I>> implement
         if (this.eventsHandlerMap.containsKey(event)) {
             throw new GatewayProcessException("Event '" + event + "' is already associated with another handler");
         }
-        final InternalMessageHandler<T> internalHandler = new InternalMessageHandler<T>(event, handler);
+        final InternalMessageHandler<T> internalHandler = new InternalMessageHandler<T>(event, handler,
+                this.getExecutor(this.element.getExecution()));
         this.eventsHandlerMap.put(event, internalHandler);
         this.gateway.addMessageHandler(event, internalHandler);
     }
 
+    @Override
+    public <T> void addMessageHandler(String event, Class<T> messageType, IGatewayMessageHandler<T> handler)
+            throws GatewayProcessException {
+        if (this.eventsHandlerMap.containsKey(event)) {
+            throw new GatewayProcessException("Event '" + event + "' is already associated with another handler");
+        }
+        final InternalMessageHandler<T> internalHandler = new InternalMessageHandler<T>(event, handler,
+                this.getExecutor(this.element.getExecution()));
+        this.eventsHandlerMap.put(event, internalHandler);
+        this.gateway.addMessageHandler(event, messageType, internalHandler, NetworkServiceSource.values());
+    }
+
     @Override
     public void removeMessageHandler(String event) throws GatewayProcessException {
         final InternalMessageHandler<?> internalHandler = this.eventsHandlerMap.get(event);
@@ -112,6 +128,18 @@ public abstract class AbstractGateway<I, E extends InternalElement<I>> implement
         this.gateway.sendMessage(client, message, origin);
     }
 
+    @Override
+    public <T> void forwardMessage(IGatewayClientSession client, NetworkMessage<T> message)
+            throws NetworkDriverException {
+        this.gateway.forwardMessage(client, message);
+    }
+
+    @Override
+    public <T, R> CompletableFuture<NetworkMessage<R>> request(IGatewayClientSession client, NetworkMessage<T> message,
+            long timeout, TimeUnit unit) {
+        return this.gateway.request(client, message, timeout, unit);
+    }
+
     @Override
     public XProperties getProperties(String propertyFileName) throws IOException {
         GatewayClassLoader ccl = this.gateway.getEnvironmentReader().getPropertiesInicializer().getResourcesLoader()
@@ -120,12 +148,18 @@ public abstract class AbstractGateway<I, E extends InternalElement<I>> implement
                 this.element.getInstanceableClass());
     }
 
-    <T> IGatewayMessageHandler<T> createHandler(final String event, final Class<T> messageType, final Method method) {
-        final InternalMessageHandler<T> internalHandler = new InternalMessageHandler<T>(event, messageType, method);
+    <T> IGatewayMessageHandler<T> createHandler(final String event, final Class<T> messageType, final Method method,
+            final MessageExecution execution) {
+        final InternalMessageHandler<T> internalHandler = new InternalMessageHandler<T>(event, messageType, method,
+                this.getExecutor(execution));
         this.eventsHandlerMap.put(event, internalHandler);
         return internalHandler;
     }
 
+    private OrderedMessageExecutor getExecutor(final MessageExecution execution) {
+        return this.gateway.getMessageExecutors().getExecutor(execution);
+    }
+
     public Gateway getGateway() {
         return gateway;
     }
@@ -166,24 +200,63 @@ public abstract class AbstractGateway<I, E extends InternalElement<I>> implement
 
         final IGatewayMessageHandler<T> handler;
 
-        public InternalMessageHandler(final String event, final Class<T> messageType, final Method method) {
+        /**
+         * executor of the handler, null if it runs in the network thread
+         */
+        final OrderedMessageExecutor executor;
+
+        public InternalMessageHandler(final String event, final Class<T> messageType, final Method method,
+                final OrderedMessageExecutor executor) {
             this.reflection = true;
             this.event = event;
             this.messageType = messageType;
             this.method = method;
             this.handler = null;
+            this.executor = executor;
         }
 
-        public InternalMessageHandler(final String event, final IGatewayMessageHandler<T> handler) {
+        public InternalMessageHandler(final String event, final IGatewayMessageHandler<T> handler,
+                final OrderedMessageExecutor executor) {
             this.reflection = false;
             this.event = event;
             this.handler = handler;
             this.method = null;
             this.messageType = null;
+            this.executor = executor;
         }
 
         @Override
-        public void onMessage(NetworkMessage<T> message, IGatewayClientSession clientSession) throws Exception {
+        public void onMessage(final NetworkMessage<T> message, final IGatewayClientSession clientSession)
+                throws Exception {
+            if (this.executor == null) {
+                this.process(message, clientSession);
+                return;
+            }
+            // el mensaje se retiene hasta que el handler termina en el otro hilo, los mensajes de
+            // cada sesion se procesan en orden de llegada
+            message.retain();
+            try {
+                this.executor.execute(message.getOriginChannelId(), new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            process(message, clientSession);
+                        } catch (Throwable e) {
+                            logger.error("Error processing message " + message + " with " + InternalMessageHandler.this,
+                                    e);
+                        } finally {
+                            message.release();
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                message.release();
+                throw e;
+            }
+        }
+
+        private void process(NetworkMessage<T> message, IGatewayClientSession clientSession) throws Exception {
             // Create new session with this gateway implementation
             GatewayClientSession newSession = new GatewayClientSession(AbstractGateway.this,
                     (GatewayClientSession) clientSession);
@@ -207,6 +280,8 @@ public abstract class AbstractGateway<I, E extends InternalElement<I>> implement
             builder.append(method);
             builder.append(", handler=");
             builder.append(handler);
+            builder.append(", executor=");
+            builder.append(executor != null);
             builder.append("]");
             return builder.toString();
         }
@@ -42,6 +42,7 @@ import cl.io.gateway.messaging.GatewayMessageContext;
 import cl.io.gateway.messaging.GatewayMessageFilter;
 import cl.io.gateway.messaging.GatewayMessageHandler;
 import cl.io.gateway.messaging.IGatewayMessageFilter;
+import cl.io.gateway.messaging.MessageExecution;
 import cl.io.gateway.messaging.NetworkServiceSource;
 import cl.io.gateway.plugin.GatewayPlugin;
 import cl.io.gateway.plugin.GatewayPluginDefinition;
@@ -215,6 +216,7 @@ public class EnvironmentReader {
                 logger.info("Reading '" + servAttibs.value() + "' represented by class " + clas);
                 final InternalService service = new InternalService(contextId, (Class<IGatewayService>) clas,
                         servAttibs.value());
+                service.setExecution(servAttibs.execution());
                 this.gatewayServicesMap.put(servAttibs.value(), service);
                 // Search gateway message handlers
                 this.searchForMessagesHandlers(clas, service, ccl);
@@ -292,6 +294,9 @@ public class EnvironmentReader {
                         + GatewayMessageHandler.class + " must have associated an event (value). Check "
                         + clas.getName() + " gateway service");
             }
+            // el handler sin ejecucion propia usa la de su servicio
+            final MessageExecution execution = handler.execution() == MessageExecution.DEFAULT
+                    ? element.getExecution() : handler.execution();
             if (method.getParameterCount() == 1
                     && method.getParameterTypes()[0].isAssignableFrom(GatewayMessageContext.class)) {
                 logger.info(
@@ -300,7 +305,7 @@ public class EnvironmentReader {
                         new MethodParameterType(method, ccl.loadClass(
                                 ((ParameterizedType) method.getGenericParameterTypes()[0]).getActualTypeArguments()[0]
                                         .getTypeName()),
-                                origins));
+                                origins, execution));
             } else {
                 throw new GatewayInitilizationException(
                         "Method '" + method + "' with anootation " + GatewayMessageHandler.class
@@ -18,8 +18,10 @@ package cl.io.gateway;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +46,11 @@ class Gateway {
 
     private final Map<String, InternalGatewayService> gatewayServicesMap;
 
+    /**
+     * Executors of the message handlers that don't run in the network threads
+     */
+    private final GatewayMessageExecutors messageExecutors;
+
     private static Gateway instance = null;
 
     public static Gateway createInstance(final EnvironmentReader environment) {
@@ -67,6 +74,7 @@ class Gateway {
         this.networkServiceManagerMap = new ConcurrentHashMap<String, NetworkServiceManager>();
         this.gatewayServicesMap = new ConcurrentHashMap<String, InternalGatewayService>();
         this.gatewayPluginsMap = new ConcurrentHashMap<String, InternalGatewayPlugin>();
+        this.messageExecutors = environment.getPropertiesInicializer().createMessageExecutors();
     }
 
     public void load() throws Exception {
@@ -139,6 +147,10 @@ class Gateway {
         return this.environment;
     }
 
+    GatewayMessageExecutors getMessageExecutors() {
+        return this.messageExecutors;
+    }
+
     InternalGatewayPlugin getPlugin(String pluginId) {
         return this.gatewayPluginsMap.get(pluginId);
     }
@@ -158,6 +170,27 @@ class Gateway {
         }
     }
 
+    public <T> void forwardMessage(IGatewayClientSession client, NetworkMessage<T> message)
+            throws NetworkDriverException {
+        final NetworkServiceManager net = this.networkServiceManagerMap.get(client.getOrigin().name());
+        if (net == null) {
+            throw new NetworkDriverException("There is no network service for " + client.getOrigin() + " origin");
+        }
+        net.forwardNetworkMessage(client, message);
+    }
+
+    public <T, R> CompletableFuture<NetworkMessage<R>> request(IGatewayClientSession client,
+            NetworkMessage<T> message, long timeout, TimeUnit unit) {
+        final NetworkServiceManager net = this.networkServiceManagerMap.get(client.getOrigin().name());
+        if (net == null) {
+            final CompletableFuture<NetworkMessage<R>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(
+                    new GatewayProcessException("There is no network service for " + client.getOrigin() + " origin"));
+            return failed;
+        }
+        return net.requestNetworkMessage(client, message, timeout, unit);
+    }
+
     public <T> void addMessageHandler(String event, IGatewayMessageHandler<T> handler) throws GatewayProcessException {
         this.addMessageHandler(event, handler, NetworkServiceSource.values());
     }
@@ -173,6 +206,17 @@ class Gateway {
         }
     }
 
+    public <T> void addMessageHandler(String event, Class<T> messageType, IGatewayMessageHandler<T> handler,
+            NetworkServiceSource... origin) throws GatewayProcessException {
+        for (NetworkServiceSource o : origin) {
+            NetworkServiceManager net = this.networkServiceManagerMap.get(o.name());
+            if (net == null) {
+                continue;
+            }
+            net.addMessageHandler(event, messageType, handler);
+        }
+    }
+
     public void removeMessageHandler(String event) throws GatewayProcessException {
         this.removeMessageHandler(event, NetworkServiceSource.values());
     }
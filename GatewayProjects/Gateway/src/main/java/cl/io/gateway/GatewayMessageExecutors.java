@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cl.io.gateway.messaging.MessageExecution;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Executors of the gateway message handlers that don't run in the network
+ * threads. The pool is bounded: when its queue is full the handler runs in the
+ * network thread, slowing down the reads of the connections instead of
+ * accumulating messages.
+ *
+ * The messages of each client session are executed in order of arrival, the
+ * sessions are executed in parallel.
+ *
+ * @author egacl
+ */
+public class GatewayMessageExecutors {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayMessageExecutors.class);
+
+    private final ThreadPoolExecutor pool;
+
+    private final ExecutorService virtual;
+
+    private final OrderedMessageExecutor orderedPool;
+
+    private final OrderedMessageExecutor orderedVirtual;
+
+    public GatewayMessageExecutors(final int poolThreads, final int poolQueueSize) {
+        this.pool = new ThreadPoolExecutor(poolThreads, poolThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(poolQueueSize), new DefaultThreadFactory("gateway-handler", true),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.pool.allowCoreThreadTimeOut(true);
+        this.virtual = newVirtualThreadPerTaskExecutor();
+        this.orderedPool = new OrderedMessageExecutor(this.pool);
+        this.orderedVirtual = this.virtual == null ? this.orderedPool : new OrderedMessageExecutor(this.virtual);
+    }
+
+    /**
+     * @param execution
+     *            handler execution
+     * @return executor of the handler or null if it runs in the network thread
+     */
+    public OrderedMessageExecutor getExecutor(final MessageExecution execution) {
+        switch (execution) {
+        case POOL:
+            return this.orderedPool;
+        case VIRTUAL:
+            if (this.virtual == null) {
+                logger.warn("Virtual threads are not supported by this java runtime, the handler pool is used");
+            }
+            return this.orderedVirtual;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Virtual threads are created by reflection, they are available since java 21
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("GatewayMessageExecutors [pool=");
+        builder.append(pool);
+        builder.append(", virtual=");
+        builder.append(virtual != null);
+        builder.append(", orderedPool=");
+        builder.append(orderedPool);
+        builder.append("]");
+        return builder.toString();
+    }
+}
@@ -23,6 +23,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import cl.io.gateway.messaging.MessageExecution;
 import cl.io.gateway.messaging.NetworkServiceSource;
 
 @SuppressWarnings("rawtypes")
@@ -38,6 +39,11 @@ public abstract class InternalElement<T> {
 
     private final List<PluginField> pluginFieldsList;
 
+    /**
+     * Execution of the element message handlers that don't define their own
+     */
+    private MessageExecution execution = MessageExecution.INLINE;
+
     public InternalElement(String contextId, Class<T> instanceableClass, String gatewayId) {
         this.contextId = contextId;
         this.instanceableClass = instanceableClass;
@@ -66,6 +72,14 @@ public abstract class InternalElement<T> {
         return pluginFieldsList;
     }
 
+    public MessageExecution getExecution() {
+        return execution;
+    }
+
+    public void setExecution(MessageExecution execution) {
+        this.execution = execution;
+    }
+
     public static class PluginField<T> {
 
         private final Field field;
@@ -114,10 +128,14 @@ public abstract class InternalElement<T> {
 
         private final NetworkServiceSource[] origins;
 
-        public MethodParameterType(final Method method, final Class<T> parameterType, NetworkServiceSource[] origins) {
+        private final MessageExecution execution;
+
+        public MethodParameterType(final Method method, final Class<T> parameterType, NetworkServiceSource[] origins,
+                MessageExecution execution) {
             this.method = method;
             this.parameterType = parameterType;
             this.origins = origins;
+            this.execution = execution;
         }
 
         public Method getMethod() {
@@ -132,6 +150,10 @@ public abstract class InternalElement<T> {
             return origins;
         }
 
+        public MessageExecution getExecution() {
+            return execution;
+        }
+
         @Override
         public String toString() {
             StringBuilder builder = new StringBuilder();
@@ -141,6 +163,8 @@ public abstract class InternalElement<T> {
             builder.append(parameterType);
             builder.append(", origins=");
             builder.append(Arrays.toString(origins));
+            builder.append(", execution=");
+            builder.append(execution);
             builder.append("]");
             return builder.toString();
         }
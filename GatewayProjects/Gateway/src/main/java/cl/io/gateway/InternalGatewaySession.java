@@ -27,6 +27,13 @@ public class InternalGatewaySession {
 
     private AuthenticationStatus status;
 
+    /**
+     * Etapas pendientes de los mensajes recibidos y enviados de la sesion
+     */
+    private final SessionStageQueue inboundStages = new SessionStageQueue();
+
+    private final SessionStageQueue outboundStages = new SessionStageQueue();
+
     public InternalGatewaySession(final GatewayClient client) {
         this.client = client;
     }
@@ -46,6 +53,14 @@ public class InternalGatewaySession {
         this.status = status;
     }
 
+    public SessionStageQueue getInboundStages() {
+        return inboundStages;
+    }
+
+    public SessionStageQueue getOutboundStages() {
+        return outboundStages;
+    }
+
     public GatewayClientSession toPublicSession(NetworkServiceSource origin) {
         return new GatewayClientSession(client, status, origin);
     }
@@ -15,13 +15,20 @@
  */
 package cl.io.gateway;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +37,7 @@ import cl.io.gateway.auth.AuthenticationStatus;
 import cl.io.gateway.auth.IAuthenticationGatewayNetworkService;
 import cl.io.gateway.auth.IAuthenticationStatusListener;
 import cl.io.gateway.exception.GatewayProcessException;
+import cl.io.gateway.messaging.IAsyncGatewayMessageFilter;
 import cl.io.gateway.messaging.IGatewayMessageFilter;
 import cl.io.gateway.messaging.IGatewayMessageHandler;
 import cl.io.gateway.messaging.IGatewayNetworkService;
@@ -37,7 +45,9 @@ import cl.io.gateway.messaging.NetworkServiceSource;
 import cl.io.gateway.network.IDeliveryStatusListener;
 import cl.io.gateway.network.INetworkService;
 import cl.io.gateway.network.NetworkConfiguration;
+import cl.io.gateway.network.NetworkEventTable;
 import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessageTypeRegistry;
 import cl.io.gateway.network.NetworkService;
 import cl.io.gateway.network.driver.exception.NetworkDriverException;
 import cl.io.gateway.network.handler.INetworkEventListener;
@@ -49,6 +59,13 @@ public class NetworkServiceManager implements IGatewayNetworkService, IAuthentic
 
     private static final Logger logger = LoggerFactory.getLogger(NetworkServiceManager.class);
 
+    /**
+     * Resultados de los filtros, compartidos por todos los mensajes
+     */
+    private static final CompletableFuture<Boolean> ACCEPTED = CompletableFuture.completedFuture(Boolean.TRUE);
+
+    private static final CompletableFuture<Boolean> REJECTED = CompletableFuture.completedFuture(Boolean.FALSE);
+
     /**
      * Instancia a gateway
      */
@@ -65,14 +82,24 @@ public class NetworkServiceManager implements IGatewayNetworkService, IAuthentic
     private final ConcurrentMap<String, InternalGatewaySession> connectedClientsMap;
 
     /**
-     * Mapa de handlers de aplicaciones/servicios para eventos de mensajeria de red
+     * Tabla de handlers de aplicaciones/servicios para eventos de mensajeria de
+     * red, indexada por id de evento
+     */
+    private final NetworkEventTable<IGatewayMessageHandler<?>> eventSubscriptionTable;
+
+    /**
+     * Tabla de filtros de red para los diferentes eventos enviados y recibidos,
+     * indexada por id de evento. Los arreglos de filtros estan ordenados por
+     * prioridad y no se modifican, cada cambio publica un nuevo arreglo por lo que
+     * los mensajes se filtran sin bloqueos
      */
-    private final ConcurrentMap<String, IGatewayMessageHandler<?>> eventSubscriptionMap;
+    private final NetworkEventTable<InternalMessageFilter<?>[]> eventFiltersTable;
 
     /**
-     * Mapa de filtros de red para los diferentes eventos enviados y recibidos.
+     * Eventos permitidos durante el proceso de autenticacion, indexados por id de
+     * evento
      */
-    private final ConcurrentMap<String, List<InternalMessageFilter<?>>> eventFiltersMap;
+    private final NetworkEventTable<Boolean> protocolEventsTable;
 
     /**
      * Listado que contiene handlers para eventos de estado de conexion de sesiones
@@ -86,15 +113,27 @@ public class NetworkServiceManager implements IGatewayNetworkService, IAuthentic
 
     private final NetworkServiceSource origin;
 
+    /**
+     * Tipos de los mensajes de cada evento, usados para decodificar los mensajes
+     */
+    private final NetworkMessageTypeRegistry messageTypes;
+
     public NetworkServiceManager(final Gateway gateway, NetworkConfiguration clientNetConf,
             InternalGatewayAuthenticationService authenticationService) {
         this.gateway = gateway;
         this.networkService = new NetworkService(clientNetConf);
+        this.messageTypes = clientNetConf.getMessageTypes();
         this.authenticationService = authenticationService;
         this.origin = this.authenticationService.getOrigin();
         this.connectedClientsMap = new ConcurrentHashMap<String, InternalGatewaySession>(100, 0.6F);
-        this.eventSubscriptionMap = new ConcurrentHashMap<String, IGatewayMessageHandler<?>>(100, 0.6F);
-        this.eventFiltersMap = new ConcurrentHashMap<String, List<InternalMessageFilter<?>>>(50, 0.8F);
+        this.eventSubscriptionTable = new NetworkEventTable<>(clientNetConf.getEventDictionary());
+        this.eventFiltersTable = new NetworkEventTable<>(clientNetConf.getEventDictionary());
+        this.protocolEventsTable = new NetworkEventTable<>(clientNetConf.getEventDictionary());
+        if (this.authenticationService.getProtocolEvents() != null) {
+            for (String event : this.authenticationService.getProtocolEvents()) {
+                this.protocolEventsTable.put(event, Boolean.TRUE);
+            }
+        }
         this.authenticationStatusHandlerList = new LinkedList<IAuthenticationStatusListener>();
     }
 
@@ -128,17 +167,26 @@ public class NetworkServiceManager implements IGatewayNetworkService, IAuthentic
     @Override
     public <T> void addMessageHandler(final String event, final IGatewayMessageHandler<T> handler)
             throws GatewayProcessException {
-        IGatewayMessageHandler<T> eventSubs = (IGatewayMessageHandler<T>) this.eventSubscriptionMap.get(event);
-        if (eventSubs == null) {
+        this.addMessageHandler(event, null, handler);
+    }
+
+    @Override
+    public <T> void addMessageHandler(final String event, final Class<T> messageType,
+            final IGatewayMessageHandler<T> handler) throws GatewayProcessException {
+        if (this.eventSubscriptionTable.putIfAbsent(event, handler) == null) {
             // se agrega handler para gateway y para servicio de mensajeria de red
-            this.eventSubscriptionMap.put(event, handler);
-            this.networkService.addMessageHandler(event, new INetworkMessageHandler<T>() {
+            final INetworkMessageHandler<T> networkHandler = new INetworkMessageHandler<T>() {
 
                 @Override
                 public void onMessage(final NetworkMessage<T> message) throws Exception {
                     NetworkServiceManager.this.processNetworkMessage(message);
                 }
-            });
+            };
+            if (messageType != null) {
+                this.networkService.addMessageHandler(event, messageType, networkHandler);
+            } else {
+                this.networkService.addMessageHandler(event, networkHandler);
+            }
         } else {
             throw new GatewayProcessException("There is already a handler for event '" + event + "'");
         }
@@ -146,7 +194,7 @@ public class NetworkServiceManager implements IGatewayNetworkService, IAuthentic
 
     @Override
     public void removeMessageHandler(final String event) {
-        if (this.eventSubscriptionMap.remove(event) != null) {
+        if (this.eventSubscriptionTable.remove(event) != null) {
             this.networkService.removeMessageHandler(event);
         }
     }
@@ -160,13 +208,162 @@ public class NetworkServiceManager implements IGatewayNetworkService, IAuthentic
     @Override
     public <T> void sendNetworkMessage(final IGatewayClientSession session, final NetworkMessage<T> message,
             final IDeliveryStatusListener deliveryStatus) throws NetworkDriverException {
+        this.filterAndSend(session, message, deliveryStatus, false);
+    }
+
+    @Override
+    public <T> void forwardNetworkMessage(final IGatewayClientSession session, final NetworkMessage<T> message)
+            throws NetworkDriverException {
+        this.forwardNetworkMessage(session, message, null);
+    }
+
+    @Override
+    public <T> void forwardNetworkMessage(final IGatewayClientSession session, final NetworkMessage<T> message,
+            final IDeliveryStatusListener deliveryStatus) throws NetworkDriverException {
+        // si un filtro modifica el mensaje se codifica nuevamente
+        this.filterAndSend(session, message, deliveryStatus, true);
+    }
+
+    @Override
+    public <T, R> CompletableFuture<NetworkMessage<R>> requestNetworkMessage(final IGatewayClientSession session,
+            final NetworkMessage<T> message, final long timeout, final TimeUnit unit) {
+        final CompletableFuture<NetworkMessage<R>> response = new CompletableFuture<>();
         // Se filtra el mensaje
-        boolean filterResponse = this.filterMessage(message, session, false);
-        if (filterResponse) {
+        final CompletableFuture<Boolean> filterResponse = this.filterInOrder(this.getOutboundStages(session),
+                message, session, false, new Consumer<Boolean>() {
+
+                    @Override
+                    public void accept(final Boolean accepted) {
+                        NetworkServiceManager.this.<T, R> request(session, message, timeout, unit, accepted)
+                                .whenComplete(new BiConsumer<NetworkMessage<R>, Throwable>() {
+
+                                    @Override
+                                    public void accept(final NetworkMessage<R> result, final Throwable err) {
+                                        if (err != null) {
+                                            response.completeExceptionally(err);
+                                        } else {
+                                            response.complete(result);
+                                        }
+                                    }
+                                });
+                    }
+                });
+        if (filterResponse != null) {
+            return this.request(session, message, timeout, unit, filterResponse.join());
+        }
+        return response;
+    }
+
+    private <T, R> CompletableFuture<NetworkMessage<R>> request(final IGatewayClientSession session,
+            final NetworkMessage<T> message, final long timeout, final TimeUnit unit, final boolean accepted) {
+        if (!accepted) {
+            final CompletableFuture<NetworkMessage<R>> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new GatewayProcessException("Filters rejects this message"));
+            return rejected;
+        }
+        return this.networkService.request(session.getClient().getChannelID(), message, timeout, unit);
+    }
+
+    private <T> void filterAndSend(final IGatewayClientSession session, final NetworkMessage<T> message,
+            final IDeliveryStatusListener deliveryStatus, final boolean forward) throws NetworkDriverException {
+        // Se filtra el mensaje
+        final CompletableFuture<Boolean> filterResponse = this.filterInOrder(this.getOutboundStages(session),
+                message, session, false, new Consumer<Boolean>() {
+
+                    @Override
+                    public void accept(final Boolean accepted) {
+                        try {
+                            NetworkServiceManager.this.send(session, message, deliveryStatus, forward, accepted);
+                        } catch (Throwable e) {
+                            logger.error("Error sending message: " + message + " to client " + session, e);
+                            if (deliveryStatus != null) {
+                                deliveryStatus.error(session.getClient().getChannelID(), message, e);
+                            }
+                        }
+                    }
+                });
+        if (filterResponse != null) {
+            this.send(session, message, deliveryStatus, forward, filterResponse.join());
+        }
+    }
+
+    private SessionStageQueue getOutboundStages(final IGatewayClientSession session) {
+        final InternalGatewaySession internalSession = this.connectedClientsMap
+                .get(session.getClient().getChannelID());
+        return internalSession == null ? null : internalSession.getOutboundStages();
+    }
+
+    /**
+     * Filtra el mensaje manteniendo el orden de los mensajes de la sesion. Si la
+     * sesion no tiene etapas pendientes y los filtros responden de inmediato se
+     * retorna su resultado y el llamador procesa el mensaje en este hilo. En otro
+     * caso el mensaje se retiene, ocupa su lugar en las etapas de la sesion y la
+     * accion se ejecuta cuando terminan los mensajes anteriores de la sesion y
+     * sus filtros.
+     *
+     * @param stages
+     *            etapas de la sesion, null si la sesion no esta registrada
+     * @return resultado de los filtros o null si la accion queda pendiente
+     */
+    private <T> CompletableFuture<Boolean> filterInOrder(final SessionStageQueue stages,
+            final NetworkMessage<T> message, final IGatewayClientSession session, final boolean isRequest,
+            final Consumer<Boolean> action) {
+        final Consumer<Boolean> releasingAction = new Consumer<Boolean>() {
+
+            @Override
+            public void accept(final Boolean accepted) {
+                try {
+                    action.accept(accepted);
+                } finally {
+                    message.release();
+                }
+            }
+        };
+        if (stages == null || stages.isIdle()) {
+            final CompletableFuture<Boolean> filterResponse = this.filterMessage(message, session, isRequest);
+            if (filterResponse.isDone()) {
+                return filterResponse;
+            }
+            // el mensaje se retiene hasta que los filtros asincronos responden
+            message.retain();
+            if (stages == null) {
+                filterResponse.thenAccept(releasingAction);
+            } else {
+                stages.append(new Supplier<CompletableFuture<Void>>() {
+
+                    @Override
+                    public CompletableFuture<Void> get() {
+                        return filterResponse.thenAccept(releasingAction);
+                    }
+                });
+            }
+            return null;
+        }
+        // los filtros se aplican cuando terminan los mensajes anteriores de la sesion
+        message.retain();
+        stages.append(new Supplier<CompletableFuture<Void>>() {
+
+            @Override
+            public CompletableFuture<Void> get() {
+                return NetworkServiceManager.this.filterMessage(message, session, isRequest)
+                        .thenAccept(releasingAction);
+            }
+        });
+        return null;
+    }
+
+    private <T> void send(final IGatewayClientSession session, final NetworkMessage<T> message,
+            final IDeliveryStatusListener deliveryStatus, final boolean forward, final boolean accepted)
+            throws NetworkDriverException {
+        if (!accepted) {
+            if (deliveryStatus != null) {
+                deliveryStatus.error(session.getClient().getChannelID(), message,
+                        new GatewayProcessException("Filters rejects this message"));
+            }
+        } else if (forward) {
+            this.networkService.forward(session.getClient().getChannelID(), message, deliveryStatus);
+        } else {
             this.networkService.send(session.getClient().getChannelID(), message, deliveryStatus);
-        } else if (deliveryStatus != null) {
-            deliveryStatus.error(session.getClient().getChannelID(), message,
-                    new GatewayProcessException("Filters rejects this message"));
         }
     }
 
@@ -196,20 +393,36 @@ public class NetworkServiceManager implements IGatewayNetworkService, IAuthentic
 
     private <T> void processNetworkMessage(final NetworkMessage<T> message) throws Exception {
         final InternalGatewaySession session = this.connectedClientsMap.get(message.getOriginChannelId());
-        final IGatewayMessageHandler<T> handler = (IGatewayMessageHandler<T>) this.eventSubscriptionMap
-                .get(message.getEvent());
+        final IGatewayMessageHandler<T> handler = (IGatewayMessageHandler<T>) this.eventSubscriptionTable
+                .get(message);
         if (session == null) {
             throw new GatewayProcessException("Message sender is doesn't exists");
         }
         if (handler == null) {
             throw new GatewayProcessException("Message handler is doesn't exists");
         }
-        if (this.isValidToProcessMessage(session, message.getEvent())) {
-            // Se filtra el mensaje
-            boolean filterResponse = this.filterMessage(message, session.toPublicSession(this.origin), true);
+        if (this.isValidToProcessMessage(session, message)) {
+            final IGatewayClientSession publicSession = session.toPublicSession(this.origin);
+            // Se filtra el mensaje, si un filtro responde de forma asincrona el mensaje se entrega al
+            // handler en el hilo que completa sus filtros, despues de los mensajes anteriores de la sesion
+            final CompletableFuture<Boolean> filterResponse = this.filterInOrder(session.getInboundStages(),
+                    message, publicSession, true, new Consumer<Boolean>() {
+
+                        @Override
+                        public void accept(final Boolean accepted) {
+                            try {
+                                if (accepted) {
+                                    handler.onMessage(message, publicSession);
+                                }
+                            } catch (Throwable e) {
+                                logger.error("Error processing message: " + message + " of client " + publicSession,
+                                        e);
+                            }
+                        }
+                    });
             // Se entrega el mensaje al handler para que sea procesado
-            if (filterResponse) {
-                handler.onMessage(message, session.toPublicSession(this.origin));
+            if (filterResponse != null && filterResponse.join()) {
+                handler.onMessage(message, publicSession);
             }
         } else {
             logger.error("Client is not properly authenticated: " + session + ", message: " + message);
@@ -219,50 +432,126 @@ public class NetworkServiceManager implements IGatewayNetworkService, IAuthentic
         }
     }
 
-    private boolean isValidToProcessMessage(final InternalGatewaySession session, final String event) {
+    private boolean isValidToProcessMessage(final InternalGatewaySession session, final NetworkMessage<?> message) {
         if (session.getStatus() == AuthenticationStatus.LOGGED_IN) {
             return true;
         }
         return (session.getStatus() == AuthenticationStatus.PROCESS_LOGGING
-                && this.authenticationService.getProtocolEvents().contains(event));
-    }
-
-    private <T> boolean filterMessage(final NetworkMessage<T> message, final IGatewayClientSession session,
-            final boolean isRequest) {
-        synchronized (this.eventFiltersMap) {
-            // Se obtienen los filtros asociados al evento recibido
-            final List<InternalMessageFilter<?>> filters = this.eventFiltersMap.get(message.getEvent());
-            boolean filterResponse = true;
-            if (filters != null && !filters.isEmpty()) {
-                filterResponse = false;
-                for (final InternalMessageFilter<?> f : filters) {
-                    try {
-                        filterResponse = this.doFilter((IGatewayMessageFilter<T>) f.getFilter(), message, session,
-                                isRequest);
-                        if (logger.isDebugEnabled()) {
-                            logger.debug("Filter priority '" + f.getPriority() + "' for event '" + f.getEvent()
-                                    + "' responses '" + filterResponse + "' for message: " + message);
-                        }
-                    } catch (Throwable e) {
-                        logger.error("Error processing doFilter for event: " + message.getEvent() + ", message: "
-                                + message + " and filter : " + f.getFilter(), e);
-                        filterResponse = false;
-                        try {
-                            this.onError((IGatewayMessageFilter<T>) f.getFilter(), message, session, e);
-                        } catch (Throwable ee) {
-                            // oh god!
-                            logger.error("Error processing onError for event: " + message.getEvent() + ", message: "
-                                    + message + " and filter : " + f.getFilter(), ee);
+                && this.protocolEventsTable.get(message) != null);
+    }
+
+    /**
+     * Aplica los filtros del evento en orden de prioridad. Si todos los filtros
+     * son sincronos o los filtros asincronos ya respondieron el resultado esta
+     * completo al retornar, en otro caso la cadena continua cuando responde cada
+     * filtro asincrono. El resultado nunca se completa con error.
+     */
+    private <T> CompletableFuture<Boolean> filterMessage(final NetworkMessage<T> message,
+            final IGatewayClientSession session, final boolean isRequest) {
+        // Se obtienen los filtros asociados al evento recibido
+        final InternalMessageFilter<?>[] filters = this.eventFiltersTable.get(message);
+        if (filters == null) {
+            return ACCEPTED;
+        }
+        return this.filterMessage(message, session, isRequest, filters, 0);
+    }
+
+    private <T> CompletableFuture<Boolean> filterMessage(final NetworkMessage<T> message,
+            final IGatewayClientSession session, final boolean isRequest, final InternalMessageFilter<?>[] filters,
+            final int from) {
+        for (int i = from; i < filters.length; i++) {
+            final InternalMessageFilter<?> f = filters[i];
+            final IGatewayMessageFilter<T> filter = (IGatewayMessageFilter<T>) f.getFilter();
+            if (filter instanceof IAsyncGatewayMessageFilter) {
+                final CompletableFuture<Boolean> response = this.doFilterAsync(f,
+                        (IAsyncGatewayMessageFilter<T>) filter, message, session, isRequest);
+                if (!response.isDone()) {
+                    final int next = i + 1;
+                    return response.thenCompose(new Function<Boolean, CompletableFuture<Boolean>>() {
+
+                        @Override
+                        public CompletableFuture<Boolean> apply(final Boolean accepted) {
+                            if (accepted) {
+                                return NetworkServiceManager.this.filterMessage(message, session, isRequest, filters,
+                                        next);
+                            }
+                            return REJECTED;
                         }
-                    }
-                    if (!filterResponse) {
-                        logger.error("Ending filters loop for message: " + message + " and client " + session);
-                        break;
-                    }
+                    });
+                }
+                if (!response.join()) {
+                    return REJECTED;
+                }
+            } else {
+                boolean filterResponse;
+                try {
+                    filterResponse = this.onFilterResponse(f, message, session,
+                            this.doFilter(filter, message, session, isRequest), null);
+                } catch (Throwable e) {
+                    filterResponse = this.onFilterResponse(f, message, session, false, e);
+                }
+                if (!filterResponse) {
+                    return REJECTED;
                 }
             }
-            return filterResponse;
         }
+        return ACCEPTED;
+    }
+
+    /**
+     * @return respuesta del filtro asincrono, completada con false si el filtro
+     *         falla
+     */
+    private <T> CompletableFuture<Boolean> doFilterAsync(final InternalMessageFilter<?> f,
+            final IAsyncGatewayMessageFilter<T> filter, final NetworkMessage<T> message,
+            final IGatewayClientSession session, final boolean isRequest) {
+        final CompletableFuture<Boolean> response = new CompletableFuture<>();
+        try {
+            final CompletionStage<Boolean> stage = isRequest ? filter.doFilterRequestAsync(message, session)
+                    : filter.doFilterResponseAsync(message, session);
+            if (stage == null) {
+                throw new NullPointerException("Filter " + filter + " returns a null stage");
+            }
+            stage.whenComplete(new BiConsumer<Boolean, Throwable>() {
+
+                @Override
+                public void accept(final Boolean accepted, final Throwable err) {
+                    final Throwable cause = err instanceof CompletionException && err.getCause() != null
+                            ? err.getCause() : err;
+                    response.complete(NetworkServiceManager.this.onFilterResponse(f, message, session,
+                            Boolean.TRUE.equals(accepted), cause));
+                }
+            });
+        } catch (Throwable e) {
+            response.complete(this.onFilterResponse(f, message, session, false, e));
+        }
+        return response;
+    }
+
+    /**
+     * @return true si el mensaje continua con el siguiente filtro
+     */
+    private <T> boolean onFilterResponse(final InternalMessageFilter<?> f, final NetworkMessage<T> message,
+            final IGatewayClientSession session, final boolean filterResponse, final Throwable e) {
+        if (e != null) {
+            logger.error("Error processing doFilter for event: " + message.getEvent() + ", message: " + message
+                    + " and filter : " + f.getFilter(), e);
+            try {
+                this.onError((IGatewayMessageFilter<T>) f.getFilter(), message, session, e);
+            } catch (Throwable ee) {
+                // oh god!
+                logger.error("Error processing onError for event: " + message.getEvent() + ", message: " + message
+                        + " and filter : " + f.getFilter(), ee);
+            }
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("Filter priority '" + f.getPriority() + "' for event '" + f.getEvent() + "' responses '"
+                    + filterResponse + "' for message: " + message);
+        }
+        if (e != null || !filterResponse) {
+            logger.error("Ending filters loop for message: " + message + " and client " + session);
+            return false;
+        }
+        return true;
     }
 
     private <T> boolean doFilter(final IGatewayMessageFilter<T> filter, final NetworkMessage<T> message,
@@ -296,26 +585,33 @@ public class NetworkServiceManager implements IGatewayNetworkService, IAuthentic
 
     @SuppressWarnings("rawtypes")
     void addMessageFilter(final InternalMessageFilter filter) {
-        synchronized (this.eventFiltersMap) {
-            List<InternalMessageFilter<?>> filtersEvent = this.eventFiltersMap.get(filter.getEvent());
-            if (filtersEvent == null) {
-                filtersEvent = new ArrayList<InternalMessageFilter<?>>();
-                this.eventFiltersMap.put(filter.getEvent(), filtersEvent);
+        // las modificaciones se serializan, la lectura de los filtros no se bloquea
+        synchronized (this.eventFiltersTable) {
+            final InternalMessageFilter<?>[] current = this.eventFiltersTable.get(filter.getEvent());
+            final InternalMessageFilter<?>[] filtersEvent;
+            if (current == null) {
+                filtersEvent = new InternalMessageFilter<?>[] { filter };
+            } else {
+                filtersEvent = Arrays.copyOf(current, current.length + 1);
+                filtersEvent[current.length] = filter;
+                // el ordenamiento es estable, los filtros de igual prioridad mantienen su orden
+                Arrays.sort(filtersEvent, new Comparator<InternalMessageFilter>() {
+
+                    @Override
+                    public int compare(InternalMessageFilter a, InternalMessageFilter b) {
+                        return a.compareTo(b);
+                    }
+                });
             }
-            filtersEvent.add(filter);
-            Collections.sort(filtersEvent, new Comparator<InternalMessageFilter>() {
-
-                @Override
-                public int compare(InternalMessageFilter a, InternalMessageFilter b) {
-                    return a.compareTo(b);
-                }
-            });
+            // el tipo del handler del evento tiene precedencia sobre el tipo del filtro
+            if (filter.getMessageType() != null && filter.getMessageType() != Object.class) {
+                this.messageTypes.registerIfAbsent(filter.getEvent(), filter.getMessageType());
+            }
+            this.eventFiltersTable.put(filter.getEvent(), filtersEvent);
         }
     }
 
     boolean removeMessageFilter(final String event) {
-        synchronized (this.eventFiltersMap) {
-            return this.eventFiltersMap.remove(event) != null;
-        }
+        return this.eventFiltersTable.remove(event) != null;
     }
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor that runs the tasks of the same session (channel identifier) in the
+ * order they are submitted, one at a time, over a shared executor. Tasks of
+ * different sessions run in parallel.
+ *
+ * Each session has a serial queue without locks or own thread, the queue is
+ * drained by one task of the shared executor at a time and is discarded when it
+ * gets empty. If the shared executor rejects the drain because it is full, up
+ * to {@link #MAX_TASKS_PER_DRAIN} tasks run in the submitting thread and the
+ * rest of the drain waits until the executor accepts it; if it was shut down
+ * the queue is discarded.
+ *
+ * @author egacl
+ */
+public class OrderedMessageExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderedMessageExecutor.class);
+
+    /**
+     * Max tasks of a session executed by each drain before yielding the thread
+     * to other sessions
+     */
+    private static final int MAX_TASKS_PER_DRAIN = 64;
+
+    /**
+     * Wait between the attempts to submit a drain to a full shared executor
+     */
+    private static final long RESCHEDULE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Executor executor;
+
+    private final ConcurrentMap<String, SerialQueue> queues = new ConcurrentHashMap<>();
+
+    public OrderedMessageExecutor(final Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Executes the task after the previous tasks of the session.
+     *
+     * @param sessionId
+     *            session identifier, if it is null the task has no order
+     * @param task
+     *            task to execute
+     */
+    public void execute(final String sessionId, final Runnable task) {
+        if (sessionId == null) {
+            this.executor.execute(task);
+            return;
+        }
+        while (true) {
+            SerialQueue queue = this.queues.get(sessionId);
+            if (queue == null) {
+                final SerialQueue newQueue = new SerialQueue(sessionId);
+                queue = this.queues.putIfAbsent(sessionId, newQueue);
+                if (queue == null) {
+                    queue = newQueue;
+                }
+            }
+            if (queue.offer(task)) {
+                return;
+            }
+            // the queue was discarded, wait until it is removed and create a new one
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return number of sessions with pending tasks
+     */
+    public int getActiveSessions() {
+        return this.queues.size();
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    private boolean isShutdown() {
+        return this.executor instanceof ExecutorService && ((ExecutorService) this.executor).isShutdown();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("OrderedMessageExecutor [executor=");
+        builder.append(executor);
+        builder.append(", activeSessions=");
+        builder.append(queues.size());
+        builder.append("]");
+        return builder.toString();
+    }
+
+    /**
+     * Serial queue of a session. The pending counter has the tasks not finished,
+     * the task that increments it from zero schedules the drain. When the drain
+     * finishes all tasks the counter is set to -1 and the queue is discarded.
+     */
+    private final class SerialQueue implements Runnable {
+
+        private final String sessionId;
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger pending = new AtomicInteger();
+
+        SerialQueue(final String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        boolean offer(final Runnable task) {
+            int current;
+            do {
+                current = this.pending.get();
+                if (current < 0) {
+                    return false;
+                }
+            } while (!this.pending.compareAndSet(current, current + 1));
+            this.tasks.offer(task);
+            if (current == 0) {
+                this.schedule();
+            }
+            return true;
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                if (isShutdown()) {
+                    this.retire();
+                    throw e;
+                }
+                // the shared executor is full, one drain runs in the caller thread slowing down the
+                // reads of the connection, the next tasks wait for the shared executor
+                if (this.drain()) {
+                    this.reschedule();
+                }
+            }
+        }
+
+        /**
+         * Submits the drain of the pending tasks, the caller thread waits while the
+         * shared executor is full.
+         */
+        private void reschedule() {
+            while (true) {
+                try {
+                    executor.execute(this);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    if (isShutdown()) {
+                        this.retire();
+                        return;
+                    }
+                    LockSupport.parkNanos(RESCHEDULE_WAIT_NANOS);
+                }
+            }
+        }
+
+        /**
+         * Discards the queue and its tasks, the shared executor was shut down.
+         */
+        private void retire() {
+            this.pending.set(-1);
+            this.tasks.clear();
+            queues.remove(this.sessionId, this);
+        }
+
+        @Override
+        public void run() {
+            while (this.drain()) {
+                // the thread is yielded to other sessions, if the shared executor is full the drain
+                // continues in this thread
+                try {
+                    executor.execute(this);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    if (isShutdown()) {
+                        this.retire();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return true if the session has pending tasks after
+         *         {@link OrderedMessageExecutor#MAX_TASKS_PER_DRAIN} tasks
+         */
+        private boolean drain() {
+            for (int executed = 0; executed < MAX_TASKS_PER_DRAIN; executed++) {
+                Runnable task;
+                // the counter is incremented before the task is added
+                while ((task = this.tasks.poll()) == null) {
+                    Thread.yield();
+                }
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    // the next tasks of the session must run whatever the error of this one is
+                    logger.error("Error executing task of session '" + this.sessionId + "'", e);
+                }
+                if (this.pending.decrementAndGet() == 0) {
+                    if (this.pending.compareAndSet(0, -1)) {
+                        queues.remove(this.sessionId, this);
+                    }
+                    // otherwise a new task scheduled another drain
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
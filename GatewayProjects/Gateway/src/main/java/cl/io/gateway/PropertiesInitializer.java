@@ -25,6 +25,9 @@ import org.slf4j.LoggerFactory;
 import cl.io.gateway.exception.GatewayInitilizationException;
 import cl.io.gateway.messaging.NetworkServiceSource;
 import cl.io.gateway.network.NetworkConfiguration;
+import cl.io.gateway.network.NetworkMessagePriority;
+import cl.io.gateway.network.codec.CompressedMessageCodec;
+import cl.io.gateway.network.codec.CompressionDictionary;
 import cl.io.gateway.network.driver.IEventMessageCodec;
 import cl.io.gateway.network.driver.INetworkDriver;
 import cl.io.gateway.properties.XProperties;
@@ -44,6 +47,13 @@ public class PropertiesInitializer {
 
     private static final String PROP_PATH_SERVICES = "gateway.path.services";
 
+    /*
+     * Pool of the message handlers that don't run in the network threads
+     */
+    private static final String PROP_HANDLER_POOL_THREADS = "gateway.handler.pool.threads";
+
+    private static final String PROP_HANDLER_POOL_QUEUE = "gateway.handler.pool.queue";
+
     /*
      * Network properties
      */
@@ -65,6 +75,84 @@ public class PropertiesInitializer {
 
     private static final String PROP_NET_PATH = "network.path";
 
+    private static final String PROP_NET_MAX_MESSAGE_SIZE = "network.max.message.size";
+
+    /*
+     * Network socket and allocator tuning properties
+     */
+    private static final String PROP_NET_TCP_NODELAY = "network.tcp.nodelay";
+
+    private static final String PROP_NET_SO_SNDBUF = "network.so.sndbuf";
+
+    private static final String PROP_NET_SO_RCVBUF = "network.so.rcvbuf";
+
+    private static final String PROP_NET_SO_BACKLOG = "network.so.backlog";
+
+    private static final String PROP_NET_ALLOCATOR_POOLED = "network.allocator.pooled";
+
+    private static final String PROP_NET_ALLOCATOR_DIRECT = "network.allocator.direct";
+
+    private static final String PROP_NET_RECVBUF_FIXED = "network.recvbuf.fixed";
+
+    private static final String PROP_NET_RECVBUF_MIN = "network.recvbuf.min";
+
+    private static final String PROP_NET_RECVBUF_INITIAL = "network.recvbuf.initial";
+
+    private static final String PROP_NET_RECVBUF_MAX = "network.recvbuf.max";
+
+    private static final String PROP_NET_WATERMARK_LOW = "network.write.watermark.low";
+
+    private static final String PROP_NET_WATERMARK_HIGH = "network.write.watermark.high";
+
+    /*
+     * Network outbound priority properties, comma separated events list
+     */
+    private static final String PROP_NET_PRIORITY_HIGH = "network.priority.high";
+
+    private static final String PROP_NET_PRIORITY_LOW = "network.priority.low";
+
+    /*
+     * Network batch envelope properties
+     */
+    private static final String PROP_NET_BATCH_MAX_MESSAGES = "network.batch.max.messages";
+
+    private static final String PROP_NET_BATCH_MAX_DELAY = "network.batch.max.delay.millis";
+
+    private static final String PROP_NET_BATCH_MAX_BYTES = "network.batch.max.bytes";
+
+    /*
+     * Pool of received messages, released when their handler returns
+     */
+    private static final String PROP_NET_POOLED_MESSAGES = "network.pooled.messages";
+
+    /*
+     * Network codecs negotiated by websocket subprotocol: comma separated names in
+     * preference order and codec class of each one
+     */
+    private static final String PROP_NET_SUBPROTOCOLS = "network.subprotocols";
+
+    private static final String PROP_NET_SUBPROTOCOL_CODEC_PREFIX = "network.subprotocol.";
+
+    /*
+     * Network messages bigger than this number of bytes are compressed by the
+     * codec negotiated with the 'deflate' subprotocol (it is added only if the
+     * threshold is defined, the network codec is not changed)
+     */
+    private static final String PROP_NET_COMPRESSION_THRESHOLD = "network.compression.threshold";
+
+    /*
+     * Compression dictionaries shared by both ends of the links: comma separated
+     * versions in preference order and dictionary file of each one. Every version
+     * is negotiated as a subprotocol
+     */
+    private static final String PROP_NET_COMPRESSION_DICTIONARIES = "network.compression.dictionaries";
+
+    private static final String PROP_NET_COMPRESSION_DICTIONARY_PREFIX = "network.compression.dictionary.";
+
+    private static final String COMPRESSION_SUBPROTOCOL = "deflate";
+
+    private static final String DICTIONARY_SUBPROTOCOL_PREFIX = "deflate-dictionary-";
+
     private final XProperties properties;
 
     private final String gatewayId;
@@ -97,6 +185,12 @@ public class PropertiesInitializer {
         }
     }
 
+    public GatewayMessageExecutors createMessageExecutors() {
+        return new GatewayMessageExecutors(
+                this.properties.getInteger(PROP_HANDLER_POOL_THREADS, Runtime.getRuntime().availableProcessors() * 4),
+                this.properties.getInteger(PROP_HANDLER_POOL_QUEUE, 10000));
+    }
+
     public void loadPlugins() throws Exception {
         logger.info(
                 "Load plugins classpath from directory: " + this.properties.readMandatoryProperty(PROP_PATH_PLUGINS));
@@ -124,16 +218,134 @@ public class PropertiesInitializer {
     }
 
     private NetworkConfiguration getNetworkConfiguration(final XProperties properties) throws Exception {
-        return new NetworkConfiguration(properties.getInteger(PROP_NET_PORT),
+        final NetworkConfiguration configuration = new NetworkConfiguration(properties.getInteger(PROP_NET_PORT),
                 properties.readMandatoryProperty(PROP_NET_PATH)).ip(properties.readMandatoryProperty(PROP_NET_IP))
                         .acceptClients(properties.getBoolean(PROP_NET_ACCEPT_CLIENTS, true))
                         .iddleTimeInSeconds(properties.getInteger(PROP_NET_IDDLE, 10))
                         .maxTimeOuts(properties.getInteger(PROP_NET_MAX_TIMEPOUT, 3))
+                        .maxMessageSize(properties.getInteger(PROP_NET_MAX_MESSAGE_SIZE, 16 * 1024 * 1024))
                         .networkDriver(
                                 this.loadClass(properties.readMandatoryProperty(PROP_NET_DRIVER), INetworkDriver.class))
-                        .addCodec(this
-                                .loadClass(properties.readMandatoryProperty(PROP_NET_CODEC), IEventMessageCodec.class)
-                                .newInstance());
+                        .addCodec(this.loadClass(properties.readMandatoryProperty(PROP_NET_CODEC),
+                                IEventMessageCodec.class).newInstance());
+        this.loadCompressionCodecs(configuration, properties);
+        this.loadSubprotocolCodecs(configuration, properties);
+        this.loadSocketTuning(configuration, properties);
+        this.loadEventPriorities(configuration, properties, PROP_NET_PRIORITY_HIGH, NetworkMessagePriority.HIGH);
+        this.loadEventPriorities(configuration, properties, PROP_NET_PRIORITY_LOW, NetworkMessagePriority.LOW);
+        configuration.batch(properties.getInteger(PROP_NET_BATCH_MAX_MESSAGES, 0),
+                properties.getInteger(PROP_NET_BATCH_MAX_BYTES, 0), properties.getLong(PROP_NET_BATCH_MAX_DELAY, 5L));
+        configuration.pooledMessages(properties.getBoolean(PROP_NET_POOLED_MESSAGES, false));
+        return configuration;
+    }
+
+    /**
+     * Reads the compression codecs, they wrap the network codec and are
+     * negotiated by subprotocol, so clients that don't ask for them (plain json
+     * text clients) keep the network codec. The codec of each dictionary is
+     * preferred to the threshold compression codec, and the links use the first
+     * dictionary version supported by both ends.
+     */
+    private void loadCompressionCodecs(final NetworkConfiguration configuration, final XProperties properties)
+            throws Exception {
+        final Integer threshold = properties.getInteger(PROP_NET_COMPRESSION_THRESHOLD, null);
+        final String[] versions = properties.getStringArray(PROP_NET_COMPRESSION_DICTIONARIES);
+        if (threshold == null && versions == null) {
+            return;
+        }
+        final CompressedMessageCodec codec = new CompressedMessageCodec(configuration.getCodecs().get(0),
+                threshold == null ? CompressedMessageCodec.DEFAULT_THRESHOLD : threshold);
+        if (versions != null) {
+            this.loadCompressionDictionaries(configuration, properties, codec, versions);
+        }
+        if (threshold != null) {
+            configuration.addCodec(COMPRESSION_SUBPROTOCOL, codec);
+        }
+    }
+
+    private void loadCompressionDictionaries(final NetworkConfiguration configuration,
+            final XProperties properties, final CompressedMessageCodec codec, final String[] versions)
+            throws Exception {
+        for (String version : versions) {
+            if (!version.trim().isEmpty()) {
+                codec.withDictionary(CompressionDictionary.load(Integer.parseInt(version.trim()),
+                        properties.readMandatoryProperty(PROP_NET_COMPRESSION_DICTIONARY_PREFIX + version.trim())));
+            }
+        }
+        for (String version : versions) {
+            if (!version.trim().isEmpty()) {
+                configuration.addCodec(DICTIONARY_SUBPROTOCOL_PREFIX + version.trim(),
+                        codec.forDictionary(Integer.parseInt(version.trim())));
+            }
+        }
+    }
+
+    /**
+     * Reads the optional codecs that clients can negotiate by subprotocol.
+     */
+    private void loadSubprotocolCodecs(final NetworkConfiguration configuration, final XProperties properties)
+            throws Exception {
+        final String[] subprotocols = properties.getStringArray(PROP_NET_SUBPROTOCOLS);
+        if (subprotocols == null) {
+            return;
+        }
+        for (String subprotocol : subprotocols) {
+            if (!subprotocol.trim().isEmpty()) {
+                configuration.addCodec(subprotocol.trim(), this.loadClass(
+                        properties.readMandatoryProperty(PROP_NET_SUBPROTOCOL_CODEC_PREFIX + subprotocol.trim()),
+                        IEventMessageCodec.class).newInstance());
+            }
+        }
+    }
+
+    /**
+     * Reads the optional list of events sent with the given outbound priority.
+     */
+    private void loadEventPriorities(final NetworkConfiguration configuration, final XProperties properties,
+            final String property, final NetworkMessagePriority priority) {
+        final String[] events = properties.getStringArray(property);
+        if (events == null) {
+            return;
+        }
+        for (String event : events) {
+            if (!event.trim().isEmpty()) {
+                configuration.eventPriority(event.trim(), priority);
+            }
+        }
+    }
+
+    /**
+     * Reads the optional socket and allocator properties. Properties without value
+     * keep netty and operating system defaults.
+     */
+    private void loadSocketTuning(final NetworkConfiguration configuration, final XProperties properties)
+            throws Exception {
+        configuration.tcpNoDelay(properties.getBoolean(PROP_NET_TCP_NODELAY, null))
+                .sendBufferSize(properties.getInteger(PROP_NET_SO_SNDBUF, null))
+                .receiveBufferSize(properties.getInteger(PROP_NET_SO_RCVBUF, null))
+                .backlog(properties.getInteger(PROP_NET_SO_BACKLOG, null))
+                .allocator(properties.getBoolean(PROP_NET_ALLOCATOR_POOLED, null),
+                        properties.getBoolean(PROP_NET_ALLOCATOR_DIRECT, true))
+                .recvBufferFixedSize(properties.getInteger(PROP_NET_RECVBUF_FIXED, null));
+        final Integer recvBufferMin = properties.getInteger(PROP_NET_RECVBUF_MIN, null);
+        final Integer recvBufferInitial = properties.getInteger(PROP_NET_RECVBUF_INITIAL, null);
+        final Integer recvBufferMax = properties.getInteger(PROP_NET_RECVBUF_MAX, null);
+        if (recvBufferMin != null || recvBufferInitial != null || recvBufferMax != null) {
+            if (recvBufferMin == null || recvBufferInitial == null || recvBufferMax == null) {
+                throw new GatewayInitilizationException("Properties '" + PROP_NET_RECVBUF_MIN + "', '"
+                        + PROP_NET_RECVBUF_INITIAL + "' and '" + PROP_NET_RECVBUF_MAX + "' must be defined together");
+            }
+            configuration.recvBufferAdaptiveSizes(recvBufferMin, recvBufferInitial, recvBufferMax);
+        }
+        final Integer waterMarkLow = properties.getInteger(PROP_NET_WATERMARK_LOW, null);
+        final Integer waterMarkHigh = properties.getInteger(PROP_NET_WATERMARK_HIGH, null);
+        if (waterMarkLow != null || waterMarkHigh != null) {
+            if (waterMarkLow == null || waterMarkHigh == null) {
+                throw new GatewayInitilizationException("Properties '" + PROP_NET_WATERMARK_LOW + "' and '"
+                        + PROP_NET_WATERMARK_HIGH + "' must be defined together");
+            }
+            configuration.writeBufferWaterMark(waterMarkLow, waterMarkHigh);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Orders the asynchronous stages of a client session in one direction: each
+ * stage starts when the previous stages of the session end. It keeps the order
+ * of the messages of the session when a filter answers asynchronously.
+ *
+ * The session has no cost while its stages end synchronously, the callers
+ * check {@link #isIdle()} before filtering the message and only append a stage
+ * when it doesn't end at once.
+ *
+ * @author egacl
+ */
+public final class SessionStageQueue {
+
+    /**
+     * Completion of the last stage of the session
+     */
+    private final AtomicReference<CompletableFuture<Void>> tail = new AtomicReference<>();
+
+    /**
+     * @return true if the session has no pending stages
+     */
+    public boolean isIdle() {
+        final CompletableFuture<Void> last = this.tail.get();
+        return last == null || last.isDone();
+    }
+
+    /**
+     * Appends a stage that starts when the previous stages of the session end.
+     *
+     * @param stage
+     *            supplier that starts the stage and returns its completion
+     */
+    public void append(final Supplier<? extends CompletableFuture<?>> stage) {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final CompletableFuture<Void> previous = this.tail.getAndSet(done);
+        if (previous == null || previous.isDone()) {
+            start(stage, done);
+            return;
+        }
+        previous.whenComplete(new BiConsumer<Void, Throwable>() {
+
+            @Override
+            public void accept(final Void v, final Throwable err) {
+                start(stage, done);
+            }
+        });
+    }
+
+    private static void start(final Supplier<? extends CompletableFuture<?>> stage,
+            final CompletableFuture<Void> done) {
+        try {
+            stage.get().whenComplete(new BiConsumer<Object, Throwable>() {
+
+                @Override
+                public void accept(final Object v, final Throwable err) {
+                    done.complete(null);
+                }
+            });
+        } catch (RuntimeException e) {
+            // the next stages of the session must run
+            done.complete(null);
+            throw e;
+        }
+    }
+}
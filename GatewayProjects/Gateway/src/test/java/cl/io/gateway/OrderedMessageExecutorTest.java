@@ -0,0 +1,199 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class OrderedMessageExecutorTest {
+
+    private static final int SESSIONS = 16;
+
+    private static final int TASKS = 5000;
+
+    private ExecutorService shared;
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.shared != null) {
+            this.shared.shutdownNow();
+            this.shared.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void tasksOfEachSessionRunInOrder() throws Exception {
+        this.shared = Executors.newFixedThreadPool(8);
+        this.assertOrdered(new OrderedMessageExecutor(this.shared));
+    }
+
+    @Test
+    public void tasksRunInOrderWhenTheSharedExecutorIsFull() throws Exception {
+        // the drains rejected by the shared executor run in the submitting threads
+        this.shared = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1));
+        this.assertOrdered(new OrderedMessageExecutor(this.shared));
+    }
+
+    @Test
+    public void sessionsRunInParallel() throws Exception {
+        this.shared = Executors.newFixedThreadPool(2);
+        final OrderedMessageExecutor executor = new OrderedMessageExecutor(this.shared);
+        final CountDownLatch otherSession = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute("a", new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    if (otherSession.await(5, TimeUnit.SECONDS)) {
+                        done.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        executor.execute("b", new Runnable() {
+
+            @Override
+            public void run() {
+                otherSession.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failedTaskDoesNotStopTheSession() throws Exception {
+        this.shared = Executors.newFixedThreadPool(2);
+        final OrderedMessageExecutor executor = new OrderedMessageExecutor(this.shared);
+        final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 10; i++) {
+            final int task = i;
+            executor.execute("session", new Runnable() {
+
+                @Override
+                public void run() {
+                    executed.add(task);
+                    if (task == 9) {
+                        done.countDown();
+                    }
+                    if (task % 3 == 0) {
+                        throw new AssertionError("task " + task);
+                    }
+                }
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(10, executed.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i), executed.get(i));
+        }
+        this.assertIdle(executor);
+    }
+
+    @Test
+    public void shutdownExecutorRejectsTasks() throws Exception {
+        this.shared = Executors.newFixedThreadPool(1);
+        this.shared.shutdown();
+        final OrderedMessageExecutor executor = new OrderedMessageExecutor(this.shared);
+        try {
+            executor.execute("session", new Runnable() {
+
+                @Override
+                public void run() {
+                    fail("Task executed after shutdown");
+                }
+            });
+            fail("Task accepted after shutdown");
+        } catch (RejectedExecutionException e) {
+            assertEquals(0, executor.getActiveSessions());
+        }
+    }
+
+    private void assertOrdered(final OrderedMessageExecutor executor) throws Exception {
+        final int[] next = new int[SESSIONS];
+        final AtomicInteger[] running = new AtomicInteger[SESSIONS];
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(SESSIONS * TASKS);
+        for (int s = 0; s < SESSIONS; s++) {
+            running[s] = new AtomicInteger();
+        }
+        // one submitting thread per pair of sessions, as the reads of a connection
+        final List<Thread> submitters = new ArrayList<>();
+        for (int t = 0; t < SESSIONS / 2; t++) {
+            final int firstSession = t * 2;
+            submitters.add(new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    for (int i = 0; i < TASKS; i++) {
+                        for (int s = firstSession; s < firstSession + 2; s++) {
+                            final int session = s;
+                            final int task = i;
+                            executor.execute("session-" + session, new Runnable() {
+
+                                @Override
+                                public void run() {
+                                    if (running[session].incrementAndGet() != 1 || next[session] != task) {
+                                        errors.incrementAndGet();
+                                    }
+                                    next[session] = task + 1;
+                                    running[session].decrementAndGet();
+                                    done.countDown();
+                                }
+                            });
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread submitter : submitters) {
+            submitter.start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+        for (int s = 0; s < SESSIONS; s++) {
+            assertEquals(TASKS, next[s]);
+        }
+        this.assertIdle(executor);
+    }
+
+    private void assertIdle(final OrderedMessageExecutor executor) throws InterruptedException {
+        // the queue of a session is discarded after its last task
+        for (int i = 0; i < 100 && executor.getActiveSessions() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, executor.getActiveSessions());
+    }
+}
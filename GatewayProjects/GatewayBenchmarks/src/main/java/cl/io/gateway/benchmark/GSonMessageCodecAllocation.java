@@ -0,0 +1,192 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessageTypeRegistry;
+import cl.io.gateway.network.codec.GSonMessageCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Allocation and time per message of the {@link GSonMessageCodec} text frame
+ * paths: the string path (json string copied to the frame buffer, and frame
+ * buffer decoded to a string before reading it) against the stream path
+ * (json written to and read from the frame buffer).
+ *
+ * Allocated bytes are taken from the thread allocation counter of the jvm
+ * (com.sun.management.ThreadMXBean), after a warm up of the same operation, so
+ * the results are reproducible without a profiler:
+ *
+ * <pre>
+ * java -cp &lt;GatewayBenchmarks classpath&gt; cl.io.gateway.benchmark.GSonMessageCodecAllocation [iterations]
+ * </pre>
+ *
+ * @author egacl
+ */
+public class GSonMessageCodecAllocation {
+
+    private static final int DEFAULT_ITERATIONS = 200000;
+
+    private static final int BATCH_SIZE = 20;
+
+    private final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory
+            .getThreadMXBean();
+
+    private final GSonMessageCodec codec = new GSonMessageCodec();
+
+    private final int iterations;
+
+    /**
+     * keeps the results alive so the operations are not removed by the jit
+     */
+    private long blackhole;
+
+    public GSonMessageCodecAllocation(final int iterations) {
+        this.iterations = iterations;
+        final NetworkMessageTypeRegistry registry = new NetworkMessageTypeRegistry();
+        registry.register(Quote.EVENT, Quote.class);
+        this.codec.setMessageTypeRegistry(registry);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+        final GSonMessageCodecAllocation benchmark = new GSonMessageCodecAllocation(iterations);
+        final List<NetworkMessage> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(newQuoteMessage(i));
+        }
+        benchmark.run("quote", newQuoteMessage(0));
+        benchmark.run("batch of " + BATCH_SIZE + " quotes", NetworkMessage.createBatch(batch));
+        System.out.println("(blackhole " + benchmark.blackhole + ")");
+    }
+
+    private static NetworkMessage<Quote> newQuoteMessage(final int index) {
+        final NetworkMessage<Quote> message = new NetworkMessage<>(Quote.EVENT, new Quote(index));
+        message.setSource("md-feed");
+        message.setChannelId("c8f2a1d0");
+        message.setCorrelationId(1000L + index);
+        return message;
+    }
+
+    private void run(final String name, final NetworkMessage message) throws Exception {
+        final ByteBuf frame = Unpooled.copiedBuffer(this.codec.serialize(message), CharsetUtil.UTF_8);
+        System.out.println(name + " (" + frame.readableBytes() + " bytes)");
+        this.measure("  encode string", new Operation() {
+
+            @Override
+            public long run() throws Exception {
+                // json string copied to the frame buffer, as TextWebSocketFrame(String) does
+                final ByteBuf out = Unpooled.copiedBuffer(codec.serialize(message), CharsetUtil.UTF_8);
+                final long size = out.readableBytes();
+                out.release();
+                return size;
+            }
+        });
+        this.measure("  encode stream", new Operation() {
+
+            @Override
+            public long run() throws Exception {
+                final ByteBuf out = PooledByteBufAllocator.DEFAULT.buffer();
+                codec.serialize(message, out);
+                final long size = out.readableBytes();
+                out.release();
+                return size;
+            }
+        });
+        this.measure("  decode string", new Operation() {
+
+            @Override
+            public long run() throws Exception {
+                return codec.deserealize(frame.toString(CharsetUtil.UTF_8)).hashCode();
+            }
+        });
+        this.measure("  decode stream", new Operation() {
+
+            @Override
+            public long run() throws Exception {
+                return codec.deserealize(frame).hashCode();
+            }
+        });
+        frame.release();
+    }
+
+    private void measure(final String name, final Operation operation) throws Exception {
+        // warm up of the jit and of the buffer pool
+        for (int i = 0; i < this.iterations; i++) {
+            this.blackhole += operation.run();
+        }
+        final long thread = Thread.currentThread().getId();
+        final long bytes = this.threadBean.getThreadAllocatedBytes(thread);
+        final long start = System.nanoTime();
+        for (int i = 0; i < this.iterations; i++) {
+            this.blackhole += operation.run();
+        }
+        final long nanos = System.nanoTime() - start;
+        final long allocated = this.threadBean.getThreadAllocatedBytes(thread) - bytes;
+        System.out.println(String.format("%-16s %10d bytes/op %10d ns/op", name, allocated / this.iterations,
+                nanos / this.iterations));
+    }
+
+    private interface Operation {
+
+        long run() throws Exception;
+    }
+
+    /**
+     * Market quote, a payload of numeric fields.
+     */
+    public static class Quote {
+
+        static final String EVENT = "quote";
+
+        private String symbol;
+
+        private double bid;
+
+        private double ask;
+
+        private long bidSize;
+
+        private long askSize;
+
+        private double last;
+
+        private long volume;
+
+        private long timestamp;
+
+        public Quote() {
+        }
+
+        Quote(final int index) {
+            this.symbol = "AAPL";
+            this.bid = 187.31 + index / 100.0;
+            this.ask = 187.35 + index / 100.0;
+            this.bidSize = 300 + index;
+            this.askSize = 500 + index;
+            this.last = 187.33 + index / 100.0;
+            this.volume = 1250000L + index * 100;
+            this.timestamp = 1760000000000L + index;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network;
+
+/**
+ * Network frame in which a message was received, it allows to relay the
+ * message without encoding it again. The frame buffers belong to the network
+ * reader and are valid only while the message is delivered to its handler,
+ * unless the frame is detached.
+ *
+ * @author egacl
+ */
+public interface INetworkMessageFrame {
+
+    /**
+     * Keeps a reference to the frame buffers so they stay valid after the
+     * delivery of the message, it is called when the message is retained. A
+     * detached frame returns itself.
+     *
+     * @return frame valid after the delivery until it is released
+     */
+    INetworkMessageFrame detach();
+
+    /**
+     * Releases the buffers of a detached frame, it does nothing for a frame that
+     * is not detached.
+     */
+    void release();
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network;
+
+/**
+ * Payload of a received message that is kept in its network form until the
+ * message is read, so messages that are never read don't pay for its decoding.
+ *
+ * @author egacl
+ * @param <T>
+ *            transported message java type.
+ */
+public interface INetworkMessagePayload<T> {
+
+    /**
+     * Decodes the payload into its java type.
+     *
+     * @param event
+     *            event of the message, it defines the payload type
+     * @return decoded message
+     * @throws IllegalStateException
+     *             if the payload can't be decoded
+     */
+    T decode(String event);
+}
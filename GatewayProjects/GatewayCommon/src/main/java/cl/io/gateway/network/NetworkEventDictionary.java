@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network;
+
+/**
+ * Dictionary of the events declared by the services of a network configuration
+ * (handlers, subscriptions, filters and message types). Each event receives a
+ * dense int identifier the first time it is registered, so the dispatch tables
+ * of the network services and the gateway are arrays indexed by the event id.
+ *
+ * The dictionary also keeps the canonical instance of every event name, codecs
+ * resolve the decoded events against it so messages of known events share the
+ * same string. Events received from the network are only looked up, never
+ * registered, and the dictionary holds at most {@link #getMaxEvents()} events;
+ * the tables fall back to the event name for the events it doesn't hold. The
+ * tables are replaced on every registration and read without locks.
+ *
+ * @author egacl
+ */
+public final class NetworkEventDictionary {
+
+    /**
+     * Identifier of the events that are not registered
+     */
+    public static final int UNKNOWN_EVENT = -1;
+
+    /**
+     * Default maximum number of events of a dictionary
+     */
+    public static final int DEFAULT_MAX_EVENTS = 4096;
+
+    private final int maxEvents;
+
+    private volatile Table table = new Table(new String[0], new int[64]);
+
+    public NetworkEventDictionary() {
+        this(DEFAULT_MAX_EVENTS);
+    }
+
+    /**
+     * @param maxEvents
+     *            maximum number of events registered in the dictionary
+     */
+    public NetworkEventDictionary(final int maxEvents) {
+        if (maxEvents < 0) {
+            throw new IllegalArgumentException("Invalid maximum number of events: " + maxEvents);
+        }
+        this.maxEvents = maxEvents;
+    }
+
+    /**
+     * Registers the event, the identifier of an event never changes.
+     *
+     * @param event
+     *            message event
+     * @return event identifier or {@link #UNKNOWN_EVENT} if the dictionary is
+     *         full
+     */
+    public synchronized int register(final String event) {
+        final Table current = this.table;
+        int id = current.find(event);
+        if (id != UNKNOWN_EVENT || current.events.length >= this.maxEvents) {
+            return id;
+        }
+        id = current.events.length;
+        final String[] events = new String[id + 1];
+        System.arraycopy(current.events, 0, events, 0, id);
+        events[id] = event;
+        // se mantiene la tabla con un factor de carga menor a 0.5
+        final int[] slots = new int[events.length * 2 > current.slots.length ? current.slots.length * 2
+                : current.slots.length];
+        for (int i = 0; i < events.length; i++) {
+            insert(slots, events[i], i);
+        }
+        this.table = new Table(events, slots);
+        return id;
+    }
+
+    /**
+     * @param event
+     *            message event
+     * @return event identifier or {@link #UNKNOWN_EVENT} if it is not registered
+     */
+    public int getId(final String event) {
+        return event == null ? UNKNOWN_EVENT : this.table.find(event);
+    }
+
+    /**
+     * Returns the identifier of an event from its characters, codecs that read
+     * from a char buffer call it without creating the string.
+     *
+     * @param chars
+     *            char buffer
+     * @param offset
+     *            offset of the event in the buffer
+     * @param length
+     *            event length
+     * @return event identifier or {@link #UNKNOWN_EVENT} if it is not registered
+     */
+    public int getId(final char[] chars, final int offset, final int length) {
+        return this.table.find(chars, offset, length);
+    }
+
+    /**
+     * @param id
+     *            event identifier
+     * @return canonical event
+     */
+    public String getEvent(final int id) {
+        return this.table.events[id];
+    }
+
+    /**
+     * Returns the canonical instance of the event.
+     *
+     * @param event
+     *            decoded event
+     * @return canonical event or the same event if it is not registered
+     */
+    public String getEvent(final String event) {
+        final Table current = this.table;
+        final int id = event == null ? UNKNOWN_EVENT : current.find(event);
+        return id == UNKNOWN_EVENT ? event : current.events[id];
+    }
+
+    /**
+     * @return number of registered events, the identifiers are lower than it
+     */
+    public int size() {
+        return this.table.events.length;
+    }
+
+    /**
+     * @return maximum number of events registered in the dictionary
+     */
+    public int getMaxEvents() {
+        return this.maxEvents;
+    }
+
+    private static void insert(final int[] slots, final String event, final int id) {
+        final int mask = slots.length - 1;
+        int i = spread(event.hashCode()) & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = id + 1;
+    }
+
+    private static int spread(final int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Events by identifier and open addressing table of identifiers (plus one)
+     * by event name hash
+     */
+    private static final class Table {
+
+        private final String[] events;
+
+        private final int[] slots;
+
+        private Table(final String[] events, final int[] slots) {
+            this.events = events;
+            this.slots = slots;
+        }
+
+        private int find(final String event) {
+            final int mask = this.slots.length - 1;
+            for (int i = spread(event.hashCode()) & mask;; i = (i + 1) & mask) {
+                final int slot = this.slots[i];
+                if (slot == 0) {
+                    return UNKNOWN_EVENT;
+                }
+                if (event.equals(this.events[slot - 1])) {
+                    return slot - 1;
+                }
+            }
+        }
+
+        private int find(final char[] chars, final int offset, final int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + chars[offset + i];
+            }
+            final int mask = this.slots.length - 1;
+            for (int i = spread(hash) & mask;; i = (i + 1) & mask) {
+                final int slot = this.slots[i];
+                if (slot == 0) {
+                    return UNKNOWN_EVENT;
+                }
+                final String event = this.events[slot - 1];
+                if (event.hashCode() == hash && matches(event, chars, offset, length)) {
+                    return slot - 1;
+                }
+            }
+        }
+
+        private static boolean matches(final String event, final char[] chars, final int offset, final int length) {
+            if (event.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (event.charAt(i) != chars[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table of values indexed by the identifier of the event in the
+ * {@link NetworkEventDictionary} of the network configuration. The table is an
+ * array replaced on every change, so the values of a message are read without
+ * locks or hashing. The events the dictionary can't register (it is full) are
+ * kept by name.
+ *
+ * @author egacl
+ * @param <V>
+ *            value type
+ */
+public final class NetworkEventTable<V> {
+
+    private final NetworkEventDictionary dictionary;
+
+    private final ConcurrentHashMap<String, V> valuesByName = new ConcurrentHashMap<>();
+
+    private volatile Object[] values = new Object[0];
+
+    /**
+     * @param dictionary
+     *            event dictionary of the network configuration
+     */
+    public NetworkEventTable(final NetworkEventDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @param message
+     *            network message
+     * @return value of the message event or null
+     */
+    public V get(final NetworkMessage<?> message) {
+        final int id = message.getEventId(this.dictionary);
+        return id != NetworkEventDictionary.UNKNOWN_EVENT ? this.get(id) : this.getByName(message.getEvent());
+    }
+
+    /**
+     * @param event
+     *            message event
+     * @return value of the event or null
+     */
+    public V get(final String event) {
+        final int id = this.dictionary.getId(event);
+        return id != NetworkEventDictionary.UNKNOWN_EVENT ? this.get(id) : this.getByName(event);
+    }
+
+    /**
+     * @param id
+     *            event identifier
+     * @return value of the event or null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final int id) {
+        final Object[] values = this.values;
+        return id >= 0 && id < values.length ? (V) values[id] : null;
+    }
+
+    /**
+     * Sets the value of the event, registering the event in the dictionary.
+     *
+     * @param event
+     *            message event
+     * @param value
+     *            event value or null to remove it
+     * @return previous value or null
+     */
+    public synchronized V put(final String event, final V value) {
+        final int id = this.dictionary.register(event);
+        if (id == NetworkEventDictionary.UNKNOWN_EVENT) {
+            return value == null ? this.valuesByName.remove(event) : this.valuesByName.put(event, value);
+        }
+        final V previous = this.get(id);
+        if (value == null) {
+            this.remove(event);
+            return previous;
+        }
+        final Object[] values = Arrays.copyOf(this.values, Math.max(this.values.length, id + 1));
+        values[id] = value;
+        this.values = values;
+        return previous;
+    }
+
+    /**
+     * Sets the value of the event only if it doesn't have one.
+     *
+     * @param event
+     *            message event
+     * @param value
+     *            event value
+     * @return current value or null if the value was set
+     */
+    public synchronized V putIfAbsent(final String event, final V value) {
+        final V current = this.get(event);
+        if (current != null) {
+            return current;
+        }
+        this.put(event, value);
+        return null;
+    }
+
+    /**
+     * @param event
+     *            message event
+     * @return removed value or null
+     */
+    public synchronized V remove(final String event) {
+        final int id = this.dictionary.getId(event);
+        if (id == NetworkEventDictionary.UNKNOWN_EVENT) {
+            return event == null ? null : this.valuesByName.remove(event);
+        }
+        final V previous = this.get(id);
+        if (previous != null) {
+            final Object[] values = this.values.clone();
+            values[id] = null;
+            // se descartan las posiciones vacias del final del arreglo
+            int length = values.length;
+            while (length > 0 && values[length - 1] == null) {
+                length--;
+            }
+            this.values = length == values.length ? values : Arrays.copyOf(values, length);
+        }
+        return previous;
+    }
+
+    private V getByName(final String event) {
+        return event == null || this.valuesByName.isEmpty() ? null : this.valuesByName.get(event);
+    }
+}
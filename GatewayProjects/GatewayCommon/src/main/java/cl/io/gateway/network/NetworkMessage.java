@@ -16,7 +16,9 @@
 package cl.io.gateway.network;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * This class contains a message received through the network.
@@ -25,11 +27,29 @@ import java.util.Map;
  */
 public class NetworkMessage<T extends Object> {
     
+    /**
+     * @deprecated the sequence is no longer a context value, use
+     *             {@link #getChannelMessageSequence()}
+     */
+    @Deprecated
     public static final String CHANNEL_MESSAGE_SEQUENCE = "CHANNEL_MESSAGE_SEQUENCE";
 
+    /**
+     * @deprecated the sequence is no longer a context value, use
+     *             {@link #getEventMessageSequence()}
+     */
+    @Deprecated
     public static final String EVENT_MESSAGE_SEQUENCE = "EVENT_MESSAGE_SEQUENCE";
+
+    /**
+     * event of the envelope that carries several messages in one network frame
+     */
+    public static final String BATCH_EVENT = "__batch__";
     
-    private Map<String, Object> context = new HashMap<String, Object>();
+    /**
+     * context values sent over the network, it is created with the first value
+     */
+    private Map<String, Object> context;
     
     private String source;
     
@@ -37,10 +57,85 @@ public class NetworkMessage<T extends Object> {
     
     private String event;
     
+    /**
+     * identifier of the event in {@link #eventDictionary}, it is not sent over the network
+     */
+    private transient int eventId = NetworkEventDictionary.UNKNOWN_EVENT;
+    
+    /**
+     * dictionary that resolved {@link #eventId} or null if it is not resolved
+     */
+    private transient NetworkEventDictionary eventDictionary;
+    
     private String channelId;
     
+    /**
+     * request identifier, present when the sender expects a response
+     */
+    private Long correlationId;
+    
+    /**
+     * identifier of the request answered by this message
+     */
+    private Long replyTo;
+    
+    /**
+     * outbound priority, it is not sent over the network
+     */
+    private transient NetworkMessagePriority priority;
+    
+    /**
+     * sequence of the message in its origin channel, it is not sent over the network
+     */
+    private transient long channelMessageSequence;
+    
+    /**
+     * sequence of the message in its event, it is not sent over the network
+     */
+    private transient long eventMessageSequence;
+    
     private T message;
     
+    /**
+     * payload not decoded yet, it is decoded on the first read of the message
+     */
+    private transient volatile INetworkMessagePayload<T> payload;
+    
+    /**
+     * number of changes made to the message, it is not sent over the network
+     */
+    private transient int modifications;
+    
+    /**
+     * forms of the message encoded by the codecs that sent it
+     */
+    private transient volatile EncodedForm encodedForms;
+    
+    /**
+     * true if the message is an envelope created by {@link #createBatch(List)}
+     */
+    private transient boolean batch;
+    
+    /**
+     * network frame in which the message was received
+     */
+    private transient volatile INetworkMessageFrame receivedFrame;
+    
+    /**
+     * message modifications when the frame was received
+     */
+    private transient int receivedModifications;
+    
+    /**
+     * references of a message that is not pooled while it keeps its received
+     * frame: the delivery and every retain, the last release frees the frame
+     */
+    private transient volatile int frameReferences;
+    
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<NetworkMessage> FRAME_REFERENCES_UPDATER = AtomicIntegerFieldUpdater
+            .newUpdater(NetworkMessage.class, "frameReferences");
+    
     public NetworkMessage() {}
     
     public NetworkMessage(String event) {
@@ -63,33 +158,220 @@ public class NetworkMessage<T extends Object> {
      * @param event the event to set
      */
     public void setEvent(String event) {
+        this.modifications++;
         this.event = event;
+        this.eventDictionary = null;
+    }
+
+    /**
+     * Returns the identifier of the event in the dictionary, it is resolved once
+     * per message while the message is read with the same dictionary.
+     *
+     * @param dictionary
+     *            event dictionary of the network configuration
+     * @return event identifier or {@link NetworkEventDictionary#UNKNOWN_EVENT}
+     */
+    public int getEventId(NetworkEventDictionary dictionary) {
+        if (this.eventDictionary != dictionary) {
+            this.eventId = dictionary.getId(this.event);
+            this.eventDictionary = dictionary;
+        }
+        return this.eventId;
     }
 
     /**
      * @return the message
      */
     public T getMessage() {
+        if (this.payload != null) {
+            this.decodePayload();
+        }
         return message;
     }
 
+    private synchronized void decodePayload() {
+        if (this.payload != null) {
+            this.message = this.payload.decode(this.event);
+            this.payload = null;
+        }
+    }
+
     /**
      * @param message the message to set
      */
     public void setMessage(T message) {
+        this.modifications++;
+        this.payload = null;
         this.message = message;
     }
+
+    /**
+     * Sets the payload that is decoded on the first read of the message.
+     *
+     * @param payload payload in its network form
+     */
+    public void setPayload(INetworkMessagePayload<T> payload) {
+        this.modifications++;
+        this.message = null;
+        this.payload = payload;
+    }
+
+    /**
+     * @return true if the message doesn't have a payload pending of decoding
+     */
+    public boolean isMessageDecoded() {
+        return this.payload == null;
+    }
+
+    /**
+     * @return payload pending of decoding or null if the message is decoded
+     */
+    public INetworkMessagePayload<T> getPayload() {
+        return this.payload;
+    }
+
+    /**
+     * Number of changes made to the message through its setters, it allows to
+     * know if a message was modified after it was received. Changes made inside
+     * the payload object are not counted.
+     *
+     * @return number of changes
+     */
+    public int getModifications() {
+        return this.modifications;
+    }
+
+    /**
+     * Returns the form of the message stored by a codec, if the message was not
+     * modified through its setters after it was stored.
+     *
+     * @param codec codec that encoded the message
+     * @return encoded form or null
+     */
+    public Object getEncoded(Object codec) {
+        final EncodedForm form = this.findEncoded(codec);
+        return form == null ? null : form.value;
+    }
+
+    /**
+     * @param codec codec that encoded the message
+     * @return true if the codec encoded the message after its last modification
+     */
+    public boolean isEncodedBy(Object codec) {
+        return this.findEncoded(codec) != null;
+    }
+
+    /**
+     * Stores the form of the message encoded by a codec, so the message can be
+     * sent again without encoding it. The form is discarded when the message is
+     * modified through its setters, changes made inside the payload object are
+     * not detected.
+     *
+     * @param codec codec that encoded the message
+     * @param encoded encoded form or null to only record that it was encoded
+     */
+    public void putEncoded(Object codec, Object encoded) {
+        final int modifications = this.modifications;
+        EncodedForm forms = null;
+        // se mantienen las formas vigentes de otros codecs
+        for (EncodedForm form = this.encodedForms; form != null; form = form.next) {
+            if (form.codec != codec && form.modifications == modifications) {
+                forms = new EncodedForm(form.codec, form.modifications, form.value, forms);
+            }
+        }
+        this.encodedForms = new EncodedForm(codec, modifications, encoded, forms);
+    }
+
+    /**
+     * Sets the network frame in which the message was received. It is local data
+     * of the receiver, so it does not count as a change of the message.
+     *
+     * @param frame received frame
+     */
+    public void setReceivedFrame(INetworkMessageFrame frame) {
+        this.receivedModifications = this.modifications;
+        this.receivedFrame = frame;
+        this.frameReferences = frame == null ? 0 : 1;
+    }
+
+    /**
+     * @return the network frame in which the message was received, or null if
+     *         the message was modified through its setters after it was received
+     */
+    public INetworkMessageFrame getReceivedFrame() {
+        final INetworkMessageFrame frame = this.receivedFrame;
+        return frame == null || this.receivedModifications != this.modifications ? null : frame;
+    }
+
+    /**
+     * Removes the received frame if it is still the given one, a frame copied by
+     * {@link #retain()} is kept.
+     *
+     * @param frame received frame
+     */
+    public void removeReceivedFrame(INetworkMessageFrame frame) {
+        if (this.receivedFrame == frame) {
+            this.receivedFrame = null;
+        }
+    }
+
+    /**
+     * Detaches the received frame, the message is kept after its delivery. The
+     * frame of a modified message is no longer useful and it is released.
+     */
+    protected synchronized void detachReceivedFrame() {
+        final INetworkMessageFrame frame = this.receivedFrame;
+        if (frame == null) {
+            return;
+        }
+        final INetworkMessageFrame detached = this.receivedModifications == this.modifications ? frame.detach() : null;
+        if (detached != frame) {
+            this.receivedFrame = detached;
+            frame.release();
+        }
+    }
+
+    /**
+     * Releases the detached frame of the message.
+     */
+    protected synchronized void releaseReceivedFrame() {
+        final INetworkMessageFrame frame = this.receivedFrame;
+        this.receivedFrame = null;
+        if (frame != null) {
+            frame.release();
+        }
+    }
+
+    private EncodedForm findEncoded(Object codec) {
+        for (EncodedForm form = this.encodedForms; form != null; form = form.next) {
+            if (form.codec == codec) {
+                return form.modifications == this.modifications ? form : null;
+            }
+        }
+        return null;
+    }
     
     public Object putContext(String key, Object value) {
+		this.modifications++;
+		if (this.context == null) {
+			this.context = new HashMap<String, Object>();
+		}
 		return this.context.put(key, value);
 }
     
     public Object getContextValue(String key) {
-    		return this.context.get(key);
+    		return this.context == null ? null : this.context.get(key);
     }
 
     public Map<String, Object> getContextCopy() {
-        return new HashMap<>(this.context);
+        return this.context == null ? new HashMap<String, Object>() : new HashMap<>(this.context);
+    }
+
+    /**
+     * @return true if the message has context values to send over the network
+     */
+    public boolean hasContext() {
+        return this.context != null && !this.context.isEmpty();
     }
     
     public String getOriginChannelId() {
@@ -97,11 +379,25 @@ public class NetworkMessage<T extends Object> {
     }
     
     public long getChannelMessageSequence() {
-    	return (Long)this.context.get(CHANNEL_MESSAGE_SEQUENCE);
+    	return this.channelMessageSequence;
     }
     
     public long getEventMessageSequence() {
-    	return (Long)this.context.get(EVENT_MESSAGE_SEQUENCE);
+    	return this.eventMessageSequence;
+    }
+
+    /**
+     * Sets the sequences of a received message. They are local data of the
+     * receiver, so they do not count as changes of the message.
+     *
+     * @param channelMessageSequence
+     *            sequence of the message in its origin channel
+     * @param eventMessageSequence
+     *            sequence of the message in its event
+     */
+    public void setMessageSequences(long channelMessageSequence, long eventMessageSequence) {
+        this.channelMessageSequence = channelMessageSequence;
+        this.eventMessageSequence = eventMessageSequence;
     }
 
     public String getSource() {
@@ -109,6 +405,7 @@ public class NetworkMessage<T extends Object> {
 	}
 
 	public void setSource(String source) {
+		this.modifications++;
 		this.source = source;
 	}
 
@@ -117,6 +414,7 @@ public class NetworkMessage<T extends Object> {
 	}
 
 	public void setTarget(String target) {
+		this.modifications++;
 		this.target = target;
 	}
 
@@ -125,15 +423,198 @@ public class NetworkMessage<T extends Object> {
 	}
 
 	public void setChannelId(String channelId) {
+		this.modifications++;
 		this.channelId = channelId;
 	}
 
+	public Long getCorrelationId() {
+		return correlationId;
+	}
+
+	public void setCorrelationId(Long correlationId) {
+		this.modifications++;
+		this.correlationId = correlationId;
+	}
+
+	public Long getReplyTo() {
+		return replyTo;
+	}
+
+	public void setReplyTo(Long replyTo) {
+		this.modifications++;
+		this.replyTo = replyTo;
+	}
+
+	/**
+	 * @return outbound priority or null if it was not defined for this message
+	 */
+	public NetworkMessagePriority getPriority() {
+		return priority;
+	}
+
+	public void setPriority(NetworkMessagePriority priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * @return true if this message is an envelope of several messages created
+	 *         by {@link #createBatch(List)}, the event name alone doesn't make
+	 *         an envelope
+	 */
+	public boolean isBatch() {
+		return this.batch;
+	}
+
+	/**
+	 * Creates the envelope that carries several messages in one network frame, the
+	 * messages keep the list order.
+	 *
+	 * @param messages messages to send together
+	 * @return batch network message
+	 */
+	@SuppressWarnings("rawtypes")
+	public static NetworkMessage<List<NetworkMessage>> createBatch(List<NetworkMessage> messages) {
+		final NetworkMessage<List<NetworkMessage>> batch = new NetworkMessage<List<NetworkMessage>>(BATCH_EVENT,
+				messages);
+		batch.batch = true;
+		return batch;
+	}
+
+	/**
+	 * @return true if the sender of this message expects a response
+	 */
+	public boolean isRequest() {
+		return this.correlationId != null;
+	}
+
+	/**
+	 * @return true if this message answers a request
+	 */
+	public boolean isResponse() {
+		return this.replyTo != null;
+	}
+
+	/**
+	 * Creates the response for this request message, the response has the same
+	 * event and references the request correlation identifier.
+	 *
+	 * @param message response object
+	 * @param <R> response object type
+	 * @return response network message
+	 */
+	public <R> NetworkMessage<R> createResponse(R message) {
+		if (this.correlationId == null) {
+			throw new IllegalStateException("Message is not a request: " + this);
+		}
+		final NetworkMessage<R> response = new NetworkMessage<R>(this.event, message);
+		response.setReplyTo(this.correlationId);
+		response.setSource(this.target);
+		response.setTarget(this.source);
+		response.setPriority(this.priority);
+		return response;
+	}
+
+	/**
+	 * Increases the reference count of a pooled message, it must be called
+	 * before keeping a received message after its handler returns. Messages
+	 * that are not pooled are counted only while they keep their received
+	 * frame. The message keeps a reference to the frame (it is not copied) so
+	 * it can still be relayed without encoding it again, the frame is freed by
+	 * the last {@link #release()}.
+	 *
+	 * @return this message
+	 */
+	public NetworkMessage<T> retain() {
+		for (;;) {
+			final int references = this.frameReferences;
+			if (references == 0) {
+				return this;
+			}
+			if (FRAME_REFERENCES_UPDATER.compareAndSet(this, references, references + 1)) {
+				break;
+			}
+		}
+		this.detachReceivedFrame();
+		return this;
+	}
+
+	/**
+	 * Decreases the reference count of a pooled message, the message returns
+	 * to its pool when the count reaches zero. A message that is not pooled
+	 * frees its received frame with the last release.
+	 *
+	 * @return true if the message returned to its pool
+	 */
+	public boolean release() {
+		for (;;) {
+			final int references = this.frameReferences;
+			if (references == 0) {
+				return false;
+			}
+			if (FRAME_REFERENCES_UPDATER.compareAndSet(this, references, references - 1)) {
+				if (references == 1) {
+					this.releaseReceivedFrame();
+				}
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Clears the message data so the instance can be reused by a pool.
+	 */
+	protected void clear() {
+		// the codecs skip a null context, an empty map would be written
+		this.context = null;
+		this.source = null;
+		this.target = null;
+		this.event = null;
+		this.eventDictionary = null;
+		this.channelId = null;
+		this.correlationId = null;
+		this.replyTo = null;
+		this.priority = null;
+		this.channelMessageSequence = 0;
+		this.eventMessageSequence = 0;
+		this.message = null;
+		this.payload = null;
+		this.modifications = 0;
+		this.encodedForms = null;
+		this.batch = false;
+		this.releaseReceivedFrame();
+		this.frameReferences = 0;
+	}
+
+	/**
+	 * Message form encoded by a codec and the message modifications when it was
+	 * encoded.
+	 */
+	private static final class EncodedForm {
+
+		private final Object codec;
+
+		private final int modifications;
+
+		private final Object value;
+
+		private final EncodedForm next;
+
+		private EncodedForm(Object codec, int modifications, Object value, EncodedForm next) {
+			this.codec = codec;
+			this.modifications = modifications;
+			this.value = value;
+			this.next = next;
+		}
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
 		builder.append("NetworkMessage [context=").append(context).append(", source=").append(source)
 				.append(", target=").append(target).append(", event=").append(event).append(", channelId=")
-				.append(channelId).append(", message=").append(message).append("]");
+				.append(channelId).append(", correlationId=").append(correlationId).append(", replyTo=")
+				.append(replyTo).append(", priority=").append(priority).append(", message=")
+				.append(this.payload == null ? message : "(not decoded)").append("]");
 		return builder.toString();
 	}
 
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network;
+
+/**
+ * Outbound priority of a network message. Messages waiting to be written on a
+ * channel are sent from the highest priority lane to the lowest one.
+ *
+ * @author egacl
+ */
+public enum NetworkMessagePriority {
+
+    /**
+     * Control messages (heartbeats, authentication responses, etc.) that must not
+     * wait behind bulk data.
+     */
+    HIGH,
+
+    /**
+     * Default priority.
+     */
+    NORMAL,
+
+    /**
+     * Bulk data that can wait for the rest of the messages.
+     */
+    LOW;
+
+}
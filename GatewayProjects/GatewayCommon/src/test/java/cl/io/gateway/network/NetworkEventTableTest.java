@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class NetworkEventTableTest {
+
+    @Test
+    public void declaredEventsAreIndexedById() {
+        final NetworkEventDictionary dictionary = new NetworkEventDictionary();
+        final NetworkEventTable<String> table = new NetworkEventTable<>(dictionary);
+        assertNull(table.put("login", "handler"));
+        final int id = dictionary.getId("login");
+        assertEquals(0, id);
+        assertEquals("handler", table.get(id));
+        assertEquals("handler", table.get(new NetworkMessage<>(new String("login"))));
+        assertEquals("handler", table.putIfAbsent("login", "other"));
+        assertEquals(1, dictionary.size());
+    }
+
+    @Test
+    public void receivedEventsAreNotRegistered() {
+        final NetworkEventDictionary dictionary = new NetworkEventDictionary();
+        final NetworkEventTable<String> table = new NetworkEventTable<>(dictionary);
+        table.put("login", "handler");
+        for (int i = 0; i < 1000; i++) {
+            assertNull(table.get(new NetworkMessage<>("event-" + i)));
+            assertNull(table.get("event-" + i));
+        }
+        assertEquals(1, dictionary.size());
+        assertEquals(NetworkEventDictionary.UNKNOWN_EVENT, new NetworkMessage<>("event-1").getEventId(dictionary));
+    }
+
+    @Test
+    public void eventsOfAFullDictionaryAreKeptByName() {
+        final NetworkEventDictionary dictionary = new NetworkEventDictionary(2);
+        final NetworkEventTable<String> table = new NetworkEventTable<>(dictionary);
+        table.put("a", "1");
+        table.put("b", "2");
+        table.put("c", "3");
+        assertEquals(2, dictionary.size());
+        assertEquals(NetworkEventDictionary.UNKNOWN_EVENT, dictionary.getId("c"));
+        assertEquals("3", table.get("c"));
+        assertEquals("3", table.get(new NetworkMessage<>("c")));
+        assertEquals("3", table.remove("c"));
+        assertNull(table.get("c"));
+        assertEquals("1", table.get("a"));
+    }
+
+    @Test
+    public void dictionariesAreIndependent() {
+        final NetworkEventDictionary first = new NetworkEventDictionary();
+        final NetworkEventDictionary second = new NetworkEventDictionary();
+        final NetworkEventTable<String> firstTable = new NetworkEventTable<>(first);
+        final NetworkEventTable<String> secondTable = new NetworkEventTable<>(second);
+        firstTable.put("a", "first a");
+        secondTable.put("b", "second b");
+        secondTable.put("a", "second a");
+        final NetworkMessage<Object> message = new NetworkMessage<>("a");
+        // the message caches the id of the last dictionary that resolved it
+        assertEquals("first a", firstTable.get(message));
+        assertEquals("second a", secondTable.get(message));
+        assertEquals(0, message.getEventId(first));
+        assertEquals(1, message.getEventId(second));
+        message.setEvent("b");
+        assertNull(firstTable.get(message));
+        assertEquals("second b", secondTable.get(message));
+    }
+
+    @Test
+    public void removeDiscardsTheValue() {
+        final NetworkEventDictionary dictionary = new NetworkEventDictionary();
+        final NetworkEventTable<String> table = new NetworkEventTable<>(dictionary);
+        table.put("a", "1");
+        table.put("b", "2");
+        assertEquals("2", table.remove("b"));
+        assertNull(table.get("b"));
+        assertNull(table.remove("b"));
+        assertEquals("1", table.get("a"));
+        // the id of the event doesn't change
+        assertNull(table.put("b", "3"));
+        assertEquals(1, dictionary.getId("b"));
+        assertEquals("3", table.get(1));
+        assertEquals("3", table.put("b", null));
+        assertNull(table.get("b"));
+    }
+
+    @Test
+    public void canonicalEventIsTheRegisteredInstance() {
+        final NetworkEventDictionary dictionary = new NetworkEventDictionary();
+        final String event = "login";
+        dictionary.register(event);
+        final char[] chars = "xlogin".toCharArray();
+        assertSame(event, dictionary.getEvent(new String("login")));
+        assertEquals(0, dictionary.getId(chars, 1, 5));
+        assertEquals(NetworkEventDictionary.UNKNOWN_EVENT, dictionary.getId(chars, 0, 5));
+    }
+}
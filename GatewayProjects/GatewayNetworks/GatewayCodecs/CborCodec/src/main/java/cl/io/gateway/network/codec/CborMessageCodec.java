@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORWriteContext;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
+import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Binary codec message implementation that transform messages object into
+ * cbor documents. Messages are mapped as json codecs do (same fields and batch
+ * envelopes), but numbers, strings lengths and structures are encoded in binary
+ * form, so messages are smaller and cheaper to write and read. Network drivers
+ * send its messages as binary frames.
+ *
+ * @see AbstractJacksonMessageCodec
+ * @author egacl
+ */
+@SuppressWarnings("rawtypes")
+public class CborMessageCodec extends AbstractJacksonMessageCodec<byte[]> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CborMessageCodec.class);
+
+    public CborMessageCodec() {
+        super(new CBORFactory());
+    }
+
+    /**
+     * @param lazyPayload
+     *            true to decode the payloads on the first read of the messages
+     */
+    public CborMessageCodec(boolean lazyPayload) {
+        super(new CBORFactory(), lazyPayload);
+    }
+
+    /**
+     * @param lazyPayload
+     *            true to decode the payloads on the first read of the messages
+     * @param compact
+     *            true to write short envelope names and positional payloads
+     * @see CompactCborMessageCodec
+     */
+    protected CborMessageCodec(boolean lazyPayload, boolean compact) {
+        super(new CBORFactory(), lazyPayload, compact);
+    }
+
+    @Override
+    public byte[] serialize(NetworkMessage message) throws NetworkMessageSerializationException {
+        try {
+            return this.writerFor(message).writeValueAsBytes(this.valueFor(message));
+        } catch (IOException e) {
+            throw new NetworkMessageSerializationException("Cbor serialization error for " + message, e);
+        }
+    }
+
+    @Override
+    public void serializeBatch(List<ByteBuf> messages, ByteBuf out) throws NetworkMessageSerializationException {
+        BatchEnvelopes.writeCborArray(messages, out);
+    }
+
+    /**
+     * The payload is a complete cbor item of the received document, its bytes
+     * are copied as they were received.
+     */
+    @Override
+    protected void writeRawPayload(JsonGenerator gen, Object raw) throws IOException {
+        final byte[] bytes = (byte[]) raw;
+        // the value is counted in the generator context before its bytes are copied
+        ((CBORWriteContext) gen.getOutputContext()).writeValue();
+        ((CBORGenerator) gen).writeBytes(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public NetworkMessage deserealize(byte[] protocolMessage) throws NetworkMessageDeserializationException {
+        try (JsonParser parser = this.getFactory().createParser(protocolMessage)) {
+            return this.read(parser, protocolMessage);
+        } catch (IOException e) {
+            logger.error("error processing message of " + protocolMessage.length + " bytes", e);
+            throw new NetworkMessageDeserializationException("Cbor deserialization error", e);
+        }
+    }
+
+    @Override
+    public Class<byte[]> protocolClass() {
+        return byte[].class;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+/**
+ * Cbor codec that writes the envelope fields of the messages with one letter
+ * names and the payload objects as arrays of its field values, ordered by field
+ * name, so field names are not sent. Messages of typed payloads are about half
+ * the size of the {@link CborMessageCodec} ones.
+ *
+ * Both sides must register the same payload types by event (and the same
+ * payload classes): a renamed or added field changes the position of the
+ * others. The digest of the registered payloads is the subprotocol version of
+ * the codec, so links whose sides don't share the message types don't
+ * negotiate it, and an array payload of an unregistered event fails to decode
+ * instead of being read as a list of values. The codec is intended for links
+ * negotiated between gateways or clients that share the message types.
+ *
+ * Only this codec reaches the 30-60% size reduction over json of typed
+ * messages, the plain {@link CborMessageCodec} saves about 20%.
+ *
+ * @author egacl
+ */
+public class CompactCborMessageCodec extends CborMessageCodec {
+
+    public CompactCborMessageCodec() {
+        super(false, true);
+    }
+
+    /**
+     * @param lazyPayload
+     *            true to decode the payloads on the first read of the messages
+     */
+    public CompactCborMessageCodec(boolean lazyPayload) {
+        super(lazyPayload, true);
+    }
+
+    @Override
+    public String getSubprotocolVersion() {
+        return this.getPayloadLayoutDigest();
+    }
+}
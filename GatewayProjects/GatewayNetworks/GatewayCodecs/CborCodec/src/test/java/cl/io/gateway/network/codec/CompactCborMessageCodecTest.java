@@ -0,0 +1,182 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessageTypeRegistry;
+import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class CompactCborMessageCodecTest {
+
+    @Test
+    public void roundTripDecodesPositionalPayload() throws Exception {
+        final CompactCborMessageCodec codec = codec(false, Quote.class);
+        final NetworkMessage<Quote> message = new NetworkMessage<>("quote", quote("CLP"));
+        message.setCorrelationId(11L);
+        message.setTarget("bus");
+        final NetworkMessage decoded = codec.deserealize(codec.serialize(message));
+        assertEquals("quote", decoded.getEvent());
+        assertEquals(Long.valueOf(11), decoded.getCorrelationId());
+        assertEquals("bus", decoded.getTarget());
+        assertQuote(message.getMessage(), (Quote) decoded.getMessage());
+    }
+
+    @Test
+    public void lazyRoundTripOverBuffers() throws Exception {
+        final CompactCborMessageCodec codec = codec(true, Quote.class);
+        final Quote quote = quote("USD");
+        quote.legs = null;
+        final ByteBuf out = Unpooled.buffer();
+        try {
+            codec.serialize(new NetworkMessage<>("quote", quote), out);
+            final NetworkMessage decoded = codec.deserealize(out);
+            assertQuote(quote, (Quote) decoded.getMessage());
+            assertNull(((Quote) decoded.getMessage()).legs);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Test
+    public void compactMessagesAreSmaller() throws Exception {
+        final NetworkMessageTypeRegistry registry = new NetworkMessageTypeRegistry();
+        registry.register("quote", Quote.class);
+        final CborMessageCodec plain = new CborMessageCodec();
+        plain.setMessageTypeRegistry(registry);
+        final NetworkMessage<Quote> message = new NetworkMessage<>("quote", quote("CLP"));
+        final int compactSize = codec(false, Quote.class).serialize(message).length;
+        final int plainSize = plain.serialize(message).length;
+        assertTrue(compactSize + " >= " + plainSize, compactSize < plainSize * 0.7);
+    }
+
+    @Test
+    public void batchEnvelopeRoundTrip() throws Exception {
+        final CompactCborMessageCodec codec = codec(false, Quote.class);
+        final ByteBuf first = Unpooled.buffer();
+        final ByteBuf second = Unpooled.buffer();
+        final ByteBuf envelope = Unpooled.buffer();
+        try {
+            codec.serialize(new NetworkMessage<>("quote", quote("USD")), first);
+            codec.serialize(new NetworkMessage<>("quote", quote("EUR")), second);
+            codec.serializeBatch(Arrays.asList(first, second), envelope);
+            final NetworkMessage decoded = codec.deserealize(envelope);
+            assertTrue(decoded.isBatch());
+            final List<NetworkMessage> messages = (List<NetworkMessage>) decoded.getMessage();
+            assertEquals(2, messages.size());
+            assertEquals("USD", ((Quote) messages.get(0).getMessage()).symbol);
+            assertEquals("EUR", ((Quote) messages.get(1).getMessage()).symbol);
+        } finally {
+            first.release();
+            second.release();
+            envelope.release();
+        }
+    }
+
+    @Test
+    public void unregisteredPositionalPayloadFails() throws Exception {
+        final byte[] encoded = codec(false, Quote.class).serialize(new NetworkMessage<>("other", quote("CLP")));
+        assertFails(codec(false, Quote.class), encoded);
+        assertFails(codec(true, Quote.class), encoded);
+    }
+
+    @Test
+    public void malformedMessageFails() throws Exception {
+        final byte[] encoded = codec(false, Quote.class).serialize(new NetworkMessage<>("quote", quote("CLP")));
+        assertFails(codec(false, Quote.class), Arrays.copyOf(encoded, encoded.length - 3));
+    }
+
+    @Test
+    public void subprotocolVersionIsTheDigestOfThePayloads() throws Exception {
+        final String version = codec(false, Quote.class).getSubprotocolVersion();
+        assertEquals(version, codec(true, Quote.class).getSubprotocolVersion());
+        assertNotEquals(version, codec(false, QuoteWithAsk.class).getSubprotocolVersion());
+        assertEquals(version, new CompressedMessageCodec(codec(false, Quote.class)).getSubprotocolVersion());
+    }
+
+    private static CompactCborMessageCodec codec(final boolean lazyPayload, final Class<?> quoteType) {
+        final NetworkMessageTypeRegistry registry = new NetworkMessageTypeRegistry();
+        registry.register("quote", quoteType);
+        final CompactCborMessageCodec codec = new CompactCborMessageCodec(lazyPayload);
+        codec.setMessageTypeRegistry(registry);
+        return codec;
+    }
+
+    private static Quote quote(final String symbol) {
+        final Quote quote = new Quote();
+        quote.symbol = symbol;
+        quote.bid = 812.25;
+        quote.legs = Arrays.asList(new Leg(10), new Leg(-3));
+        return quote;
+    }
+
+    private static void assertQuote(final Quote expected, final Quote actual) {
+        assertEquals(expected.symbol, actual.symbol);
+        assertEquals(expected.bid, actual.bid, 0);
+        assertEquals(expected.legs == null ? 0 : expected.legs.size(), actual.legs == null ? 0 : actual.legs.size());
+        for (int i = 0; expected.legs != null && i < expected.legs.size(); i++) {
+            assertEquals(expected.legs.get(i).quantity, actual.legs.get(i).quantity);
+        }
+    }
+
+    private static void assertFails(final CompactCborMessageCodec codec, final byte[] encoded) {
+        try {
+            codec.deserealize(encoded);
+            fail("Message decoded");
+        } catch (NetworkMessageDeserializationException e) {
+            // se espera el error
+        }
+    }
+
+    public static class Quote {
+
+        String symbol;
+
+        double bid;
+
+        List<Leg> legs;
+    }
+
+    public static class QuoteWithAsk extends Quote {
+
+        double ask;
+    }
+
+    public static class Leg {
+
+        int quantity;
+
+        public Leg() {
+        }
+
+        Leg(final int quantity) {
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessageTypeRegistry;
+import cl.io.gateway.network.driver.IBatchEventMessageCodec;
+import cl.io.gateway.network.driver.IStreamEventMessageCodec;
+import cl.io.gateway.network.driver.ITypedEventMessageCodec;
+import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
+import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Json codec message implementation that uses the serializers generated at
+ * build time for the message payload types (see {@link MessageSerializers}).
+ * The message envelope is written and read field by field, and payloads are
+ * written and read by its generated serializer, without reflective field
+ * access. It writes the same json documents than {@link GSonMessageCodec}, so
+ * both ends of a connection can use either codec.
+ *
+ * @author egacl
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class GeneratedMessageCodec
+        implements IStreamEventMessageCodec<String>, ITypedEventMessageCodec<String>, IBatchEventMessageCodec<String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(GeneratedMessageCodec.class);
+
+    private static final Type CONTEXT_TYPE = new TypeToken<Map<String, Object>>() {
+    }.getType();
+
+    private final MessageSerializers serializers = new MessageSerializers();
+
+    private final TypeAdapter<Map<String, Object>> contextAdapter = this.serializers.getAdapter(CONTEXT_TYPE);
+
+    private final TypeAdapter<JsonElement> treeAdapter = this.serializers.getAdapter(JsonElement.class);
+
+    /**
+     * payload serializers by type
+     */
+    private final Map<Type, TypeAdapter> payloadAdapters = new ConcurrentHashMap<>();
+
+    private volatile NetworkMessageTypeRegistry registry = new NetworkMessageTypeRegistry();
+
+    @Override
+    public void setMessageTypeRegistry(NetworkMessageTypeRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public String serialize(NetworkMessage message) throws NetworkMessageSerializationException {
+        final StringWriter writer = new StringWriter();
+        this.toJson(writer, message);
+        return writer.toString();
+    }
+
+    @Override
+    public void serialize(NetworkMessage message, ByteBuf out) throws NetworkMessageSerializationException {
+        this.toJson(new OutputStreamWriter(new ByteBufOutputStream(out), CharsetUtil.UTF_8), message);
+    }
+
+    @Override
+    public void serializeBatch(List<ByteBuf> messages, ByteBuf out) throws NetworkMessageSerializationException {
+        BatchEnvelopes.writeJsonArray(messages, out);
+    }
+
+    @Override
+    public NetworkMessage deserealize(String protocolMessage) throws NetworkMessageDeserializationException {
+        try {
+            return this.fromJson(new StringReader(protocolMessage));
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            logger.error("error processing message '" + protocolMessage + "'", e);
+            throw new NetworkMessageDeserializationException("Json deserialization error", e);
+        }
+    }
+
+    @Override
+    public NetworkMessage deserealize(ByteBuf content) throws NetworkMessageDeserializationException {
+        try {
+            return this.fromJson(
+                    new InputStreamReader(new ByteBufInputStream(content.duplicate()), CharsetUtil.UTF_8));
+        } catch (IOException | JsonParseException | IllegalStateException | NumberFormatException e) {
+            logger.error("error processing message of " + content.readableBytes() + " bytes", e);
+            throw new NetworkMessageDeserializationException("Json deserialization error", e);
+        }
+    }
+
+    private void toJson(final Writer writer, final NetworkMessage message)
+            throws NetworkMessageSerializationException {
+        try {
+            // same writer settings of gson.toJson
+            final JsonWriter out = new JsonWriter(writer);
+            out.setLenient(true);
+            out.setHtmlSafe(true);
+            out.setSerializeNulls(false);
+            if (message.isBatch()) {
+                out.beginArray();
+                for (NetworkMessage batchMessage : (List<NetworkMessage>) message.getMessage()) {
+                    this.write(out, batchMessage);
+                }
+                out.endArray();
+            } else {
+                this.write(out, message);
+            }
+            out.flush();
+        } catch (IOException | JsonParseException e) {
+            throw new NetworkMessageSerializationException("Json serialization error for " + message, e);
+        }
+    }
+
+    private void write(final JsonWriter out, final NetworkMessage message) throws IOException {
+        out.beginObject();
+        if (message.hasContext()) {
+            out.name("context");
+            out.beginObject();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) message.getContextCopy()).entrySet()) {
+                if (entry.getValue() != null) {
+                    out.name(entry.getKey());
+                    this.payloadAdapter(entry.getValue().getClass()).write(out, entry.getValue());
+                }
+            }
+            out.endObject();
+        }
+        if (message.getSource() != null) {
+            out.name("source").value(message.getSource());
+        }
+        if (message.getTarget() != null) {
+            out.name("target").value(message.getTarget());
+        }
+        if (message.getEvent() != null) {
+            out.name("event").value(message.getEvent());
+        }
+        if (message.getChannelId() != null) {
+            out.name("channelId").value(message.getChannelId());
+        }
+        if (message.getCorrelationId() != null) {
+            out.name("correlationId").value(message.getCorrelationId());
+        }
+        if (message.getReplyTo() != null) {
+            out.name("replyTo").value(message.getReplyTo());
+        }
+        if (message.getMessage() != null) {
+            out.name("message");
+            this.payloadAdapter(message.getMessage().getClass()).write(out, message.getMessage());
+        }
+        out.endObject();
+    }
+
+    private NetworkMessage fromJson(final Reader reader) throws IOException, NetworkMessageDeserializationException {
+        final JsonReader in = new JsonReader(reader);
+        in.setLenient(true);
+        if (in.peek() == JsonToken.BEGIN_ARRAY) {
+            final List<NetworkMessage> messages = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+                messages.add(this.read(in));
+            }
+            in.endArray();
+            return NetworkMessage.createBatch(messages);
+        }
+        final NetworkMessage message = this.read(in);
+        if (message == null) {
+            throw new NetworkMessageDeserializationException("Json deserialization error, message is null?");
+        }
+        if (NetworkMessage.BATCH_EVENT.equals(message.getEvent())) {
+            // only a json array is an envelope of messages
+            message.release();
+            throw new NetworkMessageDeserializationException("Json deserialization error, reserved event "
+                    + NetworkMessage.BATCH_EVENT);
+        }
+        return message;
+    }
+
+    private NetworkMessage read(final JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        final NetworkMessage message = this.registry.newMessage();
+        try {
+            this.read(in, message);
+        } catch (IOException | RuntimeException e) {
+            // a pooled message is returned to its pool
+            message.release();
+            throw e;
+        }
+        return message;
+    }
+
+    private void read(final JsonReader in, final NetworkMessage message) throws IOException {
+        JsonElement pendingPayload = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            final String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                continue;
+            }
+            switch (name) {
+            case "event":
+                message.setEvent(this.registry.getEvent(in.nextString()));
+                break;
+            case "message":
+                if (message.getEvent() == null) {
+                    // the event is unknown yet
+                    pendingPayload = this.treeAdapter.read(in);
+                } else {
+                    message.setMessage(this.payloadAdapter(this.registry.getType(message.getEvent())).read(in));
+                }
+                break;
+            case "context":
+                for (Map.Entry<String, Object> entry : this.contextAdapter.read(in).entrySet()) {
+                    message.putContext(entry.getKey(), entry.getValue());
+                }
+                break;
+            case "source":
+                message.setSource(in.nextString());
+                break;
+            case "target":
+                message.setTarget(in.nextString());
+                break;
+            case "channelId":
+                message.setChannelId(in.nextString());
+                break;
+            case "correlationId":
+                message.setCorrelationId(in.nextLong());
+                break;
+            case "replyTo":
+                message.setReplyTo(in.nextLong());
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        if (pendingPayload != null) {
+            message.setMessage(
+                    this.payloadAdapter(this.registry.getType(message.getEvent())).fromJsonTree(pendingPayload));
+        }
+    }
+
+    private TypeAdapter payloadAdapter(Type type) {
+        if (type == null) {
+            type = Object.class;
+        }
+        TypeAdapter adapter = this.payloadAdapters.get(type);
+        if (adapter == null) {
+            adapter = this.serializers.getAdapter(type);
+            this.payloadAdapters.put(type, adapter);
+        }
+        return adapter;
+    }
+
+    @Override
+    public Class<String> protocolClass() {
+        return String.class;
+    }
+}
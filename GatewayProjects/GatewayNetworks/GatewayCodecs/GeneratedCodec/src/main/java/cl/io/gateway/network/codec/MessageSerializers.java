@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.lang.reflect.Type;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Serializers of message payload types. The serializer of a type is the class
+ * generated at build time by the message serializer annotation processor (a gson
+ * type adapter named as the type binary name, with '_' instead of '$', followed
+ * by {@link #SERIALIZER_SUFFIX}), it is loaded once with the class loader of the
+ * type. Types without generated serializer are serialized by gson.
+ *
+ * @author egacl
+ */
+public final class MessageSerializers {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageSerializers.class);
+
+    public static final String SERIALIZER_SUFFIX = "_MessageSerializer";
+
+    private final Gson gson = new GsonBuilder().registerTypeAdapterFactory(new GeneratedSerializerFactory()).create();
+
+    /**
+     * Returns the serializer of a type, resolve it once and keep it.
+     *
+     * @param type
+     *            java type
+     * @return type serializer
+     */
+    public <T> TypeAdapter<T> getAdapter(final Class<T> type) {
+        return this.gson.getAdapter(type);
+    }
+
+    /**
+     * Returns the serializer of a type, resolve it once and keep it.
+     *
+     * @param type
+     *            java type
+     * @return type serializer
+     */
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> getAdapter(final Type type) {
+        return (TypeAdapter<T>) this.gson.getAdapter(TypeToken.get(type));
+    }
+
+    public Gson getGson() {
+        return this.gson;
+    }
+
+    /**
+     * @param typeName
+     *            binary name of the type
+     * @return class name of the generated serializer of the type
+     */
+    public static String serializerClassName(final String typeName) {
+        final int packageEnd = typeName.lastIndexOf('.');
+        return typeName.substring(0, packageEnd + 1) + typeName.substring(packageEnd + 1).replace('$', '_')
+                + SERIALIZER_SUFFIX;
+    }
+
+    /**
+     * Gson factory of the generated serializers.
+     */
+    private final class GeneratedSerializerFactory implements TypeAdapterFactory {
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> typeToken) {
+            final Class<?> type = typeToken.getRawType();
+            if (type.isPrimitive() || type.isArray() || type.getClassLoader() == null
+                    || typeToken.getType() != type) {
+                return null;
+            }
+            final Class<?> serializerClass;
+            try {
+                serializerClass = Class.forName(serializerClassName(type.getName()), true, type.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                return null;
+            }
+            try {
+                logger.debug("Using generated serializer " + serializerClass.getName());
+                return (TypeAdapter<T>) serializerClass.getConstructor(MessageSerializers.class)
+                        .newInstance(MessageSerializers.this);
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                logger.error("Error creating generated serializer " + serializerClass.getName(), e);
+                return null;
+            }
+        }
+    }
+}
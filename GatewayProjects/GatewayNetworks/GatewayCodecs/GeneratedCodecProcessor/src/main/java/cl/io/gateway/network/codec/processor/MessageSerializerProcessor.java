@@ -0,0 +1,649 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor that generates the serializers of the message payload
+ * types used by gateway message handlers (the type of the
+ * {@code GatewayMessageContext} parameter of {@code @GatewayMessageHandler}
+ * methods) and message filters ({@code @GatewayMessageFilter(messageType)}),
+ * and of the types of their fields.
+ *
+ * Serializers are gson type adapters that write and read every field (the same
+ * fields gson serializes) directly or through its getter and setter, they are
+ * generated in the package of the type and found at runtime by
+ * {@code MessageSerializers}. Types that can't be accessed without reflection
+ * (private fields without accessors, no default constructor, generic types...)
+ * are not generated and they are serialized by gson.
+ *
+ * @author egacl
+ */
+@SupportedAnnotationTypes({ MessageSerializerProcessor.HANDLER_ANNOTATION,
+        MessageSerializerProcessor.FILTER_ANNOTATION })
+public class MessageSerializerProcessor extends AbstractProcessor {
+
+    static final String HANDLER_ANNOTATION = "cl.io.gateway.messaging.GatewayMessageHandler";
+
+    static final String FILTER_ANNOTATION = "cl.io.gateway.messaging.GatewayMessageFilter";
+
+    private static final String SERIALIZED_NAME_ANNOTATION = "com.google.gson.annotations.SerializedName";
+
+    private static final String SERIALIZER_SUFFIX = "_MessageSerializer";
+
+    /**
+     * Types compiled from sources, their package members can be accessed
+     */
+    private final Set<String> sourceTypes = new HashSet<>();
+
+    /**
+     * Types already generated or discarded
+     */
+    private final Set<String> processedTypes = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (TypeElement rootType : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            this.sourceTypes.add(rootType.getQualifiedName().toString());
+        }
+        final Deque<TypeMirror> pendingTypes = new ArrayDeque<>();
+        for (TypeElement annotation : annotations) {
+            final boolean handler = annotation.getQualifiedName().contentEquals(HANDLER_ANNOTATION);
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                final TypeMirror messageType = handler ? this.handlerMessageType(element)
+                        : this.filterMessageType(element, annotation);
+                if (messageType != null) {
+                    pendingTypes.add(messageType);
+                }
+            }
+        }
+        while (!pendingTypes.isEmpty()) {
+            final TypeElement type = this.candidateType(pendingTypes.poll(), pendingTypes);
+            if (type != null && this.processedTypes.add(type.getQualifiedName().toString())) {
+                final List<SerializedField> fields = this.serializedFields(type);
+                if (fields != null) {
+                    for (SerializedField field : fields) {
+                        pendingTypes.add(field.type);
+                    }
+                    this.generate(type, fields);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return message type of the {@code GatewayMessageContext} parameter
+     */
+    private TypeMirror handlerMessageType(final Element element) {
+        if (element.getKind() != ElementKind.METHOD) {
+            return null;
+        }
+        final List<? extends VariableElement> parameters = ((ExecutableElement) element).getParameters();
+        if (parameters.size() != 1 || parameters.get(0).asType().getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        final List<? extends TypeMirror> typeArguments = ((DeclaredType) parameters.get(0).asType())
+                .getTypeArguments();
+        return typeArguments.size() == 1 ? typeArguments.get(0) : null;
+    }
+
+    /**
+     * @return message type of the filter annotation
+     */
+    private TypeMirror filterMessageType(final Element element, final TypeElement annotation) {
+        for (AnnotationMirror mirror : this.processingEnv.getElementUtils().getAllAnnotationMirrors(element)) {
+            if (!mirror.getAnnotationType().asElement().equals(annotation)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues()
+                    .entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("messageType")
+                        && entry.getValue().getValue() instanceof TypeMirror) {
+                    return (TypeMirror) entry.getValue().getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the class of the type if it is an application class whose
+     * serializer can be generated, the type arguments and array components of the
+     * type are added to the pending types.
+     */
+    private TypeElement candidateType(final TypeMirror type, final Deque<TypeMirror> pendingTypes) {
+        switch (type.getKind()) {
+        case ARRAY:
+            pendingTypes.add(((ArrayType) type).getComponentType());
+            return null;
+        case WILDCARD:
+            if (((WildcardType) type).getExtendsBound() != null) {
+                pendingTypes.add(((WildcardType) type).getExtendsBound());
+            }
+            return null;
+        case DECLARED:
+            pendingTypes.addAll(((DeclaredType) type).getTypeArguments());
+            final TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+            final String name = element.getQualifiedName().toString();
+            if (element.getKind() != ElementKind.CLASS || name.startsWith("java.") || name.startsWith("javax.")) {
+                return null;
+            }
+            return element;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the fields serialized by gson (instance fields of the class and its
+     * super classes that are not transient) with the way to access them, or null
+     * if some of them can't be accessed without reflection.
+     */
+    private List<SerializedField> serializedFields(final TypeElement type) {
+        if (!type.getTypeParameters().isEmpty()) {
+            return this.discard(type, "it is a generic type");
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return this.discard(type, "it is abstract");
+        }
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS
+                || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))) {
+            return this.discard(type, "it is not a top level or static nested class");
+        }
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if (!this.isAccessible(type, element)) {
+                return this.discard(type, "it is not accessible from its package");
+            }
+        }
+        boolean defaultConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            defaultConstructor |= constructor.getParameters().isEmpty() && this.isAccessible(type, constructor);
+        }
+        if (!defaultConstructor) {
+            return this.discard(type, "it doesn't have an accessible default constructor");
+        }
+        final List<ExecutableElement> methods = ElementFilter
+                .methodsIn(this.processingEnv.getElementUtils().getAllMembers(type));
+        final List<SerializedField> fields = new ArrayList<>();
+        final Set<String> names = new HashSet<>();
+        for (TypeElement declaringType = type; declaringType != null; declaringType = this.superclass(declaringType)) {
+            if (declaringType != type && declaringType.getQualifiedName().toString().startsWith("java.")) {
+                return this.discard(type, "it extends " + declaringType.getQualifiedName());
+            }
+            for (VariableElement field : ElementFilter.fieldsIn(declaringType.getEnclosedElements())) {
+                if (field.getModifiers().contains(Modifier.STATIC)
+                        || field.getModifiers().contains(Modifier.TRANSIENT)) {
+                    continue;
+                }
+                final SerializedField serializedField = new SerializedField(field, this.serializedName(field),
+                        this.processingEnv.getTypeUtils().asMemberOf((DeclaredType) type.asType(), field));
+                if (!names.add(serializedField.name)) {
+                    return this.discard(type, "it declares multiple fields named " + serializedField.name);
+                }
+                if (this.hasTypeVariables(serializedField.type)) {
+                    return this.discard(type, "field " + field.getSimpleName() + " has a generic type");
+                }
+                final boolean accessible = this.isAccessible(type, field) && this.isAccessible(type, declaringType);
+                if (accessible) {
+                    serializedField.getter = "value." + field.getSimpleName();
+                } else {
+                    final ExecutableElement getter = this.accessor(type, methods, field, serializedField.type,
+                            true);
+                    serializedField.getter = getter == null ? null : "value." + getter.getSimpleName() + "()";
+                }
+                if (accessible && !field.getModifiers().contains(Modifier.FINAL)) {
+                    serializedField.setter = "value." + field.getSimpleName() + " = %s;";
+                } else {
+                    final ExecutableElement setter = this.accessor(type, methods, field, serializedField.type,
+                            false);
+                    serializedField.setter = setter == null ? null : "value." + setter.getSimpleName() + "(%s);";
+                }
+                if (serializedField.getter == null || serializedField.setter == null) {
+                    return this.discard(type, "field " + field.getSimpleName() + " doesn't have accessible getter"
+                            + " and setter");
+                }
+                fields.add(serializedField);
+            }
+        }
+        return fields;
+    }
+
+    private List<SerializedField> discard(final TypeElement type, final String reason) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                "Message serializer not generated for " + type.getQualifiedName() + ", " + reason
+                        + ". It will be serialized by gson",
+                type);
+        return null;
+    }
+
+    private TypeElement superclass(final TypeElement type) {
+        final TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        final TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+        return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+    }
+
+    /**
+     * Public members are accessible, and members that are not private if the type
+     * is compiled from sources in the package of the generated serializer.
+     */
+    private boolean isAccessible(final TypeElement type, final Element member) {
+        if (member.getModifiers().contains(Modifier.PUBLIC)) {
+            return true;
+        }
+        final PackageElement typePackage = this.processingEnv.getElementUtils().getPackageOf(type);
+        return !member.getModifiers().contains(Modifier.PRIVATE)
+                && typePackage.equals(this.processingEnv.getElementUtils().getPackageOf(member))
+                && this.sourceTypes.contains(this.topLevelType(member).getQualifiedName().toString());
+    }
+
+    private TypeElement topLevelType(final Element element) {
+        Element topLevel = element;
+        while (!(topLevel.getEnclosingElement() instanceof PackageElement)) {
+            topLevel = topLevel.getEnclosingElement();
+        }
+        return (TypeElement) topLevel;
+    }
+
+    /**
+     * Finds the java bean getter or setter of the field.
+     */
+    private ExecutableElement accessor(final TypeElement type, final List<ExecutableElement> methods,
+            final VariableElement field, final TypeMirror fieldType, final boolean getter) {
+        final String property = Character.toUpperCase(field.getSimpleName().charAt(0))
+                + field.getSimpleName().toString().substring(1);
+        for (ExecutableElement method : methods) {
+            if (method.getModifiers().contains(Modifier.STATIC) || !this.isAccessible(type, method)) {
+                continue;
+            }
+            final TypeMirror methodType = this.processingEnv.getTypeUtils()
+                    .asMemberOf((DeclaredType) type.asType(), method);
+            final List<? extends TypeMirror> parameterTypes = ((javax.lang.model.type.ExecutableType) methodType)
+                    .getParameterTypes();
+            final TypeMirror returnType = ((javax.lang.model.type.ExecutableType) methodType).getReturnType();
+            final String name = method.getSimpleName().toString();
+            if (getter && parameterTypes.isEmpty()
+                    && this.processingEnv.getTypeUtils().isSameType(returnType, fieldType)
+                    && (name.equals("get" + property)
+                            || (fieldType.getKind() == TypeKind.BOOLEAN && name.equals("is" + property)))) {
+                return method;
+            }
+            if (!getter && parameterTypes.size() == 1 && name.equals("set" + property)
+                    && this.processingEnv.getTypeUtils().isSameType(parameterTypes.get(0), fieldType)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private String serializedName(final VariableElement field) {
+        for (AnnotationMirror mirror : field.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(SERIALIZED_NAME_ANNOTATION)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror
+                        .getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        return (String) entry.getValue().getValue();
+                    }
+                }
+            }
+        }
+        return field.getSimpleName().toString();
+    }
+
+    private boolean hasTypeVariables(final TypeMirror type) {
+        switch (type.getKind()) {
+        case TYPEVAR:
+            return true;
+        case ARRAY:
+            return this.hasTypeVariables(((ArrayType) type).getComponentType());
+        case WILDCARD:
+            final WildcardType wildcard = (WildcardType) type;
+            return (wildcard.getExtendsBound() != null && this.hasTypeVariables(wildcard.getExtendsBound()))
+                    || (wildcard.getSuperBound() != null && this.hasTypeVariables(wildcard.getSuperBound()));
+        case DECLARED:
+            for (TypeMirror typeArgument : ((DeclaredType) type).getTypeArguments()) {
+                if (this.hasTypeVariables(typeArgument)) {
+                    return true;
+                }
+            }
+            return false;
+        default:
+            return false;
+        }
+    }
+
+    private void generate(final TypeElement type, final List<SerializedField> fields) {
+        final String packageName = this.processingEnv.getElementUtils().getPackageOf(type).getQualifiedName()
+                .toString();
+        final String binaryName = this.processingEnv.getElementUtils().getBinaryName(type).toString();
+        final String simpleName = binaryName.substring(packageName.isEmpty() ? 0 : packageName.length() + 1)
+                .replace('$', '_') + SERIALIZER_SUFFIX;
+        final String typeName = type.getQualifiedName().toString();
+        final SourceWriter source = new SourceWriter();
+        if (!packageName.isEmpty()) {
+            source.line("package %s;", packageName).line();
+        }
+        source.line("/**").line(" * Serializer of {@link %s}, generated by %s.", typeName,
+                MessageSerializerProcessor.class.getName()).line(" */");
+        source.line("@SuppressWarnings({ \"rawtypes\", \"unchecked\" })");
+        source.open("public final class %s extends com.google.gson.TypeAdapter<%s> {", simpleName, typeName);
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).kind == FieldKind.OTHER) {
+                source.line().line("private final com.google.gson.TypeAdapter<%s> adapter%d;", fields.get(i).type,
+                        i);
+            }
+        }
+        source.line();
+        source.open("public %s(final cl.io.gateway.network.codec.MessageSerializers serializers) {", simpleName);
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).kind == FieldKind.OTHER) {
+                source.line("this.adapter%d = serializers.getAdapter(%s);", i, this.typeExpression(fields.get(i).type));
+            }
+        }
+        source.close("}").line();
+        // write method
+        source.line("@Override");
+        source.open("public void write(final com.google.gson.stream.JsonWriter out, final %s value)"
+                + " throws java.io.IOException {", typeName);
+        source.open("if (value == null) {").line("out.nullValue();").line("return;").close("}");
+        source.line("out.beginObject();");
+        for (int i = 0; i < fields.size(); i++) {
+            this.writeField(source, fields.get(i), i);
+        }
+        source.line("out.endObject();");
+        source.close("}").line();
+        // read method
+        source.line("@Override");
+        source.open("public %s read(final com.google.gson.stream.JsonReader in) throws java.io.IOException {",
+                typeName);
+        source.open("if (in.peek() == com.google.gson.stream.JsonToken.NULL) {").line("in.nextNull();")
+                .line("return null;").close("}");
+        source.line("final %s value = new %s();", typeName, typeName);
+        source.line("in.beginObject();");
+        source.open("while (in.hasNext()) {");
+        source.open("switch (in.nextName()) {");
+        for (int i = 0; i < fields.size(); i++) {
+            this.readField(source, fields.get(i), i);
+        }
+        source.line("default:").line("    in.skipValue();");
+        source.close("}");
+        source.close("}");
+        source.line("in.endObject();").line("return value;");
+        source.close("}");
+        source.close("}");
+        try (Writer writer = this.processingEnv.getFiler()
+                .createSourceFile(packageName.isEmpty() ? simpleName : packageName + "." + simpleName, type)
+                .openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Error writing message serializer " + simpleName + ": " + e.getMessage(), type);
+        }
+    }
+
+    private void writeField(final SourceWriter source, final SerializedField field, final int index) {
+        final String name = this.processingEnv.getElementUtils().getConstantExpression(field.name);
+        if (field.type.getKind().isPrimitive()) {
+            source.line("out.name(%s).value(%s);", name, field.kind.writeExpression(field.getter));
+            return;
+        }
+        source.line("final %s f%d = %s;", field.type, index, field.getter);
+        source.open("if (f%d != null) {", index).line("out.name(%s);", name);
+        if (field.kind == FieldKind.OTHER) {
+            source.line("this.adapter%d.write(out, f%d);", index, index);
+        } else {
+            source.line("out.value(%s);", field.kind.writeExpression("f" + index));
+        }
+        source.close("}");
+    }
+
+    private void readField(final SourceWriter source, final SerializedField field, final int index) {
+        source.line("case %s:", this.processingEnv.getElementUtils().getConstantExpression(field.name));
+        source.indent();
+        if (field.kind == FieldKind.OTHER) {
+            source.line(field.setter, String.format("this.adapter%d.read(in)", index));
+        } else {
+            source.open("if (in.peek() == com.google.gson.stream.JsonToken.NULL) {").line("in.nextNull();");
+            if (!field.type.getKind().isPrimitive()) {
+                source.line(field.setter, "null");
+            }
+            source.close("} else {").indent().line(field.setter, field.kind.readExpression).close("}");
+        }
+        source.line("break;");
+        source.unindent();
+    }
+
+    /**
+     * @return java expression with the reflection type of the type
+     */
+    private String typeExpression(final TypeMirror type) {
+        TypeMirror component = type;
+        while (component.getKind() == TypeKind.ARRAY) {
+            component = ((ArrayType) component).getComponentType();
+        }
+        if (component.getKind() == TypeKind.DECLARED && !((DeclaredType) component).getTypeArguments().isEmpty()) {
+            return "new com.google.gson.reflect.TypeToken<" + type + ">() {}.getType()";
+        }
+        return this.processingEnv.getTypeUtils().erasure(type) + ".class";
+    }
+
+    /**
+     * Kinds of field types written and read without type adapter.
+     */
+    private enum FieldKind {
+        BOOLEAN("in.nextBoolean()"),
+        INT("in.nextInt()"),
+        LONG("in.nextLong()"),
+        SHORT("(short) in.nextInt()"),
+        BYTE("(byte) in.nextInt()"),
+        DOUBLE("in.nextDouble()"),
+        FLOAT("(float) in.nextDouble()"),
+        CHAR("in.nextString().charAt(0)"),
+        STRING("in.peek() == com.google.gson.stream.JsonToken.BOOLEAN ? Boolean.toString(in.nextBoolean())"
+                + " : in.nextString()"),
+        OTHER(null);
+
+        private final String readExpression;
+
+        private FieldKind(final String readExpression) {
+            this.readExpression = readExpression;
+        }
+
+        /**
+         * Argument of the json writer method that writes the same json value than
+         * gson
+         */
+        private String writeExpression(final String value) {
+            switch (this) {
+            case FLOAT:
+                // as a number, widened to double it would have more decimals
+                return "Float.valueOf(" + value + ")";
+            case CHAR:
+                return "String.valueOf(" + value + ")";
+            default:
+                return value;
+            }
+        }
+
+        private static FieldKind of(final TypeMirror type) {
+            switch (type.getKind()) {
+            case BOOLEAN:
+                return BOOLEAN;
+            case INT:
+                return INT;
+            case LONG:
+                return LONG;
+            case SHORT:
+                return SHORT;
+            case BYTE:
+                return BYTE;
+            case DOUBLE:
+                return DOUBLE;
+            case FLOAT:
+                return FLOAT;
+            case CHAR:
+                return CHAR;
+            case DECLARED:
+                switch (((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString()) {
+                case "java.lang.Boolean":
+                    return BOOLEAN;
+                case "java.lang.Integer":
+                    return INT;
+                case "java.lang.Long":
+                    return LONG;
+                case "java.lang.Short":
+                    return SHORT;
+                case "java.lang.Byte":
+                    return BYTE;
+                case "java.lang.Double":
+                    return DOUBLE;
+                case "java.lang.Float":
+                    return FLOAT;
+                case "java.lang.Character":
+                    return CHAR;
+                case "java.lang.String":
+                    return STRING;
+                default:
+                    return OTHER;
+                }
+            default:
+                return OTHER;
+            }
+        }
+    }
+
+    /**
+     * Serialized field of a type.
+     */
+    private static final class SerializedField {
+
+        private final VariableElement field;
+
+        private final String name;
+
+        private final TypeMirror type;
+
+        private final FieldKind kind;
+
+        /**
+         * java expression that reads the field value
+         */
+        private String getter;
+
+        /**
+         * java statement format that sets the field value
+         */
+        private String setter;
+
+        private SerializedField(final VariableElement field, final String name, final TypeMirror type) {
+            this.field = field;
+            this.name = name;
+            this.type = type;
+            this.kind = FieldKind.of(type);
+        }
+
+        @Override
+        public String toString() {
+            return this.field.getSimpleName() + " " + this.name;
+        }
+    }
+
+    /**
+     * Indented source code builder.
+     */
+    private static final class SourceWriter {
+
+        private final StringBuilder source = new StringBuilder();
+
+        private int indentation;
+
+        private SourceWriter line() {
+            this.source.append('\n');
+            return this;
+        }
+
+        private SourceWriter line(final String format, final Object... args) {
+            for (int i = 0; i < this.indentation; i++) {
+                this.source.append("    ");
+            }
+            this.source.append(args.length == 0 ? format : String.format(format, args)).append('\n');
+            return this;
+        }
+
+        private SourceWriter open(final String format, final Object... args) {
+            return this.line(format, args).indent();
+        }
+
+        private SourceWriter close(final String line) {
+            return this.unindent().line(line);
+        }
+
+        private SourceWriter indent() {
+            this.indentation++;
+            return this;
+        }
+
+        private SourceWriter unindent() {
+            this.indentation--;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return this.source.toString();
+        }
+    }
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.PropertyNamingStrategy;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.cfg.MapperConfig;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.introspect.AnnotatedField;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.databind.deser.std.UntypedObjectDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessageTypeRegistry;
+import cl.io.gateway.network.driver.IBatchEventMessageCodec;
+import cl.io.gateway.network.driver.IStreamEventMessageCodec;
+import cl.io.gateway.network.driver.ITypedEventMessageCodec;
+import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
+import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+/**
+ * Base of the codecs that map messages with a jackson object mapper. The data
+ * format (json, cbor, ...) is given by the jackson factory of the codec, and
+ * messages are mapped as gson does: fields of messages and payloads, without
+ * null values, batch envelopes as arrays and untyped numbers as doubles.
+ *
+ * Field accessors of payload types are generated in bytecode by the afterburner
+ * module instead of using reflection. Payload types that are decoded must have
+ * a default constructor.
+ *
+ * Lazy codecs read only the message envelope: object and array payloads are
+ * kept in its raw form and decoded on the first {@link NetworkMessage#getMessage()}
+ * call, so messages routed without reading its payload never decode it. When
+ * such a message is written again by the same codec its payload is copied in
+ * the raw form and only the envelope is encoded.
+ *
+ * Compact codecs write the envelope fields with one letter names and the
+ * payload objects as arrays of its field values in alphabetical order of the
+ * field names, without the names. Both sides must register the same payload
+ * types by event, {@link #getPayloadLayoutDigest()} identifies them at
+ * handshake, and an array payload of an unregistered event fails to decode.
+ * Its payload fields are accessed by reflection.
+ *
+ * @author egacl
+ * @param <P>
+ *            Network protocol type.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public abstract class AbstractJacksonMessageCodec<P>
+        implements IStreamEventMessageCodec<P>, ITypedEventMessageCodec<P>, IBatchEventMessageCodec<P> {
+
+    private static final Logger logger = LoggerFactory.getLogger(AbstractJacksonMessageCodec.class);
+
+    private final NetworkMessageDeserializer messageDeserializer = new NetworkMessageDeserializer();
+
+    private final ObjectMapper mapper;
+
+    private final ObjectWriter messageWriter;
+
+    private final ObjectWriter batchWriter;
+
+    private final ObjectReader messageReader;
+
+    private final ObjectReader batchReader;
+
+    /**
+     * payloads are decoded on the first read of the message
+     */
+    private final boolean lazyPayload;
+
+    protected AbstractJacksonMessageCodec(final JsonFactory factory) {
+        this(factory, false);
+    }
+
+    protected AbstractJacksonMessageCodec(final JsonFactory factory, final boolean lazyPayload) {
+        this(factory, lazyPayload, false);
+    }
+
+    /**
+     * @param factory
+     *            factory of the data format
+     * @param lazyPayload
+     *            true to decode the payloads on the first read of the messages
+     * @param compact
+     *            true to write short envelope names and positional payloads
+     */
+    protected AbstractJacksonMessageCodec(final JsonFactory factory, final boolean lazyPayload,
+            final boolean compact) {
+        this.lazyPayload = lazyPayload;
+        this.mapper = new ObjectMapper(factory)
+                .registerModule(new SimpleModule().addDeserializer(NetworkMessage.class, this.messageDeserializer)
+                        .addDeserializer(Object.class, new DoubleNumberObjectDeserializer())
+                        .setSerializerModifier(new PayloadSerializerModifier()))
+                // same object mapping of gson: fields only, without null values
+                .setVisibility(PropertyAccessor.ALL, Visibility.NONE)
+                .setVisibility(PropertyAccessor.FIELD, Visibility.ANY)
+                .setDefaultPropertyInclusion(JsonInclude.Value.construct(JsonInclude.Include.NON_NULL,
+                        JsonInclude.Include.NON_NULL))
+                .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        if (compact) {
+            // the position of the payload fields must be the same in both sides
+            this.mapper.setPropertyNamingStrategy(new CompactEnvelopeNamingStrategy())
+                    .setAnnotationIntrospector(new CompactPayloadIntrospector())
+                    .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY);
+            this.messageDeserializer.setPositionalPayloads(true);
+        } else {
+            // afterburner doesn't fall back to reflection on payloads written as arrays
+            this.mapper.registerModule(new AfterburnerModule());
+        }
+        this.messageWriter = this.mapper.writerFor(NetworkMessage.class);
+        this.batchWriter = this.mapper.writerFor(new TypeReference<List<NetworkMessage>>() {
+        });
+        this.messageReader = this.mapper.readerFor(NetworkMessage.class);
+        this.batchReader = this.mapper.readerFor(new TypeReference<List<NetworkMessage>>() {
+        });
+        this.messageDeserializer.setMapper(this.mapper);
+    }
+
+    @Override
+    public void setMessageTypeRegistry(NetworkMessageTypeRegistry registry) {
+        this.messageDeserializer.setRegistry(registry);
+    }
+
+    @Override
+    public void serialize(NetworkMessage message, ByteBuf out) throws NetworkMessageSerializationException {
+        final OutputStream stream = new ByteBufOutputStream(out);
+        try {
+            this.writerFor(message).writeValue(stream, this.valueFor(message));
+        } catch (IOException e) {
+            throw new NetworkMessageSerializationException("Serialization error for " + message, e);
+        }
+    }
+
+    /**
+     * The envelope is a json array of the messages, binary codecs write it in
+     * their own array form.
+     */
+    @Override
+    public void serializeBatch(List<ByteBuf> messages, ByteBuf out) throws NetworkMessageSerializationException {
+        BatchEnvelopes.writeJsonArray(messages, out);
+    }
+
+    @Override
+    public NetworkMessage deserealize(ByteBuf content) throws NetworkMessageDeserializationException {
+        try (JsonParser parser = this.createParser(content)) {
+            return this.read(parser, content);
+        } catch (IOException e) {
+            logger.error("error processing message of " + content.readableBytes() + " bytes", e);
+            throw new NetworkMessageDeserializationException("Deserialization error", e);
+        }
+    }
+
+    private JsonParser createParser(final ByteBuf content) throws IOException {
+        if (content.hasArray()) {
+            // heap buffers are parsed from their backing array
+            return this.mapper.getFactory().createParser(content.array(),
+                    content.arrayOffset() + content.readerIndex(), content.readableBytes());
+        }
+        final InputStream stream = new ByteBufInputStream(content.duplicate());
+        return this.mapper.getFactory().createParser(stream);
+    }
+
+    /**
+     * Returns the writer for the message, batch envelopes are written as an array
+     * of messages.
+     */
+    protected ObjectWriter writerFor(final NetworkMessage message) {
+        return message.isBatch() ? this.batchWriter : this.messageWriter;
+    }
+
+    /**
+     * Returns the value to write for the message, the list of messages of a batch
+     * envelope or the message itself.
+     */
+    protected Object valueFor(final NetworkMessage message) {
+        return message.isBatch() ? message.getMessage() : message;
+    }
+
+    /**
+     * Raw form of the payload pending of decoding of the message if it was read
+     * by this codec, or null.
+     */
+    Object rawPayloadOf(final NetworkMessage message) {
+        return this.messageDeserializer.rawPayloadOf(message);
+    }
+
+    /**
+     * Writes a payload in the raw form it was read by this codec, json codecs
+     * write it as a raw value.
+     *
+     * @param gen
+     *            generator positioned after the payload field name
+     * @param raw
+     *            json text or bytes of the payload
+     * @throws IOException
+     *             if the payload can't be written
+     */
+    protected void writeRawPayload(final JsonGenerator gen, final Object raw) throws IOException {
+        gen.writeRawValue(raw instanceof String ? (String) raw : new String((byte[]) raw, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a digest of the payloads written by this codec for the registered
+     * message types: the events, the payload types and the properties of every
+     * payload object in the order they are written. Two codecs with the same
+     * digest write the payloads at the same positions.
+     *
+     * @return hexadecimal digest
+     */
+    protected String getPayloadLayoutDigest() {
+        final StringBuilder layout = new StringBuilder();
+        final Set<JavaType> described = new HashSet<>();
+        for (Map.Entry<String, Type> entry : new TreeMap<>(this.messageDeserializer.getRegistry().getTypes())
+                .entrySet()) {
+            layout.append(entry.getKey()).append('=');
+            this.describeLayout(this.mapper.constructType(entry.getValue()), layout, described);
+            layout.append(';');
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(layout.toString().getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private void describeLayout(final JavaType type, final StringBuilder layout, final Set<JavaType> described) {
+        layout.append(type.toCanonical());
+        if (type.isContainerType()) {
+            if (type.getKeyType() != null) {
+                this.describeLayout(type.getKeyType(), layout, described);
+            }
+            this.describeLayout(type.getContentType(), layout, described);
+            return;
+        }
+        final Class<?> raw = type.getRawClass();
+        if (type.isEnumType() || type.isPrimitive() || raw.getName().startsWith("java")
+                || NetworkMessage.class.isAssignableFrom(raw) || !described.add(type)) {
+            return;
+        }
+        layout.append('[');
+        for (BeanPropertyDefinition property : this.mapper.getSerializationConfig().introspect(type)
+                .findProperties()) {
+            layout.append(property.getName()).append(':');
+            this.describeLayout(property.getPrimaryType(), layout, described);
+            layout.append(',');
+        }
+        layout.append(']');
+    }
+
+    public boolean isLazyPayload() {
+        return lazyPayload;
+    }
+
+    protected JsonFactory getFactory() {
+        return this.mapper.getFactory();
+    }
+
+    /**
+     * Reads a message or a batch envelope from the parser.
+     *
+     * @param parser
+     *            parser positioned before the first token
+     * @param document
+     *            string, byte array or buffer read by the parser, lazy codecs copy
+     *            the payloads from it
+     * @return network message
+     * @throws IOException
+     *             if the document is malformed
+     * @throws NetworkMessageDeserializationException
+     *             if the document is empty
+     */
+    protected NetworkMessage read(final JsonParser parser, final Object document)
+            throws IOException, NetworkMessageDeserializationException {
+        ObjectReader messageReader = this.messageReader;
+        ObjectReader batchReader = this.batchReader;
+        if (this.lazyPayload) {
+            final RawPayloadSource source = new RawPayloadSource(document, parser);
+            messageReader = messageReader.withAttribute(RawPayloadSource.class, source);
+            batchReader = batchReader.withAttribute(RawPayloadSource.class, source);
+        }
+        final JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            final List<NetworkMessage> messages = batchReader.readValue(parser);
+            if (messages == null) {
+                throw new NetworkMessageDeserializationException("Deserialization error, batch is null?");
+            }
+            return NetworkMessage.createBatch(messages);
+        }
+        final NetworkMessage message = token == null ? null : messageReader.readValue(parser);
+        if (message == null) {
+            throw new NetworkMessageDeserializationException("Deserialization error, message is null?");
+        }
+        if (NetworkMessage.BATCH_EVENT.equals(message.getEvent())) {
+            // only an array is an envelope of messages
+            message.release();
+            throw new NetworkMessageDeserializationException("Deserialization error, reserved event "
+                    + NetworkMessage.BATCH_EVENT);
+        }
+        return message;
+    }
+
+    /**
+     * Replaces the writer of the message payload field, payloads pending of
+     * decoding are written by {@link RawPayloadPropertyWriter}.
+     */
+    private final class PayloadSerializerModifier extends BeanSerializerModifier {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public List<BeanPropertyWriter> changeProperties(final SerializationConfig config,
+                final BeanDescription beanDesc, final List<BeanPropertyWriter> beanProperties) {
+            if (NetworkMessage.class.isAssignableFrom(beanDesc.getBeanClass())) {
+                for (int i = 0; i < beanProperties.size(); i++) {
+                    if ("message".equals(beanProperties.get(i).getMember().getName())) {
+                        beanProperties.set(i, new RawPayloadPropertyWriter(beanProperties.get(i),
+                                AbstractJacksonMessageCodec.this));
+                    }
+                }
+            }
+            return beanProperties;
+        }
+    }
+
+    /**
+     * Envelope fields of compact codecs are written with one letter names, the
+     * {@link NetworkMessageDeserializer} reads both names.
+     */
+    private static final class CompactEnvelopeNamingStrategy extends PropertyNamingStrategy {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public String nameForField(final MapperConfig<?> config, final AnnotatedField field, final String defaultName) {
+            if (NetworkMessage.class.isAssignableFrom(field.getDeclaringClass())) {
+                final String name = NetworkMessageDeserializer.compactName(defaultName);
+                if (name != null) {
+                    return name;
+                }
+            }
+            return defaultName;
+        }
+    }
+
+    /**
+     * Payload objects of compact codecs are written as arrays of values. The
+     * envelope, maps, collections, enums and jdk types keep their shape, as the
+     * types with an explicit format.
+     */
+    private static final class CompactPayloadIntrospector extends JacksonAnnotationIntrospector {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final JsonFormat.Value ARRAY_FORMAT = JsonFormat.Value.forShape(JsonFormat.Shape.ARRAY);
+
+        @Override
+        public JsonFormat.Value findFormat(final Annotated ann) {
+            final JsonFormat.Value format = super.findFormat(ann);
+            if (format != null || !(ann instanceof AnnotatedClass)) {
+                return format;
+            }
+            final Class<?> type = ann.getRawType();
+            if (NetworkMessage.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type)
+                    || Collection.class.isAssignableFrom(type) || type.isEnum() || type.isArray()
+                    || type.isPrimitive() || type.getName().startsWith("java")) {
+                return null;
+            }
+            return ARRAY_FORMAT;
+        }
+    }
+
+    /**
+     * Untyped values are read as gson does, all numbers are doubles.
+     */
+    private static final class DoubleNumberObjectDeserializer extends UntypedObjectDeserializer {
+
+        private static final long serialVersionUID = 1L;
+
+        private DoubleNumberObjectDeserializer() {
+            super(null, null);
+        }
+
+        @Override
+        public Object deserialize(final JsonParser p, final DeserializationContext ctxt) throws IOException {
+            final JsonToken token = p.currentToken();
+            if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                return p.getDoubleValue();
+            }
+            return super.deserialize(p, ctxt);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
+import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+
+/**
+ * Jackson codec message implementation that transform messages object into
+ * json string object. It writes the same json documents than
+ * {@link GSonMessageCodec}, so both ends of a connection can use either codec.
+ *
+ * @see AbstractJacksonMessageCodec
+ * @author egacl
+ */
+@SuppressWarnings("rawtypes")
+public class JacksonMessageCodec extends AbstractJacksonMessageCodec<String> {
+
+    private static final Logger logger = LoggerFactory.getLogger(JacksonMessageCodec.class);
+
+    public JacksonMessageCodec() {
+        super(new JsonFactory());
+    }
+
+    /**
+     * @param lazyPayload
+     *            true to decode the payloads on the first read of the messages
+     */
+    public JacksonMessageCodec(boolean lazyPayload) {
+        super(new JsonFactory(), lazyPayload);
+    }
+
+    @Override
+    public String serialize(NetworkMessage message) throws NetworkMessageSerializationException {
+        try {
+            return this.writerFor(message).writeValueAsString(this.valueFor(message));
+        } catch (IOException e) {
+            throw new NetworkMessageSerializationException("Json serialization error for " + message, e);
+        }
+    }
+
+    @Override
+    public NetworkMessage deserealize(String protocolMessage) throws NetworkMessageDeserializationException {
+        try (JsonParser parser = this.getFactory().createParser(protocolMessage)) {
+            return this.read(parser, protocolMessage);
+        } catch (IOException e) {
+            logger.error("error processing message '" + protocolMessage + "'", e);
+            throw new NetworkMessageDeserializationException("Json deserialization error", e);
+        }
+    }
+
+    @Override
+    public Class<String> protocolClass() {
+        return String.class;
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import cl.io.gateway.network.INetworkMessagePayload;
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessageTypeRegistry;
+
+/**
+ * Jackson deserializer for network messages. Messages are read field by field
+ * so the payload is decoded with the deserializer of the type registered for
+ * the message event (it only needs an intermediate token buffer if the payload
+ * comes before the event).
+ *
+ * When the document is read by a lazy codec, object and array payloads are
+ * skipped and its raw form is kept in the message to be decoded on its first
+ * read.
+ *
+ * Compact codecs write payload objects as arrays of values, so an array
+ * payload of an event without registered type can't be decoded: it fails
+ * instead of being read as a list of values.
+ *
+ * @author egacl
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+final class NetworkMessageDeserializer extends StdDeserializer<NetworkMessage> {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient volatile NetworkMessageTypeRegistry registry = new NetworkMessageTypeRegistry();
+
+    /**
+     * payload java types by type
+     */
+    private final transient Map<Type, JavaType> payloadTypes = new ConcurrentHashMap<>();
+
+    /**
+     * payload readers by type, used by lazy payloads
+     */
+    private final transient Map<Type, ObjectReader> payloadReaders = new ConcurrentHashMap<>();
+
+    private transient volatile ObjectMapper mapper;
+
+    /**
+     * payload objects are written as arrays of values
+     */
+    private volatile boolean positionalPayloads = false;
+
+    NetworkMessageDeserializer() {
+        super(NetworkMessage.class);
+    }
+
+    void setPositionalPayloads(final boolean positionalPayloads) {
+        this.positionalPayloads = positionalPayloads;
+    }
+
+    NetworkMessageTypeRegistry getRegistry() {
+        return this.registry;
+    }
+
+    void setRegistry(final NetworkMessageTypeRegistry registry) {
+        this.registry = registry;
+    }
+
+    void setMapper(final ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public NetworkMessage deserialize(final JsonParser p, final DeserializationContext ctxt) throws IOException {
+        JsonToken token = p.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = p.nextToken();
+        }
+        final NetworkMessage message = this.registry.newMessage();
+        try {
+            return this.deserialize(p, ctxt, token, message);
+        } catch (IOException | RuntimeException e) {
+            // a pooled message is returned to its pool
+            message.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the one letter name written by compact codecs for an envelope
+     * field.
+     *
+     * @param name
+     *            field name of the message
+     * @return compact name or null if the field is not part of the envelope
+     */
+    static String compactName(final String name) {
+        switch (name) {
+        case "event":
+            return "e";
+        case "message":
+            return "m";
+        case "context":
+            return "x";
+        case "source":
+            return "s";
+        case "target":
+            return "t";
+        case "channelId":
+            return "h";
+        case "correlationId":
+            return "c";
+        case "replyTo":
+            return "r";
+        default:
+            return null;
+        }
+    }
+
+    private NetworkMessage deserialize(final JsonParser p, final DeserializationContext ctxt, JsonToken token,
+            final NetworkMessage message) throws IOException {
+        final RawPayloadSource source = (RawPayloadSource) ctxt.getAttribute(RawPayloadSource.class);
+        TokenBuffer pendingPayload = null;
+        Object rawPayload = null;
+        boolean arrayPayload = false;
+        for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+            final String name = p.getCurrentName();
+            p.nextToken();
+            switch (name) {
+            case "event":
+            case "e":
+                message.setEvent(this.readEvent(p));
+                break;
+            case "message":
+            case "m":
+                arrayPayload = p.currentToken() == JsonToken.START_ARRAY;
+                if (message.getEvent() != null) {
+                    this.checkPayload(p, message.getEvent(), arrayPayload);
+                }
+                if (source != null && (p.currentToken() == JsonToken.START_OBJECT
+                        || p.currentToken() == JsonToken.START_ARRAY)) {
+                    // the payload is decoded on the first read of the message
+                    final long from = source.tokenOffset(p);
+                    p.skipChildren();
+                    rawPayload = source.copy(from, source.currentOffset(p));
+                } else if (message.getEvent() == null) {
+                    // the event is unknown yet
+                    pendingPayload = new TokenBuffer(p, ctxt);
+                    pendingPayload.copyCurrentStructure(p);
+                } else {
+                    message.setMessage(ctxt.readValue(p, this.payloadType(ctxt, message.getEvent())));
+                }
+                break;
+            case "context":
+            case "x":
+                final Map<String, Object> context = ctxt.readValue(p, Map.class);
+                if (context != null) {
+                    for (Map.Entry<String, Object> entry : context.entrySet()) {
+                        message.putContext(entry.getKey(), entry.getValue());
+                    }
+                }
+                break;
+            case "source":
+            case "s":
+                message.setSource(p.getValueAsString());
+                break;
+            case "target":
+            case "t":
+                message.setTarget(p.getValueAsString());
+                break;
+            case "channelId":
+            case "h":
+                message.setChannelId(p.getValueAsString());
+                break;
+            case "correlationId":
+            case "c":
+                message.setCorrelationId(ctxt.readValue(p, Long.class));
+                break;
+            case "replyTo":
+            case "r":
+                message.setReplyTo(ctxt.readValue(p, Long.class));
+                break;
+            default:
+                p.skipChildren();
+            }
+        }
+        if (token != JsonToken.END_OBJECT) {
+            return (NetworkMessage) ctxt.handleUnexpectedToken(NetworkMessage.class, p);
+        }
+        this.checkPayload(p, message.getEvent(), arrayPayload);
+        if (pendingPayload != null) {
+            try (JsonParser payloadParser = pendingPayload.asParser(p.getCodec())) {
+                payloadParser.nextToken();
+                message.setMessage(ctxt.readValue(payloadParser, this.payloadType(ctxt, message.getEvent())));
+            }
+        } else if (rawPayload != null) {
+            message.setPayload(new RawPayload(rawPayload));
+        }
+        return message;
+    }
+
+    /**
+     * Reads the event, known events are resolved from the parser char buffer
+     * to their registered instance without creating a new string.
+     */
+    private String readEvent(final JsonParser p) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_STRING) {
+            final String event = this.registry.getEvent(p.getTextCharacters(), p.getTextOffset(),
+                    p.getTextLength());
+            if (event != null) {
+                return event;
+            }
+        }
+        return p.getValueAsString();
+    }
+
+    /**
+     * Fails if the payload is positional and the event doesn't have a type to
+     * give meaning to its values.
+     */
+    private void checkPayload(final JsonParser p, final String event, final boolean arrayPayload)
+            throws JsonMappingException {
+        if (arrayPayload && this.positionalPayloads && this.registry.getType(event) == null) {
+            throw JsonMappingException.from(p, "Payload of '" + event
+                    + "' event without registered type, compact payloads can't be decoded without it");
+        }
+    }
+
+    private JavaType payloadType(final DeserializationContext ctxt, final String event) {
+        Type type = this.registry.getType(event);
+        if (type == null) {
+            type = Object.class;
+        }
+        JavaType javaType = this.payloadTypes.get(type);
+        if (javaType == null) {
+            javaType = ctxt.getTypeFactory().constructType(type);
+            this.payloadTypes.put(type, javaType);
+        }
+        return javaType;
+    }
+
+    /**
+     * Returns the raw form of the payload pending of decoding of the message if
+     * it was read by this deserializer.
+     *
+     * @return json text, bytes of the document or null
+     */
+    Object rawPayloadOf(final NetworkMessage message) {
+        final INetworkMessagePayload payload = message.getPayload();
+        if (payload instanceof RawPayload && ((RawPayload) payload).owner() == this) {
+            return ((RawPayload) payload).raw;
+        }
+        return null;
+    }
+
+    private ObjectReader payloadReader(final String event) {
+        Type type = this.registry.getType(event);
+        if (type == null) {
+            type = Object.class;
+        }
+        ObjectReader reader = this.payloadReaders.get(type);
+        if (reader == null) {
+            reader = this.mapper.readerFor(this.mapper.getTypeFactory().constructType(type));
+            this.payloadReaders.put(type, reader);
+        }
+        return reader;
+    }
+
+    /**
+     * Payload kept in its raw form (json text or bytes of the document).
+     */
+    private final class RawPayload implements INetworkMessagePayload {
+
+        private final Object raw;
+
+        private RawPayload(final Object raw) {
+            this.raw = raw;
+        }
+
+        private NetworkMessageDeserializer owner() {
+            return NetworkMessageDeserializer.this;
+        }
+
+        @Override
+        public Object decode(final String event) {
+            try {
+                final ObjectReader reader = payloadReader(event);
+                return this.raw instanceof String ? reader.readValue((String) this.raw)
+                        : reader.readValue((byte[]) this.raw);
+            } catch (IOException e) {
+                throw new IllegalStateException("Payload deserialization error of '" + event + "' event", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+
+import cl.io.gateway.network.NetworkMessage;
+
+/**
+ * Writer of the payload field of network messages. Payloads not decoded yet
+ * that were read by the same codec are written in its raw form, so a relayed
+ * message only encodes its envelope again. Payloads of other codecs are decoded
+ * before writing them.
+ *
+ * @author egacl
+ */
+@SuppressWarnings("rawtypes")
+final class RawPayloadPropertyWriter extends BeanPropertyWriter {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient AbstractJacksonMessageCodec<?> codec;
+
+    RawPayloadPropertyWriter(final BeanPropertyWriter base, final AbstractJacksonMessageCodec<?> codec) {
+        super(base);
+        this.codec = codec;
+    }
+
+    @Override
+    public void serializeAsField(final Object bean, final JsonGenerator gen, final SerializerProvider prov)
+            throws Exception {
+        final NetworkMessage message = (NetworkMessage) bean;
+        if (!message.isMessageDecoded()) {
+            final Object raw = this.codec.rawPayloadOf(message);
+            if (raw != null) {
+                gen.writeFieldName(this._name);
+                this.codec.writeRawPayload(gen, raw);
+                return;
+            }
+            // payload received by another codec, the field is written decoded
+            message.getMessage();
+        }
+        super.serializeAsField(bean, gen, prov);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParser;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * Document read by a parser of a lazy codec, it copies the raw form of the
+ * payloads from the document. Parser locations are taken relative to the
+ * location of the parser before its first token, json parsers of byte arrays
+ * report offsets relative to the array start while binary parsers report array
+ * indexes.
+ *
+ * @author egacl
+ */
+final class RawPayloadSource {
+
+    private final Object document;
+
+    private final boolean text;
+
+    private final long base;
+
+    RawPayloadSource(final Object document, final JsonParser parser) {
+        this.document = document;
+        this.text = document instanceof String;
+        this.base = this.offset(parser.getCurrentLocation());
+    }
+
+    /**
+     * Location of the current token start.
+     */
+    long tokenOffset(final JsonParser parser) {
+        return this.offset(parser.getTokenLocation()) - this.base;
+    }
+
+    /**
+     * Location after the last token read.
+     */
+    long currentOffset(final JsonParser parser) {
+        return this.offset(parser.getCurrentLocation()) - this.base;
+    }
+
+    /**
+     * Copies the raw form of a document region.
+     *
+     * @return byte array or string with the region content
+     */
+    Object copy(final long from, final long to) throws IOException {
+        if (from < 0 || to < from) {
+            throw new IOException("Invalid payload location " + from + ".." + to);
+        }
+        if (this.text) {
+            return ((String) this.document).substring((int) from, (int) to);
+        }
+        if (this.document instanceof ByteBuf) {
+            final ByteBuf content = (ByteBuf) this.document;
+            return ByteBufUtil.getBytes(content, content.readerIndex() + (int) from, (int) (to - from));
+        }
+        return Arrays.copyOfRange((byte[]) this.document, (int) from, (int) to);
+    }
+
+    private long offset(final JsonLocation location) {
+        return this.text ? location.getCharOffset() : location.getByteOffset();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessageTypeRegistry;
+import cl.io.gateway.network.driver.ITypedEventMessageCodec;
+import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class JacksonMessageCodecTest {
+
+    @Test
+    public void roundTripDecodesRegisteredType() throws Exception {
+        final JacksonMessageCodec codec = typed(new JacksonMessageCodec());
+        final NetworkMessage<Quote> message = new NetworkMessage<>("quote", quote("CLP"));
+        message.setCorrelationId(5L);
+        final NetworkMessage decoded = codec.deserealize(codec.serialize(message));
+        assertEquals("quote", decoded.getEvent());
+        assertEquals(Long.valueOf(5), decoded.getCorrelationId());
+        assertQuote(message.getMessage(), (Quote) decoded.getMessage());
+    }
+
+    @Test
+    public void bufferRoundTripKeepsMultibyteCharacters() throws Exception {
+        final JacksonMessageCodec codec = typed(new JacksonMessageCodec());
+        final Quote quote = quote("año € 😀");
+        final ByteBuf out = Unpooled.buffer();
+        try {
+            codec.serialize(new NetworkMessage<>("quote", quote), out);
+            assertQuote(quote, (Quote) codec.deserealize(out).getMessage());
+        } finally {
+            out.release();
+        }
+    }
+
+    @Test
+    public void messagesAreReadByTheGsonCodec() throws Exception {
+        final JacksonMessageCodec jackson = typed(new JacksonMessageCodec());
+        final GSonMessageCodec gson = typed(new GSonMessageCodec());
+        final NetworkMessage<Quote> message = new NetworkMessage<>("quote", quote("USD"));
+        message.setSource("origin");
+        final NetworkMessage fromJackson = gson.deserealize(jackson.serialize(message));
+        assertEquals("origin", fromJackson.getSource());
+        assertQuote(message.getMessage(), (Quote) fromJackson.getMessage());
+        final NetworkMessage fromGson = jackson.deserealize(gson.serialize(message));
+        assertEquals("origin", fromGson.getSource());
+        assertQuote(message.getMessage(), (Quote) fromGson.getMessage());
+    }
+
+    @Test
+    public void untypedPayloadUsesGsonTypes() throws Exception {
+        final NetworkMessage decoded = new JacksonMessageCodec()
+                .deserealize("{\"event\":\"other\",\"message\":{\"values\":[1,2]}}");
+        assertEquals(Arrays.asList(1.0, 2.0), ((Map) decoded.getMessage()).get("values"));
+    }
+
+    @Test
+    public void batchEnvelopeRoundTrip() throws Exception {
+        final JacksonMessageCodec codec = typed(new JacksonMessageCodec());
+        final NetworkMessage decoded = codec.deserealize(codec.serialize(NetworkMessage.createBatch(Arrays
+                .asList(new NetworkMessage<>("quote", quote("USD")), new NetworkMessage<>("quote", quote("EUR"))))));
+        assertTrue(decoded.isBatch());
+        final List<NetworkMessage> messages = (List<NetworkMessage>) decoded.getMessage();
+        assertEquals(2, messages.size());
+        assertEquals("EUR", ((Quote) messages.get(1).getMessage()).symbol);
+    }
+
+    @Test(expected = NetworkMessageDeserializationException.class)
+    public void malformedJsonFails() throws Exception {
+        new JacksonMessageCodec().deserealize("{\"event\":\"quote\",\"message\":{\"symbol\":");
+    }
+
+    @Test(expected = NetworkMessageDeserializationException.class)
+    public void invalidPayloadFails() throws Exception {
+        typed(new JacksonMessageCodec()).deserealize("{\"event\":\"quote\",\"message\":{\"bid\":\"high\"}}");
+    }
+
+    @Test
+    public void lazyPayloadIsDecodedOnFirstRead() throws Exception {
+        final JacksonMessageCodec codec = typed(new JacksonMessageCodec(true));
+        final Quote quote = quote("CLP");
+        final NetworkMessage decoded = codec.deserealize(codec.serialize(new NetworkMessage<>("quote", quote)));
+        assertFalse(decoded.isMessageDecoded());
+        assertEquals("quote", decoded.getEvent());
+        assertQuote(quote, (Quote) decoded.getMessage());
+        assertTrue(decoded.isMessageDecoded());
+    }
+
+    @Test
+    public void lazyPayloadIsWrittenAgainWithoutDecoding() throws Exception {
+        final JacksonMessageCodec codec = typed(new JacksonMessageCodec(true));
+        final String json = codec.serialize(new NetworkMessage<>("quote", quote("CLP")));
+        final NetworkMessage decoded = codec.deserealize(json);
+        decoded.setTarget("relay");
+        final String relayed = codec.serialize(decoded);
+        assertFalse(decoded.isMessageDecoded());
+        final NetworkMessage received = typed(new JacksonMessageCodec()).deserealize(relayed);
+        assertEquals("relay", received.getTarget());
+        assertQuote(quote("CLP"), (Quote) received.getMessage());
+    }
+
+    @Test
+    public void invalidLazyPayloadFailsOnRead() throws Exception {
+        final NetworkMessage decoded = typed(new JacksonMessageCodec(true))
+                .deserealize("{\"event\":\"quote\",\"message\":{\"bid\":\"high\"}}");
+        try {
+            decoded.getMessage();
+            fail("Invalid payload decoded");
+        } catch (IllegalStateException e) {
+            // se espera el error
+        }
+    }
+
+    static <C extends ITypedEventMessageCodec> C typed(final C codec) {
+        final NetworkMessageTypeRegistry registry = new NetworkMessageTypeRegistry();
+        registry.register("quote", Quote.class);
+        codec.setMessageTypeRegistry(registry);
+        return codec;
+    }
+
+    static Quote quote(final String symbol) {
+        final Quote quote = new Quote();
+        quote.symbol = symbol;
+        quote.bid = 812.25;
+        quote.tags = Arrays.asList("spot", "fx");
+        return quote;
+    }
+
+    static void assertQuote(final Quote expected, final Quote actual) {
+        assertEquals(expected.symbol, actual.symbol);
+        assertEquals(expected.bid, actual.bid, 0);
+        assertEquals(expected.tags, actual.tags);
+    }
+
+    public static class Quote {
+
+        String symbol;
+
+        double bid;
+
+        List<String> tags;
+    }
+}
@@ -15,25 +15,71 @@
  */
 package cl.io.gateway.websocketdriver;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import cl.io.gateway.network.NetworkMessage;
 import cl.io.gateway.network.driver.AbstractDriverChannelInboundHandler;
 import cl.io.gateway.network.driver.AbstractNetworkDriver;
+import cl.io.gateway.network.driver.IEventMessageCodec;
+import cl.io.gateway.network.driver.IStreamEventMessageCodec;
+import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.AttributeKey;
+import io.netty.util.CharsetUtil;
 
 /**
  * An abstract class that allows you to receive websocket messages from a
- * participating channel on the network (either client or server)
+ * participating channel on the network (either client or server).
+ *
+ * Fragmented messages are not aggregated into one contiguous buffer: every
+ * continuation frame is appended (without copy) to a composite buffer of the
+ * channel, and when the final fragment arrives the message is decoded as a
+ * stream if the codec supports it. Messages are decoded with the codec bound
+ * to the channel at handshake, frames of another protocol (text or binary) are
+ * decoded with the codec registered for its protocol class.
  *
  * @author egacl
  *
  */
 public abstract class AbstractTextWebSocketFrameHandler extends AbstractDriverChannelInboundHandler<WebSocketFrame> {
 
+    private static final Logger logger = LoggerFactory.getLogger(AbstractTextWebSocketFrameHandler.class);
+
+    /**
+     * Websocket close status code for messages bigger than the allowed size
+     */
+    private static final int CLOSE_MESSAGE_TOO_BIG = 1009;
+
+    /**
+     * Websocket close status code for frames that break the protocol
+     */
+    private static final int CLOSE_PROTOCOL_ERROR = 1002;
+
+    /**
+     * Fragments received for the message in progress of the channel
+     */
+    private static final AttributeKey<CompositeByteBuf> FRAGMENTED_MESSAGE = AttributeKey
+            .valueOf(AbstractTextWebSocketFrameHandler.class.getName() + ".fragmentedMessage");
+
+    /**
+     * Protocol class of the message in progress of the channel
+     */
+    private static final AttributeKey<Class<?>> FRAGMENTED_PROTOCOL = AttributeKey
+            .valueOf(AbstractTextWebSocketFrameHandler.class.getName() + ".fragmentedProtocol");
+
     public AbstractTextWebSocketFrameHandler(AbstractNetworkDriver networkDriver) {
         super(networkDriver);
     }
@@ -41,15 +87,108 @@ public abstract class AbstractTextWebSocketFrameHandler extends AbstractDriverCh
     @Override
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public void channelRead0(final ChannelHandlerContext ctx, final WebSocketFrame frame) throws Exception {
-        if (!(frame instanceof TextWebSocketFrame)) {
+        if (frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame) {
+            final CompositeByteBuf inProgress = ctx.channel().attr(FRAGMENTED_MESSAGE).getAndSet(null);
+            if (inProgress != null) {
+                // RFC 6455 doesn't allow a new message before the final fragment of the previous one
+                inProgress.release();
+                logger.error("Channel " + this.getNetworkDriver().getChannelId(ctx.channel())
+                        + " sends a new message before the final fragment of the previous one");
+                ctx.writeAndFlush(new CloseWebSocketFrame(CLOSE_PROTOCOL_ERROR, "Interleaved fragmented messages"))
+                        .addListener(ChannelFutureListener.CLOSE);
+                return;
+            }
+            final Class<?> protocolClass = frame instanceof TextWebSocketFrame ? String.class : byte[].class;
+            if (frame.isFinalFragment()) {
+                this.onMessage(ctx.channel(), protocolClass, frame.content());
+            } else {
+                // first fragment of a message
+                final CompositeByteBuf fragments = ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+                ctx.channel().attr(FRAGMENTED_MESSAGE).set(fragments);
+                ctx.channel().attr(FRAGMENTED_PROTOCOL).set(protocolClass);
+                this.addFragment(ctx, fragments, frame);
+            }
+        } else if (frame instanceof ContinuationWebSocketFrame) {
+            final CompositeByteBuf fragments = ctx.channel().attr(FRAGMENTED_MESSAGE).get();
+            if (fragments == null) {
+                throw new IllegalStateException("Continuation frame received without initial fragment");
+            }
+            if (this.addFragment(ctx, fragments, frame) && frame.isFinalFragment()) {
+                ctx.channel().attr(FRAGMENTED_MESSAGE).set(null);
+                try {
+                    this.onMessage(ctx.channel(), ctx.channel().attr(FRAGMENTED_PROTOCOL).get(), fragments);
+                } finally {
+                    fragments.release();
+                }
+            }
+        } else {
             throw new UnsupportedOperationException(
                     String.format("%s frame types not supported", frame.getClass().getName()));
         }
-        // protocol message deserealization, textwebsocket to networkmessage
-        NetworkMessage networkMessage = this.getNetworkDriver().deserealize(String.class,
-                ((TextWebSocketFrame) frame).text());
+    }
+
+    /**
+     * Appends the frame content to the fragments of the message in progress. When
+     * the max message size is exceeded the fragments are discarded and the
+     * channel is closed.
+     *
+     * @return true if the fragment was added
+     */
+    private boolean addFragment(final ChannelHandlerContext ctx, final CompositeByteBuf fragments,
+            final WebSocketFrame frame) {
+        final int maxMessageSize = this.getNetworkDriver().getConfiguration().getMaxMessageSize();
+        if (fragments.readableBytes() > maxMessageSize - frame.content().readableBytes()) {
+            ctx.channel().attr(FRAGMENTED_MESSAGE).set(null);
+            fragments.release();
+            logger.error("Channel " + this.getNetworkDriver().getChannelId(ctx.channel())
+                    + " exceeds max message size of " + maxMessageSize + " bytes");
+            ctx.writeAndFlush(new CloseWebSocketFrame(CLOSE_MESSAGE_TOO_BIG, "Message too big"))
+                    .addListener(ChannelFutureListener.CLOSE);
+            return false;
+        }
+        fragments.addComponent(true, frame.content().retain());
+        return true;
+    }
+
+    /**
+     * Decodes the message content and delivers it to the network driver with the
+     * content of the frame, so the message can be relayed without encoding it
+     * again.
+     */
+    @SuppressWarnings("rawtypes")
+    private void onMessage(final Channel channel, final Class<?> protocolClass, final ByteBuf content)
+            throws Exception {
+        final IEventMessageCodec codec = this.getNetworkDriver().getCodec(channel, protocolClass);
+        if (codec == null) {
+            throw new NetworkMessageDeserializationException(
+                    "Codec not found for '" + protocolClass.getSimpleName() + "' class");
+        }
+        // protocol message deserealization, websocket frame to networkmessage
+        final NetworkMessage networkMessage = this.deserealize(codec, protocolClass, content);
         // delivers the desearilized message to the network driver
-        this.getNetworkDriver().onNetworkMessage(this.getNetworkDriver().getChannelId(ctx.channel()), networkMessage);
+        this.getNetworkDriver().onNetworkMessage(this.getNetworkDriver().getChannelId(channel), networkMessage,
+                content, codec);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private NetworkMessage deserealize(final IEventMessageCodec codec, final Class<?> protocolClass,
+            final ByteBuf content) throws Exception {
+        if (codec instanceof IStreamEventMessageCodec) {
+            return ((IStreamEventMessageCodec) codec).deserealize(content);
+        }
+        if (protocolClass == byte[].class) {
+            return codec.deserealize(ByteBufUtil.getBytes(content));
+        }
+        return codec.deserealize(content.toString(CharsetUtil.UTF_8));
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        final CompositeByteBuf fragments = ctx.channel().attr(FRAGMENTED_MESSAGE).getAndSet(null);
+        if (fragments != null) {
+            fragments.release();
+        }
+        super.channelInactive(ctx);
     }
 
     @Override
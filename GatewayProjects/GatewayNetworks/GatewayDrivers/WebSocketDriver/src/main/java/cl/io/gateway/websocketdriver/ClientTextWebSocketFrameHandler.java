@@ -22,6 +22,7 @@ import cl.io.gateway.network.NetworkEventType;
 import cl.io.gateway.network.driver.AbstractNetworkDriver;
 import cl.io.gateway.network.driver.DriverClientNetworkConnection;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
 
 /**
@@ -41,11 +42,14 @@ public class ClientTextWebSocketFrameHandler extends AbstractTextWebSocketFrameH
 
     private final DriverClientNetworkConnection connection;
 
+    private final WebSocketClientHandshaker handshaker;
+
     public ClientTextWebSocketFrameHandler(final AbstractNetworkDriver networkDriver, final String channelId,
-            final DriverClientNetworkConnection connection) {
+            final DriverClientNetworkConnection connection, final WebSocketClientHandshaker handshaker) {
         super(networkDriver);
         this.channelId = channelId;
         this.connection = connection;
+        this.handshaker = handshaker;
     }
 
     @Override
@@ -60,8 +64,9 @@ public class ClientTextWebSocketFrameHandler extends AbstractTextWebSocketFrameH
         if (evt == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
             logger.info(
                     "Channel " + this.getNetworkDriver().getChannelId(ctx.channel()) + " " + NetworkEventType.ACTIVE);
+            // el codec del subprotocolo aceptado por el servidor queda asociado al canal
             this.getNetworkDriver().onNetworkEvent(this.getNetworkDriver().getChannelId(ctx.channel()), ctx.channel(),
-                    NetworkEventType.ACTIVE);
+                    NetworkEventType.ACTIVE, this.handshaker.actualSubprotocol());
         } else {
             super.userEventTriggered(ctx, evt);
         }
@@ -57,6 +57,17 @@ public class TuningWebSocketClientProtocolHandler extends WebSocketClientProtoco
         super.decode(ctx, frame, out);
     }
 
+    /**
+     * The websocket handler closes the channel without notifying the error, a
+     * handshake rejected by the server (as a subprotocol that it doesn't accept)
+     * would only be seen as reconnections.
+     */
+    @Override
+    public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
+        logger.error("Exception in channel " + this.getChannelId(ctx.channel()) + ": " + cause.getMessage());
+        super.exceptionCaught(ctx, cause);
+    }
+
     public void pongReceived(final ChannelHandlerContext ctx) {
         // Se procesa evento de hearbeat
         final String channelId = this.getChannelId(ctx.channel());
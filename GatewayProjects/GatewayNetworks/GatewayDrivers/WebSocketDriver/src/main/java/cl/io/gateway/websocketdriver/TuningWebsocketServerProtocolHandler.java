@@ -43,8 +43,8 @@ public class TuningWebsocketServerProtocolHandler extends WebSocketServerProtoco
     private final AbstractNetworkDriver networkDriver;
 
     public TuningWebsocketServerProtocolHandler(final AbstractNetworkDriver networkDriver, String websocketPath,
-            String subprotocols, boolean allowExtensions) {
-        super(websocketPath, subprotocols, allowExtensions);
+            String subprotocols, boolean allowExtensions, int maxFrameSize) {
+        super(websocketPath, subprotocols, allowExtensions, maxFrameSize);
         this.networkDriver = networkDriver;
     }
 
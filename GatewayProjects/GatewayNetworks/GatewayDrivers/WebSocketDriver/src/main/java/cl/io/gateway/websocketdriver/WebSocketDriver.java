@@ -40,7 +40,6 @@ import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpServerCodec;
 import io.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
-import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
 import io.netty.handler.codec.http.websocketx.WebSocketVersion;
 import io.netty.handler.codec.http.websocketx.extensions.compression.WebSocketServerCompressionHandler;
 import io.netty.handler.stream.ChunkedWriteHandler;
@@ -72,9 +71,12 @@ public class WebSocketDriver extends AbstractNetworkDriver {
                 pipeline.addLast(new HttpObjectAggregator(64 * 1024));
                 pipeline.addLast(new ChunkedWriteHandler());
                 pipeline.addLast(new WebSocketServerCompressionHandler());
+                pipeline.addLast(new WebSocketSubprotocolHandler(WebSocketDriver.this));
                 pipeline.addLast(new HttpRequestHandler(WebSocketDriver.this.getConfiguration().getPath()));
                 pipeline.addLast(new TuningWebsocketServerProtocolHandler(WebSocketDriver.this,
-                        WebSocketDriver.this.getConfiguration().getPath(), null, true));
+                        WebSocketDriver.this.getConfiguration().getPath(),
+                        WebSocketDriver.this.getConfiguration().getSubprotocols(), true,
+                        WebSocketDriver.this.getConfiguration().getMaxMessageSize()));
                 pipeline.addLast(new IdleStateHandler(iddleTime, iddleTime, iddleTime));
                 pipeline.addLast(new ServerTextWebSocketFrameHandler(WebSocketDriver.this));
             }
@@ -92,10 +94,13 @@ public class WebSocketDriver extends AbstractNetworkDriver {
                 final Bootstrap boostrap = new Bootstrap();
                 final int iddleTime = WebSocketDriver.this.getConfiguration().getIddleTimeInSeconds();
                 boostrap.group(WebSocketDriver.this.getWorkerGroup()).channel(NioSocketChannel.class);
+                WebSocketDriver.this.configureClientBootstrap(boostrap);
                 final WebSocketClientHandshaker handshaker = WebSocketClientHandshakerFactory.newHandshaker(
-                        validateURI(networkUrl), WebSocketVersion.V13, null, false, new DefaultHttpHeaders());
+                        validateURI(networkUrl), WebSocketVersion.V13,
+                        WebSocketDriver.this.getConfiguration().getSubprotocols(), false, new DefaultHttpHeaders(),
+                        WebSocketDriver.this.getConfiguration().getMaxMessageSize());
                 final ClientTextWebSocketFrameHandler handler = new ClientTextWebSocketFrameHandler(
-                        WebSocketDriver.this, networkConnection.getChannelId(), networkConnection);
+                        WebSocketDriver.this, networkConnection.getChannelId(), networkConnection, handshaker);
                 boostrap.handler(new ChannelInitializer<Channel>() {
 
                     @Override
@@ -104,7 +109,6 @@ public class WebSocketDriver extends AbstractNetworkDriver {
                         pipeline.addLast(new HttpClientCodec());
                         pipeline.addLast(new HttpObjectAggregator(64 * 1024));
                         pipeline.addLast(new TuningWebSocketClientProtocolHandler(WebSocketDriver.this, handshaker));
-                        pipeline.addLast(new WebSocketFrameAggregator(16 * 1024 * 1024));
                         pipeline.addLast(new IdleStateHandler(iddleTime, iddleTime, iddleTime));
                         pipeline.addLast(handler);
                     }
@@ -138,7 +142,7 @@ public class WebSocketDriver extends AbstractNetworkDriver {
     @SuppressWarnings("rawtypes")
     @Override
     public IDriverChannelOutboundHandler createOutBoundHandler() {
-        return new TextWebSocketOutboundHandler(this, String.class);
+        return new WebSocketOutboundHandler(this);
     }
 
     @Override
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.websocketdriver;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.driver.AbstractDriverChannelOutboundHandler;
+import cl.io.gateway.network.driver.AbstractNetworkDriver;
+import cl.io.gateway.network.driver.DriverChannel;
+import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+/**
+ * Class that allows serializing java messages to transform them into a
+ * websocket message with the codec bound to the destination channel. Codecs of
+ * byte array protocol are sent as BinaryWebSocket messages and the others as
+ * TextWebSocket messages. Messages are encoded by the network driver, that
+ * reuses the bytes of messages sent several times.
+ * 
+ * @author egacl
+ */
+@SuppressWarnings("rawtypes")
+public class WebSocketOutboundHandler extends AbstractDriverChannelOutboundHandler<WebSocketFrame, Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketOutboundHandler.class);
+
+    public WebSocketOutboundHandler(AbstractNetworkDriver driver) {
+        super(driver, Object.class);
+    }
+
+    @Override
+    public WebSocketFrame messageToSend(final NetworkMessage msg, final DriverChannel channel)
+            throws NetworkMessageSerializationException {
+        try {
+            return this.frameToSend(this.getDriver().encode(channel.getCodec(), msg), channel);
+        } catch (NetworkMessageSerializationException | RuntimeException err) {
+            // nothing is written, the write fails with the error
+            logger.error("Error encoding message to '" + channel.getChannelId() + "': " + msg, err);
+            throw err;
+        }
+    }
+
+    @Override
+    public WebSocketFrame frameToSend(final ByteBuf content, final DriverChannel channel) {
+        return channel.getCodec().protocolClass() == byte[].class ? new BinaryWebSocketFrame(content)
+                : new TextWebSocketFrame(content);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.websocketdriver;
+
+import cl.io.gateway.network.driver.AbstractNetworkDriver;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * Handler that binds to the channel the codec of the subprotocol selected by
+ * the server in the handshake response (Sec-WebSocket-Protocol header). It's
+ * removed from the pipeline once the handshake response is sent.
+ *
+ * @author egacl
+ */
+public class WebSocketSubprotocolHandler extends ChannelOutboundHandlerAdapter {
+
+    private final AbstractNetworkDriver networkDriver;
+
+    public WebSocketSubprotocolHandler(final AbstractNetworkDriver networkDriver) {
+        this.networkDriver = networkDriver;
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise)
+            throws Exception {
+        if (msg instanceof HttpResponse
+                && HttpResponseStatus.SWITCHING_PROTOCOLS.equals(((HttpResponse) msg).status())) {
+            // el codec queda asociado antes de recibir el primer mensaje del cliente
+            this.networkDriver.bindCodec(this.networkDriver.getChannelId(ctx.channel()),
+                    ((HttpResponse) msg).headers().get(HttpHeaderNames.SEC_WEBSOCKET_PROTOCOL));
+            ctx.pipeline().remove(this);
+        }
+        super.write(ctx, msg, promise);
+    }
+}
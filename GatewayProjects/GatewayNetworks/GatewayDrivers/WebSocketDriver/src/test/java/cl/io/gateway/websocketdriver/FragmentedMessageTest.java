@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.websocketdriver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import cl.io.gateway.network.IServiceDriverCommunication;
+import cl.io.gateway.network.NetworkConfiguration;
+import cl.io.gateway.network.NetworkEvent;
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.codec.CompressedMessageCodec;
+import cl.io.gateway.network.codec.GSonMessageCodec;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+
+public class FragmentedMessageTest {
+
+    private final List<NetworkMessage<?>> received = new CopyOnWriteArrayList<>();
+
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        this.channel = this.channel(new NetworkConfiguration().maxMessageSize(64).addCodec(new GSonMessageCodec())
+                .addCodec(new CompressedMessageCodec(new GSonMessageCodec())));
+    }
+
+    @After
+    public void tearDown() {
+        this.channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void fragmentsAreDeliveredAsOneMessage() {
+        this.channel.writeInbound(new TextWebSocketFrame(false, 0, "{\"event\":\"echo\","));
+        this.channel.writeInbound(new ContinuationWebSocketFrame(false, 0, "\"message\":"));
+        assertTrue(this.received.isEmpty());
+        this.channel.writeInbound(new ContinuationWebSocketFrame(true, 0, "\"hello\"}"));
+        assertEquals(1, this.received.size());
+        assertEquals("echo", this.received.get(0).getEvent());
+        assertEquals("hello", this.received.get(0).getMessage());
+        // the next message doesn't keep the previous fragments
+        this.channel.writeInbound(new TextWebSocketFrame("{\"event\":\"echo\",\"message\":\"again\"}"));
+        assertEquals("again", this.received.get(1).getMessage());
+        assertTrue(this.channel.isActive());
+    }
+
+    @Test
+    public void binaryFragmentsAreDecodedByTheBinaryCodec() throws Exception {
+        final byte[] encoded = new CompressedMessageCodec(new GSonMessageCodec())
+                .serialize(new NetworkMessage<>("echo", "binary"));
+        final int half = encoded.length / 2;
+        this.channel.writeInbound(new BinaryWebSocketFrame(false, 0, Unpooled.wrappedBuffer(encoded, 0, half)));
+        this.channel.writeInbound(new ContinuationWebSocketFrame(true, 0,
+                Unpooled.wrappedBuffer(encoded, half, encoded.length - half)));
+        assertEquals(1, this.received.size());
+        assertEquals("binary", this.received.get(0).getMessage());
+    }
+
+    @Test
+    public void interleavedMessageClosesTheChannel() {
+        this.channel.writeInbound(new TextWebSocketFrame(false, 0, "{\"event\":\"echo\","));
+        this.channel.writeInbound(new TextWebSocketFrame("{\"event\":\"echo\",\"message\":\"x\"}"));
+        assertTrue(this.received.isEmpty());
+        assertClosed(1002);
+    }
+
+    @Test
+    public void continuationWithoutFirstFragmentClosesTheChannel() {
+        this.channel.writeInbound(new ContinuationWebSocketFrame(true, 0, "\"message\":\"x\"}"));
+        assertTrue(this.received.isEmpty());
+        assertFalse(this.channel.isOpen());
+    }
+
+    @Test
+    public void messageBiggerThanMaxSizeClosesTheChannel() {
+        this.channel.writeInbound(new TextWebSocketFrame(false, 0, "{\"event\":\"echo\",\"message\":\""));
+        this.channel.writeInbound(new ContinuationWebSocketFrame(false, 0, "01234567890123456789012345678901234567890123456789"));
+        assertTrue(this.received.isEmpty());
+        assertClosed(1009);
+    }
+
+    private void assertClosed(final int statusCode) {
+        final CloseWebSocketFrame close = this.channel.readOutbound();
+        try {
+            assertEquals(statusCode, close.statusCode());
+        } finally {
+            close.release();
+        }
+        assertNull(this.channel.readOutbound());
+        assertFalse(this.channel.isOpen());
+    }
+
+    private EmbeddedChannel channel(final NetworkConfiguration configuration) {
+        final WebSocketDriver driver = new WebSocketDriver(configuration, new IServiceDriverCommunication() {
+
+            @Override
+            public <T> void onNetworkMessage(final NetworkMessage<T> message) {
+                received.add(message.retain());
+            }
+
+            @Override
+            public void onNetworkReadComplete(final String channelId) {
+            }
+
+            @Override
+            public void onNetworkEvent(final NetworkEvent event) {
+            }
+        }, null, null);
+        return new EmbeddedChannel(new ServerTextWebSocketFrameHandler(driver));
+    }
+}
@@ -15,6 +15,9 @@
  */
 package cl.io.gateway.network;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import cl.io.gateway.network.driver.exception.NetworkDriverException;
 import cl.io.gateway.network.handler.INetworkEventListener;
 import cl.io.gateway.network.handler.INetworkMessageHandler;
@@ -59,6 +62,23 @@ public interface INetworkService {
      */
     <T> boolean addMessageHandler(String event, INetworkMessageHandler<T> handler);
 
+    /**
+     * This method allows you to add a message handler for an event whose messages
+     * transport a known java type, codecs decode the message payload directly into
+     * that type.
+     *
+     * @param event
+     *            Message event.
+     * @param messageType
+     *            Type of the transported messages.
+     * @param handler
+     *            Message handler.
+     * @param <T>
+     *            Message object type.
+     * @return true if the handler was added
+     */
+    <T> boolean addMessageHandler(String event, Class<T> messageType, INetworkMessageHandler<T> handler);
+
     /**
      * Deregister a network message handler.
      *
@@ -126,6 +146,72 @@ public interface INetworkService {
     <T> void send(String channelId, NetworkMessage<T> message, IDeliveryStatusListener deliveryStatus)
             throws NetworkDriverException;
 
+    /**
+     * Allows to relay a received network message to an specific channel. When it
+     * is called from the message handler, or later for a message retained with
+     * {@link NetworkMessage#retain()}, and the message was not modified, the
+     * received bytes are sent without encoding the message again (the destination
+     * channel must work with the same codec), otherwise the message is sent as
+     * {@link #send(String, NetworkMessage)} does.
+     *
+     * @param channelId
+     *            Channel identifier.
+     * @param message
+     *            Received network message.
+     * @param <T>
+     *            Network message object type.
+     * @throws NetworkDriverException
+     *             When sending network message fails (channel doesn't exists).
+     */
+    <T> void forward(String channelId, NetworkMessage<T> message) throws NetworkDriverException;
+
+    /**
+     * Allows to relay a received network message to an specific channel, see
+     * {@link #forward(String, NetworkMessage)}.
+     *
+     * @param channelId
+     *            Channel identifier.
+     * @param message
+     *            Received network message.
+     * @param <T>
+     *            Network message object type.
+     * @param deliveryStatus
+     *            Asynchronous listener for message delivery status.
+     * @throws NetworkDriverException
+     *             When sending network message fails (channel doesn't exists).
+     */
+    <T> void forward(String channelId, NetworkMessage<T> message, IDeliveryStatusListener deliveryStatus)
+            throws NetworkDriverException;
+
+    /**
+     * Allows to send a request message to an specific channel and get its
+     * response. A correlation identifier is set on the message, the remote
+     * channel must answer with {@link NetworkMessage#createResponse(Object)}.
+     * Responses are not delivered to message handlers.
+     *
+     * The returned future is completed by the network driver thread. It fails
+     * with {@link java.util.concurrent.TimeoutException} when the response is not
+     * received in time and with {@link NetworkDriverException} when the message
+     * can't be sent or the channel is closed. When the received messages are
+     * pooled the response is retained for the caller, who must release it.
+     *
+     * @param channelId
+     *            Channel identifier.
+     * @param message
+     *            Network request message.
+     * @param timeout
+     *            Max time to wait for the response.
+     * @param unit
+     *            Timeout time unit.
+     * @param <T>
+     *            Network request object type.
+     * @param <R>
+     *            Network response object type.
+     * @return Future completed with the response message.
+     */
+    <T, R> CompletableFuture<NetworkMessage<R>> request(String channelId, NetworkMessage<T> message, long timeout,
+            TimeUnit unit);
+
     /**
      * Allows to broadcast a message to all connected channels.
      *
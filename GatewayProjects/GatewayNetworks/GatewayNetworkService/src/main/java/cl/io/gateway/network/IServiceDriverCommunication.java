@@ -35,6 +35,16 @@ public interface IServiceDriverCommunication {
      */
     <T> void onNetworkMessage(NetworkMessage<T> message) throws NetworkDriverException;
 
+    /**
+     * This method is called when the driver ends a network read of a channel, all
+     * messages of that read were already delivered by
+     * {@link #onNetworkMessage(NetworkMessage)}.
+     *
+     * @param channelId
+     *            channel that was read.
+     */
+    void onNetworkReadComplete(String channelId);
+
     /**
      * This method is called when a network event is received.
      *
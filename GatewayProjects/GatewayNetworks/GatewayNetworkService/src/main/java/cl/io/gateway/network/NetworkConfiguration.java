@@ -15,11 +15,22 @@
  */
 package cl.io.gateway.network;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import cl.io.gateway.network.driver.IEventMessageCodec;
 import cl.io.gateway.network.driver.INetworkDriver;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.handler.ssl.SslContext;
 
 /**
@@ -61,6 +72,11 @@ public class NetworkConfiguration {
      */
     private final List<IEventMessageCodec> codecs;
 
+    /**
+     * Message codec by websocket subprotocol name, in preference order
+     */
+    private final Map<String, IEventMessageCodec> subprotocolCodecs = new LinkedHashMap<>();
+
     /**
      * Network driver class
      */
@@ -76,6 +92,100 @@ public class NetworkConfiguration {
      */
     private int iddleTimeInSeconds = 10;
 
+    /**
+     * max message size in bytes, fragmented messages included
+     */
+    private int maxMessageSize = 16 * 1024 * 1024;
+
+    /**
+     * TCP_NODELAY socket option (null for netty default)
+     */
+    private Boolean tcpNoDelay;
+
+    /**
+     * SO_SNDBUF socket option in bytes (null for operating system default)
+     */
+    private Integer sendBufferSize;
+
+    /**
+     * SO_RCVBUF socket option in bytes (null for operating system default)
+     */
+    private Integer receiveBufferSize;
+
+    /**
+     * SO_BACKLOG server socket option (null for netty default)
+     */
+    private Integer backlog;
+
+    /**
+     * use pooled byte buffers (null for netty default allocator)
+     */
+    private Boolean pooledAllocator;
+
+    /**
+     * prefer direct byte buffers over heap buffers
+     */
+    private boolean directBuffers = true;
+
+    /**
+     * byte buffer allocator created from pooled and direct buffers flags
+     */
+    private ByteBufAllocator allocator;
+
+    /**
+     * fixed size for socket read buffers (null for adaptive sizing)
+     */
+    private Integer recvBufferFixedSize;
+
+    /**
+     * adaptive socket read buffers sizes: minimum, initial and maximum (null for
+     * netty default)
+     */
+    private int[] recvBufferAdaptiveSizes;
+
+    /**
+     * low and high write buffer water mark in bytes (null for netty default)
+     */
+    private WriteBufferWaterMark writeBufferWaterMark;
+
+    /**
+     * outbound priority by event, used when the message doesn't define its own
+     */
+    private final Map<String, NetworkMessagePriority> eventPriorities = new ConcurrentHashMap<>();
+
+    /**
+     * max messages packed in one batch envelope (0 or 1 to send every message in
+     * its own frame)
+     */
+    private int batchMaxMessages = 0;
+
+    /**
+     * max milliseconds that a message waits in a batch before it is sent
+     */
+    private long batchMaxDelayMillis = 5;
+
+    /**
+     * max encoded bytes of the messages packed in one batch envelope (0 without
+     * limit)
+     */
+    private int batchMaxBytes = 0;
+
+    /**
+     * events declared by the services of the configuration, it indexes their
+     * dispatch tables
+     */
+    private final NetworkEventDictionary eventDictionary = new NetworkEventDictionary();
+
+    /**
+     * message type by event, used by codecs to decode payloads
+     */
+    private final NetworkMessageTypeRegistry messageTypes = new NetworkMessageTypeRegistry(this.eventDictionary);
+
+    /**
+     * received messages are taken from a pool and released after their dispatch
+     */
+    private boolean pooledMessages = false;
+
     public NetworkConfiguration() {
         this.acceptClientsConnections = false;
         this.ip = "0.0.0.0";
@@ -118,6 +228,11 @@ public class NetworkConfiguration {
         return this;
     }
 
+    public NetworkConfiguration maxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+        return this;
+    }
+
     public NetworkConfiguration ip(String ip) {
         this.ip = ip;
         return this;
@@ -128,13 +243,120 @@ public class NetworkConfiguration {
         return this;
     }
 
+    public NetworkConfiguration tcpNoDelay(Boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    public NetworkConfiguration sendBufferSize(Integer sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+        return this;
+    }
+
+    public NetworkConfiguration receiveBufferSize(Integer receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+        return this;
+    }
+
+    public NetworkConfiguration backlog(Integer backlog) {
+        this.backlog = backlog;
+        return this;
+    }
+
+    public synchronized NetworkConfiguration allocator(Boolean pooled, boolean direct) {
+        this.pooledAllocator = pooled;
+        this.directBuffers = direct;
+        this.allocator = null;
+        return this;
+    }
+
+    public NetworkConfiguration recvBufferFixedSize(Integer size) {
+        this.recvBufferFixedSize = size;
+        return this;
+    }
+
+    public NetworkConfiguration recvBufferAdaptiveSizes(int minimum, int initial, int maximum) {
+        if (minimum <= 0 || initial < minimum || maximum < initial) {
+            throw new IllegalArgumentException(
+                    "Invalid adaptive read buffer sizes: " + minimum + ", " + initial + ", " + maximum);
+        }
+        this.recvBufferAdaptiveSizes = new int[] { minimum, initial, maximum };
+        return this;
+    }
+
+    public NetworkConfiguration writeBufferWaterMark(int low, int high) {
+        this.writeBufferWaterMark = new WriteBufferWaterMark(low, high);
+        return this;
+    }
+
+    /**
+     * Enables the pool of received messages. The messages are released when
+     * their handler returns, handlers that keep a message after returning must
+     * retain it and release it when they finish.
+     */
+    public NetworkConfiguration pooledMessages(boolean pooledMessages) {
+        this.pooledMessages = pooledMessages;
+        this.messageTypes.setPooledMessages(pooledMessages);
+        return this;
+    }
+
+    public NetworkConfiguration eventPriority(String event, NetworkMessagePriority priority) {
+        this.eventPriorities.put(event, priority);
+        return this;
+    }
+
+    /**
+     * Enables batch envelopes: outgoing messages of a channel are packed in one
+     * network frame that is sent when it has maxMessages messages or when its first
+     * message waited maxDelayMillis. Both sides of the connection must use a codec
+     * that supports batch envelopes.
+     */
+    public NetworkConfiguration batch(int maxMessages, long maxDelayMillis) {
+        return this.batch(maxMessages, 0, maxDelayMillis);
+    }
+
+    /**
+     * Enables batch envelopes: outgoing messages of a channel are encoded when
+     * they are sent and packed in one network frame that is sent when it has
+     * maxMessages messages, when the encoded messages reach maxBytes (0 without
+     * limit) or when its first message waited maxDelayMillis. Only channels bound
+     * to a codec that writes batch envelopes pack their messages.
+     */
+    public NetworkConfiguration batch(int maxMessages, int maxBytes, long maxDelayMillis) {
+        if (maxMessages < 0 || maxBytes < 0 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException("Batch max messages, max bytes and max delay must be positive values");
+        }
+        this.batchMaxMessages = maxMessages;
+        this.batchMaxBytes = maxBytes;
+        this.batchMaxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
     public NetworkConfiguration addCodec(IEventMessageCodec codec) {
         this.codecs.add(codec);
         return this;
     }
 
+    /**
+     * Adds a codec that the remote side can negotiate with the given subprotocol
+     * name (Sec-WebSocket-Protocol header). The negotiated codec is bound to the
+     * channel at handshake, channels that don't negotiate a subprotocol use the
+     * first codec added.
+     */
+    public NetworkConfiguration addCodec(String subprotocol, IEventMessageCodec codec) {
+        if (subprotocol == null || subprotocol.trim().isEmpty() || subprotocol.indexOf(',') >= 0) {
+            throw new IllegalArgumentException("Invalid subprotocol name '" + subprotocol + "'");
+        }
+        if (!this.codecs.contains(codec)) {
+            this.codecs.add(codec);
+        }
+        this.subprotocolCodecs.put(subprotocol.trim(), codec);
+        return this;
+    }
+
     public NetworkConfiguration removeCodec(IEventMessageCodec codec) {
         this.codecs.remove(codec);
+        this.subprotocolCodecs.values().removeIf(codec::equals);
         return this;
     }
 
@@ -146,6 +368,10 @@ public class NetworkConfiguration {
         return iddleTimeInSeconds;
     }
 
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
     public String getIp() {
         return ip;
     }
@@ -158,6 +384,48 @@ public class NetworkConfiguration {
         return codecs;
     }
 
+    public Map<String, IEventMessageCodec> getSubprotocolCodecs() {
+        return subprotocolCodecs;
+    }
+
+    /**
+     * @return comma separated subprotocol names in preference order or null if
+     *         there are no subprotocol codecs
+     * @see IEventMessageCodec#getSubprotocolVersion()
+     */
+    public String getSubprotocols() {
+        if (this.subprotocolCodecs.isEmpty()) {
+            return null;
+        }
+        final StringBuilder subprotocols = new StringBuilder();
+        for (Map.Entry<String, IEventMessageCodec> entry : this.subprotocolCodecs.entrySet()) {
+            if (subprotocols.length() > 0) {
+                subprotocols.append(',');
+            }
+            subprotocols.append(subprotocolName(entry.getKey(), entry.getValue()));
+        }
+        return subprotocols.toString();
+    }
+
+    /**
+     * @param subprotocol
+     *            subprotocol name negotiated at handshake, with the codec version
+     * @return codec of the subprotocol or null if it is unknown
+     */
+    public IEventMessageCodec getSubprotocolCodec(String subprotocol) {
+        for (Map.Entry<String, IEventMessageCodec> entry : this.subprotocolCodecs.entrySet()) {
+            if (subprotocolName(entry.getKey(), entry.getValue()).equals(subprotocol)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String subprotocolName(String subprotocol, IEventMessageCodec codec) {
+        final String version = codec.getSubprotocolVersion();
+        return version == null ? subprotocol : subprotocol + "." + version;
+    }
+
     public Class<? extends INetworkDriver> getDriverClass() {
         return driverClass;
     }
@@ -166,6 +434,100 @@ public class NetworkConfiguration {
         return maxTimeOuts;
     }
 
+    public Boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public Integer getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public Integer getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public Integer getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Byte buffer allocator defined by the pooled and direct flags. The same
+     * instance is shared between server and client channels.
+     *
+     * @return allocator instance or null for netty default allocator
+     */
+    public synchronized ByteBufAllocator getAllocator() {
+        if (this.allocator == null && this.pooledAllocator != null) {
+            if (this.pooledAllocator) {
+                this.allocator = new PooledByteBufAllocator(this.directBuffers);
+            } else {
+                this.allocator = new UnpooledByteBufAllocator(this.directBuffers);
+            }
+        }
+        return this.allocator;
+    }
+
+    /**
+     * Socket read buffer allocator, fixed size has precedence over adaptive sizes.
+     *
+     * @return read buffer allocator or null for netty default
+     */
+    public RecvByteBufAllocator getRecvByteBufAllocator() {
+        if (this.recvBufferFixedSize != null) {
+            return new FixedRecvByteBufAllocator(this.recvBufferFixedSize);
+        }
+        if (this.recvBufferAdaptiveSizes != null) {
+            return new AdaptiveRecvByteBufAllocator(this.recvBufferAdaptiveSizes[0], this.recvBufferAdaptiveSizes[1],
+                    this.recvBufferAdaptiveSizes[2]);
+        }
+        return null;
+    }
+
+    public WriteBufferWaterMark getWriteBufferWaterMark() {
+        return writeBufferWaterMark;
+    }
+
+    /**
+     * Outbound priority configured for the event.
+     *
+     * @param event
+     *            message event
+     * @return event priority or {@link NetworkMessagePriority#NORMAL} if it was not
+     *         configured
+     */
+    public NetworkMessagePriority getEventPriority(String event) {
+        final NetworkMessagePriority priority = event == null ? null : this.eventPriorities.get(event);
+        return priority == null ? NetworkMessagePriority.NORMAL : priority;
+    }
+
+    public NetworkMessageTypeRegistry getMessageTypes() {
+        return messageTypes;
+    }
+
+    public NetworkEventDictionary getEventDictionary() {
+        return eventDictionary;
+    }
+
+    public boolean isPooledMessages() {
+        return pooledMessages;
+    }
+
+    public boolean isBatchEnabled() {
+        return batchMaxMessages > 1;
+    }
+
+    public int getBatchMaxMessages() {
+        return batchMaxMessages;
+    }
+
+    public long getBatchMaxDelayMillis() {
+        return batchMaxDelayMillis;
+    }
+
+    public int getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
     public boolean isAcceptClients() {
         return acceptClientsConnections;
     }
@@ -194,12 +556,46 @@ public class NetworkConfiguration {
         builder.append(sslContext);
         builder.append(", codecs=");
         builder.append(codecs);
+        builder.append(", subprotocolCodecs=");
+        builder.append(subprotocolCodecs);
         builder.append(", driverClass=");
         builder.append(driverClass);
         builder.append(", maxTimeOuts=");
         builder.append(maxTimeOuts);
         builder.append(", iddleTimeInSeconds=");
         builder.append(iddleTimeInSeconds);
+        builder.append(", maxMessageSize=");
+        builder.append(maxMessageSize);
+        builder.append(", tcpNoDelay=");
+        builder.append(tcpNoDelay);
+        builder.append(", sendBufferSize=");
+        builder.append(sendBufferSize);
+        builder.append(", receiveBufferSize=");
+        builder.append(receiveBufferSize);
+        builder.append(", backlog=");
+        builder.append(backlog);
+        builder.append(", pooledAllocator=");
+        builder.append(pooledAllocator);
+        builder.append(", directBuffers=");
+        builder.append(directBuffers);
+        builder.append(", recvBufferFixedSize=");
+        builder.append(recvBufferFixedSize);
+        builder.append(", recvBufferAdaptiveSizes=");
+        builder.append(Arrays.toString(recvBufferAdaptiveSizes));
+        builder.append(", writeBufferWaterMark=");
+        builder.append(writeBufferWaterMark);
+        builder.append(", eventPriorities=");
+        builder.append(eventPriorities);
+        builder.append(", batchMaxMessages=");
+        builder.append(batchMaxMessages);
+        builder.append(", batchMaxDelayMillis=");
+        builder.append(batchMaxDelayMillis);
+        builder.append(", batchMaxBytes=");
+        builder.append(batchMaxBytes);
+        builder.append(", pooledMessages=");
+        builder.append(pooledMessages);
+        builder.append(", messageTypes=");
+        builder.append(messageTypes);
         builder.append("]");
         return builder.toString();
     }
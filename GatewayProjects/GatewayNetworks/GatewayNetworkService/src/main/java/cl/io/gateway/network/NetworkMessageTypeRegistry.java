@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of the java type transported by the messages of each event. Codecs
+ * use it to decode the message payload directly into its final type.
+ *
+ * The events of the registered types are added to the
+ * {@link NetworkEventDictionary} of the network configuration, codecs resolve the decoded events against it
+ * so messages of known events share the same string (with its hash cached)
+ * instead of allocating a new one.
+ * Codecs create the decoded messages through {@link #newMessage()}, which
+ * takes them from a pool when the network configuration enables it.
+ *
+ * @author egacl
+ */
+public class NetworkMessageTypeRegistry {
+
+    private final ConcurrentHashMap<String, Type> eventTypesMap = new ConcurrentHashMap<>(50, 0.5f);
+
+    private final NetworkEventDictionary eventDictionary;
+
+    private volatile boolean pooledMessages = false;
+
+    public NetworkMessageTypeRegistry() {
+        this(new NetworkEventDictionary());
+    }
+
+    /**
+     * @param eventDictionary
+     *            event dictionary of the network configuration
+     */
+    public NetworkMessageTypeRegistry(final NetworkEventDictionary eventDictionary) {
+        this.eventDictionary = eventDictionary;
+    }
+
+    /**
+     * Defines the message type of an event, replacing the previous one.
+     *
+     * @param event
+     *            message event
+     * @param type
+     *            message type
+     * @return previous message type or null
+     */
+    public Type register(final String event, final Type type) {
+        this.registerEvent(event);
+        return this.eventTypesMap.put(event, type);
+    }
+
+    /**
+     * Defines the message type of an event only if it doesn't have one.
+     *
+     * @param event
+     *            message event
+     * @param type
+     *            message type
+     * @return current message type or null if the type was registered
+     */
+    public Type registerIfAbsent(final String event, final Type type) {
+        this.registerEvent(event);
+        return this.eventTypesMap.putIfAbsent(event, type);
+    }
+
+    public Type unregister(final String event) {
+        return this.eventTypesMap.remove(event);
+    }
+
+    /**
+     * @param event
+     *            message event
+     * @return message type or null if the event doesn't have a type
+     */
+    public Type getType(final String event) {
+        return event == null ? null : this.eventTypesMap.get(event);
+    }
+
+    /**
+     * @return read only view of the message types by event
+     */
+    public Map<String, Type> getTypes() {
+        return Collections.unmodifiableMap(this.eventTypesMap);
+    }
+
+    /**
+     * @return event dictionary of the registry
+     */
+    public NetworkEventDictionary getEventDictionary() {
+        return this.eventDictionary;
+    }
+
+    /**
+     * Registers the event in the {@link NetworkEventDictionary}, which assigns
+     * its identifier and keeps its canonical instance.
+     *
+     * @param event
+     *            message event
+     */
+    public void registerEvent(final String event) {
+        if (event != null) {
+            this.eventDictionary.register(event);
+        }
+    }
+
+    /**
+     * Returns the canonical instance of the event.
+     *
+     * @param event
+     *            decoded event
+     * @return canonical event or the same event if it is not registered
+     */
+    public String getEvent(final String event) {
+        return this.eventDictionary.getEvent(event);
+    }
+
+    /**
+     * Returns if the event has been registered.
+     *
+     * @param event
+     *            message event
+     * @return true if the event is registered
+     */
+    public boolean isRegisteredEvent(final String event) {
+        return this.eventDictionary.getId(event) != NetworkEventDictionary.UNKNOWN_EVENT;
+    }
+
+    /**
+     * Returns the canonical instance of an event from its characters, codecs
+     * that read from a char buffer call it without creating the string.
+     *
+     * @param chars
+     *            char buffer
+     * @param offset
+     *            offset of the event in the buffer
+     * @param length
+     *            event length
+     * @return canonical event or null if the event is not registered
+     */
+    public String getEvent(final char[] chars, final int offset, final int length) {
+        final int id = this.eventDictionary.getId(chars, offset, length);
+        return id == NetworkEventDictionary.UNKNOWN_EVENT ? null : this.eventDictionary.getEvent(id);
+    }
+
+    void setPooledMessages(final boolean pooledMessages) {
+        this.pooledMessages = pooledMessages;
+    }
+
+    /**
+     * Creates a message to decode a received message into it.
+     *
+     * @return pooled message or a new message if the pool is not enabled
+     */
+    public <T> NetworkMessage<T> newMessage() {
+        return this.pooledMessages ? PooledNetworkMessage.<T> newInstance() : new NetworkMessage<T>();
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkMessageTypeRegistry " + eventTypesMap;
+    }
+}
@@ -16,14 +16,19 @@
 package cl.io.gateway.network;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import cl.io.gateway.network.driver.INetworkDriver;
 import cl.io.gateway.network.driver.exception.NetworkDriverException;
+import cl.io.gateway.network.handler.INetworkBatchMessageHandler;
 import cl.io.gateway.network.handler.INetworkEventListener;
 import cl.io.gateway.network.handler.INetworkMessageHandler;
 import io.netty.channel.EventLoopGroup;
@@ -52,9 +57,10 @@ public class NetworkService implements INetworkService {
     private final EventLoopGroup workerGroup;
 
     /**
-     * Map that contains message listener to notify java applications
+     * Table that contains message listener to notify java applications, indexed
+     * by event id
      */
-    private final ConcurrentHashMap<String, INetworkMessageHandler<?>> messagesHandlerMap;
+    private final NetworkEventTable<INetworkMessageHandler<?>> messagesHandlerTable;
 
     /**
      * List that contains network event listener to notify java application
@@ -71,6 +77,17 @@ public class NetworkService implements INetworkService {
      */
     private final NetworkConfiguration configuration;
 
+    /**
+     * Requests sent by this service waiting for a response
+     */
+    private final PendingRequestTable pendingRequests;
+
+    /**
+     * Messages for batch handlers received by each channel in the network read in
+     * progress, grouped by event
+     */
+    private final ConcurrentHashMap<String, Map<String, List<NetworkMessage>>> readBatchesMap;
+
     public NetworkService(final NetworkConfiguration configuration) {
         this(configuration, new NioEventLoopGroup(), new NioEventLoopGroup());
     }
@@ -80,8 +97,10 @@ public class NetworkService implements INetworkService {
         this.configuration = configuration;
         this.bossGroup = bossGroup;
         this.workerGroup = workerGroup;
-        this.messagesHandlerMap = new ConcurrentHashMap<>(50, 0.5F);
+        this.messagesHandlerTable = new NetworkEventTable<>(configuration.getEventDictionary());
         this.networkEventsListenerList = new ArrayList<>(50);
+        this.pendingRequests = new PendingRequestTable();
+        this.readBatchesMap = new ConcurrentHashMap<>(50, 0.5F);
     }
 
     private INetworkService initialice() throws Exception {
@@ -115,9 +134,14 @@ public class NetworkService implements INetworkService {
 
     @Override
     public <T> boolean addMessageHandler(String event, INetworkMessageHandler<T> handler) {
-        INetworkMessageHandler previus = this.messagesHandlerMap.get(event);
-        if (previus == null) {
-            this.messagesHandlerMap.put(event, handler);
+        // la tabla registra el evento en el diccionario de eventos
+        return this.messagesHandlerTable.putIfAbsent(event, handler) == null;
+    }
+
+    @Override
+    public <T> boolean addMessageHandler(String event, Class<T> messageType, INetworkMessageHandler<T> handler) {
+        if (this.addMessageHandler(event, handler)) {
+            this.configuration.getMessageTypes().register(event, messageType);
             return true;
         }
         return false;
@@ -125,7 +149,11 @@ public class NetworkService implements INetworkService {
 
     @Override
     public INetworkMessageHandler removeMessageHandler(String event) {
-        return this.messagesHandlerMap.remove(event);
+        final INetworkMessageHandler handler = this.messagesHandlerTable.remove(event);
+        if (handler != null) {
+            this.configuration.getMessageTypes().unregister(event);
+        }
+        return handler;
     }
 
     @Override
@@ -144,7 +172,7 @@ public class NetworkService implements INetworkService {
 
     @Override
     public boolean hasNetworkEventHandlerFor(String event) {
-        return this.messagesHandlerMap.containsKey(event);
+        return this.messagesHandlerTable.get(event) != null;
     }
 
     @Override
@@ -158,6 +186,42 @@ public class NetworkService implements INetworkService {
         this.networkDriver.send(channelId, message, deliveryStatus);
     }
 
+    @Override
+    public <T> void forward(final String channelId, final NetworkMessage<T> message) throws NetworkDriverException {
+        this.networkDriver.forward(channelId, message);
+    }
+
+    @Override
+    public <T> void forward(String channelId, NetworkMessage<T> message, IDeliveryStatusListener deliveryStatus)
+            throws NetworkDriverException {
+        this.networkDriver.forward(channelId, message, deliveryStatus);
+    }
+
+    @Override
+    public <T, R> CompletableFuture<NetworkMessage<R>> request(final String channelId, final NetworkMessage<T> message,
+            final long timeout, final TimeUnit unit) {
+        final CompletableFuture<NetworkMessage<R>> response = this.pendingRequests.register(channelId, message,
+                timeout, unit);
+        final long correlationId = message.getCorrelationId();
+        try {
+            this.networkDriver.send(channelId, message, new IDeliveryStatusListener() {
+
+                @Override
+                public <M> void success(String channelId, NetworkMessage<M> message) {
+                    // wait for the response
+                }
+
+                @Override
+                public <M> void error(String channelId, NetworkMessage<M> message, Throwable cause) {
+                    pendingRequests.fail(correlationId, cause);
+                }
+            });
+        } catch (NetworkDriverException err) {
+            this.pendingRequests.fail(correlationId, err);
+        }
+        return response;
+    }
+
     @Override
     public <T> void broadcast(NetworkMessage<T> message) throws NetworkDriverException {
         this.networkDriver.broadcast(message);
@@ -171,6 +235,11 @@ public class NetworkService implements INetworkService {
                 onMessage(message);
             }
 
+            @Override
+            public void onNetworkReadComplete(final String channelId) {
+                onReadComplete(channelId);
+            }
+
             @Override
             public void onNetworkEvent(final NetworkEvent event) {
                 broadcastNetworkEvent(event);
@@ -180,9 +249,27 @@ public class NetworkService implements INetworkService {
 
     @SuppressWarnings("unchecked")
     private <T> void onMessage(final NetworkMessage<T> message) throws NetworkDriverException {
-        final INetworkMessageHandler<T> handler = (INetworkMessageHandler<T>) this.messagesHandlerMap
-                .get(message.getEvent());
-        if (handler != null) {
+        if (message.isResponse() && this.pendingRequests.complete(message)) {
+            // response for a request sent by this service
+            return;
+        }
+        // unknown, late and relayed responses are delivered to the event handlers
+        final INetworkMessageHandler<T> handler = (INetworkMessageHandler<T>) this.messagesHandlerTable.get(message);
+        if (handler instanceof INetworkBatchMessageHandler) {
+            // delivered with the rest of the messages of the network read
+            Map<String, List<NetworkMessage>> readBatches = this.readBatchesMap.get(message.getChannelId());
+            if (readBatches == null) {
+                readBatches = new LinkedHashMap<>();
+                this.readBatchesMap.put(message.getChannelId(), readBatches);
+            }
+            List<NetworkMessage> readBatch = readBatches.get(message.getEvent());
+            if (readBatch == null) {
+                readBatch = new ArrayList<>();
+                readBatches.put(message.getEvent(), readBatch);
+            }
+            // se retiene el mensaje hasta que termina la lectura
+            readBatch.add(message.retain());
+        } else if (handler != null) {
             try {
                 handler.onMessage(message);
             } catch (Exception e) {
@@ -191,7 +278,43 @@ public class NetworkService implements INetworkService {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private void onReadComplete(final String channelId) {
+        final Map<String, List<NetworkMessage>> readBatches = this.readBatchesMap.remove(channelId);
+        if (readBatches == null) {
+            return;
+        }
+        for (final Map.Entry<String, List<NetworkMessage>> readBatch : readBatches.entrySet()) {
+            final INetworkMessageHandler handler = this.messagesHandlerTable.get(readBatch.getKey());
+            if (handler instanceof INetworkBatchMessageHandler) {
+                try {
+                    ((INetworkBatchMessageHandler) handler).onMessages(readBatch.getValue());
+                } catch (Throwable err) {
+                    logger.error("Error processing " + readBatch.getValue().size() + " messages of event '"
+                            + readBatch.getKey() + "' from " + channelId, err);
+                }
+            }
+            release(readBatch.getValue());
+        }
+    }
+
+    private static void release(final List<NetworkMessage> messages) {
+        for (final NetworkMessage message : messages) {
+            message.release();
+        }
+    }
+
     private void broadcastNetworkEvent(final NetworkEvent event) {
+        if (event.getEventType() == NetworkEventType.INACTIVE) {
+            final Map<String, List<NetworkMessage>> readBatches = this.readBatchesMap.remove(event.getChannelId());
+            if (readBatches != null) {
+                for (final List<NetworkMessage> readBatch : readBatches.values()) {
+                    release(readBatch);
+                }
+            }
+            this.pendingRequests.failChannel(event.getChannelId(),
+                    new NetworkDriverException("Channel closed: " + event.getChannelId()));
+        }
         synchronized (this.networkEventsListenerList) {
             for (final INetworkEventListener eventHandler : this.networkEventsListenerList) {
                 try {
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Table of requests waiting for a response. Each request receives a
+ * correlation identifier and a timeout scheduled on a timing wheel shared by
+ * all network services, so thousands of in-flight requests cost one map entry
+ * and one wheel slot each.
+ *
+ * @author egacl
+ */
+final class PendingRequestTable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PendingRequestTable.class);
+
+    /**
+     * Timing wheel shared by all network services for requests expiration
+     */
+    private static final HashedWheelTimer TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("network-request-timer", true), 10, TimeUnit.MILLISECONDS);
+
+    /**
+     * Correlation identifier sequence
+     */
+    private final AtomicLong correlationSequence = new AtomicLong(0);
+
+    /**
+     * Requests waiting for a response identified by correlation id
+     */
+    private final ConcurrentHashMap<Long, PendingRequest<?>> pendingRequests;
+
+    PendingRequestTable() {
+        this.pendingRequests = new ConcurrentHashMap<>(256, 0.5f);
+    }
+
+    /**
+     * Assigns a correlation identifier to the message and registers the request.
+     *
+     * @param channelId
+     *            channel that will receive the request
+     * @param message
+     *            request message
+     * @param timeout
+     *            max time to wait for the response
+     * @param unit
+     *            timeout time unit
+     * @return future completed with the response
+     */
+    <R> CompletableFuture<NetworkMessage<R>> register(final String channelId, final NetworkMessage<?> message,
+            final long timeout, final TimeUnit unit) {
+        final long correlationId = this.correlationSequence.incrementAndGet();
+        final PendingRequest<R> request = new PendingRequest<>(correlationId, channelId);
+        message.setCorrelationId(correlationId);
+        // the timeout is scheduled before the request is published, so complete and
+        // fail always find it
+        request.timeout = TIMER.newTimeout(new TimerTask() {
+
+            @Override
+            public void run(final Timeout t) throws Exception {
+                expire(request, timeout, unit);
+            }
+        }, timeout, unit);
+        if (this.pendingRequests.putIfAbsent(correlationId, request) != null) {
+            request.timeout.cancel();
+            throw new IllegalStateException("Duplicated correlation id " + correlationId);
+        }
+        if (request.timeout.isExpired()) {
+            // the timeout ran before the request was published
+            this.expire(request, timeout, unit);
+        }
+        return request.future;
+    }
+
+    private void expire(final PendingRequest<?> request, final long timeout, final TimeUnit unit) {
+        if (this.pendingRequests.remove(request.correlationId, request)) {
+            request.future.completeExceptionally(new TimeoutException("No response for request "
+                    + request.correlationId + " to '" + request.channelId + "' after " + timeout + " " + unit));
+        }
+    }
+
+    /**
+     * Completes the request answered by the response message. Only the channel
+     * that received the request can answer it, a response of another channel is
+     * handled as unknown.
+     *
+     * @param response
+     *            response message
+     * @return true if the request was waiting for this response
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    boolean complete(final NetworkMessage<?> response) {
+        final PendingRequest request = this.pendingRequests.get(response.getReplyTo());
+        if (request == null || !request.channelId.equals(response.getChannelId())
+                || !this.pendingRequests.remove(response.getReplyTo(), request)) {
+            // any peer can send unknown responses, they are not logged as warnings
+            if (logger.isDebugEnabled()) {
+                logger.debug("Response without pending request (late, unknown or relayed): " + response);
+            }
+            return false;
+        }
+        request.timeout.cancel();
+        // the response outlives its dispatch, the caller releases it
+        if (!request.future.complete(response.retain())) {
+            response.release();
+        }
+        return true;
+    }
+
+    /**
+     * Fails the request identified by correlation id.
+     */
+    void fail(final long correlationId, final Throwable cause) {
+        final PendingRequest<?> request = this.pendingRequests.remove(correlationId);
+        if (request != null) {
+            request.timeout.cancel();
+            request.future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Fails all requests sent to a channel, used when the channel is closed.
+     */
+    void failChannel(final String channelId, final Throwable cause) {
+        for (Map.Entry<Long, PendingRequest<?>> entry : this.pendingRequests.entrySet()) {
+            if (entry.getValue().channelId.equals(channelId)) {
+                this.fail(entry.getKey(), cause);
+            }
+        }
+    }
+
+    private static final class PendingRequest<R> {
+
+        final CompletableFuture<NetworkMessage<R>> future = new CompletableFuture<>();
+
+        final long correlationId;
+
+        final String channelId;
+
+        volatile Timeout timeout;
+
+        PendingRequest(final long correlationId, final String channelId) {
+            this.correlationId = correlationId;
+            this.channelId = channelId;
+        }
+
+        @Override
+        public String toString() {
+            return "PendingRequest [correlationId=" + correlationId + ", channelId=" + channelId + "]";
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.Recycler;
+import io.netty.util.ResourceLeak;
+import io.netty.util.ResourceLeakDetector;
+
+/**
+ * Network message taken from a per thread pool. The message is reference
+ * counted: the driver releases it when the handler dispatch ends, so the
+ * handlers that keep it must call {@link #retain()} and release it when they
+ * finish. A sample of the messages is tracked by a netty resource leak
+ * detector, which reports the messages that were garbage collected without
+ * being released.
+ *
+ * @author egacl
+ * @param <T>
+ *            transported message java type.
+ */
+public final class PooledNetworkMessage<T> extends NetworkMessage<T> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<PooledNetworkMessage> REF_CNT_UPDATER = AtomicIntegerFieldUpdater
+            .newUpdater(PooledNetworkMessage.class, "refCnt");
+
+    private static final ResourceLeakDetector<PooledNetworkMessage<?>> leakDetector = new ResourceLeakDetector<>(
+            PooledNetworkMessage.class);
+
+    private static final Recycler<PooledNetworkMessage<?>> RECYCLER = new Recycler<PooledNetworkMessage<?>>() {
+
+        @Override
+        protected PooledNetworkMessage<?> newObject(final Handle<PooledNetworkMessage<?>> handle) {
+            return new PooledNetworkMessage<>(handle);
+        }
+    };
+
+    private final Recycler.Handle<PooledNetworkMessage<?>> handle;
+
+    private volatile int refCnt;
+
+    private ResourceLeak leak;
+
+    private PooledNetworkMessage(final Recycler.Handle<PooledNetworkMessage<?>> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * Takes a message from the pool of the current thread.
+     *
+     * @return empty message with a reference count of one
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PooledNetworkMessage<T> newInstance() {
+        final PooledNetworkMessage<T> message = (PooledNetworkMessage<T>) RECYCLER.get();
+        message.refCnt = 1;
+        message.leak = leakDetector.open(message);
+        return message;
+    }
+
+    /**
+     * @return current reference count, zero if the message returned to its pool
+     */
+    public int refCnt() {
+        return this.refCnt;
+    }
+
+    @Override
+    public PooledNetworkMessage<T> retain() {
+        for (;;) {
+            final int refCnt = this.refCnt;
+            if (refCnt == 0) {
+                throw new IllegalReferenceCountException(0, 1);
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, refCnt, refCnt + 1)) {
+                break;
+            }
+        }
+        this.detachReceivedFrame();
+        this.record();
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        for (;;) {
+            final int refCnt = this.refCnt;
+            if (refCnt == 0) {
+                throw new IllegalReferenceCountException(0, -1);
+            }
+            if (REF_CNT_UPDATER.compareAndSet(this, refCnt, refCnt - 1)) {
+                if (refCnt > 1) {
+                    this.record();
+                    return false;
+                }
+                break;
+            }
+        }
+        if (this.leak != null) {
+            this.leak.close();
+            this.leak = null;
+        }
+        this.clear();
+        this.handle.recycle(this);
+        return true;
+    }
+
+    private void record() {
+        final ResourceLeak leak = this.leak;
+        if (leak != null) {
+            leak.record();
+        }
+    }
+}
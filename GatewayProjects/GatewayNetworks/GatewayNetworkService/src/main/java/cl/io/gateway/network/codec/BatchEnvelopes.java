@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Writers of the batch envelopes of the codecs that pack messages already
+ * encoded, an envelope is an array of the encoded messages.
+ *
+ * @author egacl
+ */
+public final class BatchEnvelopes {
+
+    /**
+     * CBOR start of an array of indefinite length
+     */
+    private static final int CBOR_START_ARRAY = 0x9F;
+
+    /**
+     * CBOR end of an item of indefinite length
+     */
+    private static final int CBOR_BREAK = 0xFF;
+
+    private BatchEnvelopes() {
+    }
+
+    /**
+     * Writes the messages encoded as json documents in a json array.
+     *
+     * @param messages
+     *            json documents of the messages
+     * @param out
+     *            buffer where the array is written
+     */
+    public static void writeJsonArray(final List<ByteBuf> messages, final ByteBuf out) {
+        out.writeByte('[');
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                out.writeByte(',');
+            }
+            write(messages.get(i), out);
+        }
+        out.writeByte(']');
+    }
+
+    /**
+     * Writes the messages encoded as CBOR items in a CBOR array of indefinite
+     * length.
+     *
+     * @param messages
+     *            CBOR items of the messages
+     * @param out
+     *            buffer where the array is written
+     */
+    public static void writeCborArray(final List<ByteBuf> messages, final ByteBuf out) {
+        out.writeByte(CBOR_START_ARRAY);
+        for (ByteBuf message : messages) {
+            write(message, out);
+        }
+        out.writeByte(CBOR_BREAK);
+    }
+
+    private static void write(final ByteBuf message, final ByteBuf out) {
+        out.writeBytes(message, message.readerIndex(), message.readableBytes());
+    }
+}
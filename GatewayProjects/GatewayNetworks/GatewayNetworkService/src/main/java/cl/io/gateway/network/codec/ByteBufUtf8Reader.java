@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.io.Reader;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Reader that decodes the utf-8 content of a buffer directly, without the
+ * intermediate byte buffer of an InputStreamReader (8kb by reader). The reader
+ * index of the buffer is not moved. A malformed sequence is read as the
+ * replacement character, as new String(bytes, UTF_8) does.
+ *
+ * @author egacl
+ */
+final class ByteBufUtf8Reader extends Reader {
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final ByteBuf in;
+
+    private final int end;
+
+    private int index;
+
+    /**
+     * low surrogate of a supplementary character that didn't fit in the last
+     * read, 0 if there isn't one
+     */
+    private char lowSurrogate;
+
+    ByteBufUtf8Reader(final ByteBuf in) {
+        this.in = in;
+        this.index = in.readerIndex();
+        this.end = in.writerIndex();
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        if (this.lowSurrogate != 0) {
+            cbuf[off + n++] = this.lowSurrogate;
+            this.lowSurrogate = 0;
+        }
+        while (n < len && this.index < this.end) {
+            final int b = this.in.getByte(this.index);
+            if (b >= 0) {
+                cbuf[off + n++] = (char) b;
+                this.index++;
+                continue;
+            }
+            final int codePoint = this.readCodePoint(b);
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                cbuf[off + n++] = (char) codePoint;
+            } else {
+                cbuf[off + n++] = Character.highSurrogate(codePoint);
+                if (n < len) {
+                    cbuf[off + n++] = Character.lowSurrogate(codePoint);
+                } else {
+                    this.lowSurrogate = Character.lowSurrogate(codePoint);
+                }
+            }
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+     * Reads a multi byte sequence, the index is moved after it (or after the
+     * first byte if it is malformed).
+     */
+    private int readCodePoint(final int first) {
+        final int size;
+        int codePoint;
+        final int min;
+        if ((first & 0xE0) == 0xC0) {
+            size = 2;
+            codePoint = first & 0x1F;
+            min = 0x80;
+        } else if ((first & 0xF0) == 0xE0) {
+            size = 3;
+            codePoint = first & 0x0F;
+            min = 0x800;
+        } else if ((first & 0xF8) == 0xF0) {
+            size = 4;
+            codePoint = first & 0x07;
+            min = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        } else {
+            this.index++;
+            return REPLACEMENT;
+        }
+        if (this.index + size > this.end) {
+            this.index++;
+            return REPLACEMENT;
+        }
+        for (int i = 1; i < size; i++) {
+            final int b = this.in.getByte(this.index + i);
+            if ((b & 0xC0) != 0x80) {
+                this.index++;
+                return REPLACEMENT;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            this.index++;
+            return REPLACEMENT;
+        }
+        this.index += size;
+        return codePoint;
+    }
+
+    @Override
+    public void close() {
+        // the buffer is released by its owner
+    }
+}
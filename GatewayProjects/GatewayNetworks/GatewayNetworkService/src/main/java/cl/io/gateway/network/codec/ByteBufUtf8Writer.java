@@ -0,0 +1,108 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.io.Writer;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Writer that encodes the characters in utf-8 directly in a buffer, without
+ * the intermediate byte buffer of an OutputStreamWriter (8kb by writer). An
+ * unpaired surrogate is written as '?', as String.getBytes does.
+ *
+ * @author egacl
+ */
+final class ByteBufUtf8Writer extends Writer {
+
+    private static final byte UNMAPPABLE = '?';
+
+    private final ByteBuf out;
+
+    /**
+     * high surrogate waiting for its low surrogate, 0 if there isn't one
+     */
+    private char highSurrogate;
+
+    ByteBufUtf8Writer(final ByteBuf out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(final int c) {
+        this.writeChar((char) c);
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) {
+        this.out.ensureWritable(len);
+        for (int i = off; i < off + len; i++) {
+            this.writeChar(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(final String str, final int off, final int len) {
+        this.out.ensureWritable(len);
+        for (int i = off; i < off + len; i++) {
+            this.writeChar(str.charAt(i));
+        }
+    }
+
+    private void writeChar(final char c) {
+        if (this.highSurrogate != 0) {
+            final char high = this.highSurrogate;
+            this.highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                final int codePoint = Character.toCodePoint(high, c);
+                this.out.writeByte(0xF0 | (codePoint >> 18));
+                this.out.writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                this.out.writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                this.out.writeByte(0x80 | (codePoint & 0x3F));
+                return;
+            }
+            this.out.writeByte(UNMAPPABLE);
+        }
+        if (c < 0x80) {
+            this.out.writeByte(c);
+        } else if (c < 0x800) {
+            this.out.writeByte(0xC0 | (c >> 6));
+            this.out.writeByte(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            this.highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            this.out.writeByte(UNMAPPABLE);
+        } else {
+            this.out.writeByte(0xE0 | (c >> 12));
+            this.out.writeByte(0x80 | ((c >> 6) & 0x3F));
+            this.out.writeByte(0x80 | (c & 0x3F));
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (this.highSurrogate != 0) {
+            // the document ended with an unpaired surrogate
+            this.highSurrogate = 0;
+            this.out.writeByte(UNMAPPABLE);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.flush();
+    }
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessageTypeRegistry;
+import cl.io.gateway.network.driver.IEventMessageCodec;
+import cl.io.gateway.network.driver.IStreamEventMessageCodec;
+import cl.io.gateway.network.driver.ITypedEventMessageCodec;
+import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
+import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Codec decorator that compresses the messages encoded by another codec when
+ * they exceed a size threshold. Every message starts with a flag byte with the
+ * compression of the rest of the bytes, so small messages avoid the compression
+ * cost and both kinds of messages can be mixed in the same channel.
+ *
+ * Compressed messages are sent as binary frames whatever the protocol of the
+ * decorated codec is, both ends of the link must use the decorator.
+ *
+ * Small and repetitive messages are compressed much better with a dictionary
+ * shared by both ends: the codec decodes the messages of all its dictionaries,
+ * and the codecs returned by {@link #forDictionary(int)} also write with one of
+ * them. The version of the dictionary is sent with every message, so links
+ * bind the dictionary codec negotiated at handshake (by subprotocol).
+ *
+ * @author egacl
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class CompressedMessageCodec implements IStreamEventMessageCodec<byte[]>, ITypedEventMessageCodec<byte[]> {
+
+    /**
+     * Flag of the messages sent as they are encoded by the decorated codec
+     */
+    public static final byte UNCOMPRESSED = 0;
+
+    /**
+     * Flag of the messages compressed with deflate
+     */
+    public static final byte DEFLATE = 1;
+
+    /**
+     * Flag of the messages compressed with deflate and a shared dictionary, the
+     * next byte is the dictionary version
+     */
+    public static final byte DEFLATE_DICTIONARY = 2;
+
+    public static final int DEFAULT_THRESHOLD = 8 * 1024;
+
+    public static final int DEFAULT_MAX_INFLATED_SIZE = 16 * 1024 * 1024;
+
+    public static final int DEFAULT_DICTIONARY_THRESHOLD = 64;
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    /**
+     * Max idle compressors and decompressors kept by a codec
+     */
+    private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private final IEventMessageCodec codec;
+
+    /**
+     * messages bigger than this number of bytes are compressed
+     */
+    private final int threshold;
+
+    /**
+     * max size of decompressed messages
+     */
+    private final int maxInflatedSize;
+
+    /**
+     * Compressors and decompressors are reused by any thread, they hold native
+     * memory so the ones that don't fit in the pool are ended
+     */
+    private final ZStreamPool<Deflater> deflaters;
+
+    private final ZStreamPool<Inflater> inflaters;
+
+    /**
+     * Dictionaries by version, shared with the dictionary codecs
+     */
+    private final CompressionDictionary[] dictionaries;
+
+    /**
+     * dictionary used to write messages or null
+     */
+    private final CompressionDictionary dictionary;
+
+    public CompressedMessageCodec(final IEventMessageCodec codec) {
+        this(codec, DEFAULT_THRESHOLD);
+    }
+
+    public CompressedMessageCodec(final IEventMessageCodec codec, final int threshold) {
+        this(codec, threshold, Deflater.DEFAULT_COMPRESSION, DEFAULT_MAX_INFLATED_SIZE);
+    }
+
+    /**
+     * @param codec
+     *            codec that encodes the messages
+     * @param threshold
+     *            messages bigger than this number of bytes are compressed
+     * @param level
+     *            deflate compression level (0-9)
+     * @param maxInflatedSize
+     *            max size of decompressed messages
+     */
+    public CompressedMessageCodec(final IEventMessageCodec codec, final int threshold, final int level,
+            final int maxInflatedSize) {
+        if (codec == null) {
+            throw new IllegalArgumentException("Codec is null");
+        }
+        this.codec = codec;
+        this.threshold = threshold;
+        this.maxInflatedSize = maxInflatedSize;
+        this.deflaters = new ZStreamPool<Deflater>() {
+
+            @Override
+            protected Deflater create() {
+                return new Deflater(level);
+            }
+
+            @Override
+            protected void reset(final Deflater deflater) {
+                deflater.reset();
+            }
+
+            @Override
+            protected void end(final Deflater deflater) {
+                deflater.end();
+            }
+        };
+        this.inflaters = new ZStreamPool<Inflater>() {
+
+            @Override
+            protected Inflater create() {
+                return new Inflater();
+            }
+
+            @Override
+            protected void reset(final Inflater inflater) {
+                inflater.reset();
+            }
+
+            @Override
+            protected void end(final Inflater inflater) {
+                inflater.end();
+            }
+        };
+        this.dictionaries = new CompressionDictionary[CompressionDictionary.MAX_VERSION + 1];
+        this.dictionary = null;
+    }
+
+    private CompressedMessageCodec(final CompressedMessageCodec base, final CompressionDictionary dictionary,
+            final int threshold) {
+        this.codec = base.codec;
+        this.threshold = threshold;
+        this.maxInflatedSize = base.maxInflatedSize;
+        this.deflaters = base.deflaters;
+        this.inflaters = base.inflaters;
+        this.dictionaries = base.dictionaries;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Adds a dictionary to decode the messages compressed with it. Dictionaries
+     * must be added before the codec is used.
+     *
+     * @param dictionary
+     *            shared dictionary
+     * @return this codec
+     */
+    public CompressedMessageCodec withDictionary(final CompressionDictionary dictionary) {
+        this.dictionaries[dictionary.getVersion()] = dictionary;
+        return this;
+    }
+
+    /**
+     * Returns a codec that compresses the messages bigger than
+     * {@link #DEFAULT_DICTIONARY_THRESHOLD} bytes with a dictionary of this
+     * codec.
+     *
+     * @param version
+     *            dictionary version
+     * @return dictionary codec
+     */
+    public CompressedMessageCodec forDictionary(final int version) {
+        return this.forDictionary(version, DEFAULT_DICTIONARY_THRESHOLD);
+    }
+
+    /**
+     * Returns a codec that compresses the messages with a dictionary of this
+     * codec, it decodes the messages of all the dictionaries.
+     *
+     * @param version
+     *            dictionary version
+     * @param threshold
+     *            messages bigger than this number of bytes are compressed
+     * @return dictionary codec
+     */
+    public CompressedMessageCodec forDictionary(final int version, final int threshold) {
+        final CompressionDictionary dictionary = version < 1 || version > CompressionDictionary.MAX_VERSION ? null
+                : this.dictionaries[version];
+        if (dictionary == null) {
+            throw new IllegalArgumentException("Unknown compression dictionary " + version);
+        }
+        return new CompressedMessageCodec(this, dictionary, threshold);
+    }
+
+    @Override
+    public void setMessageTypeRegistry(NetworkMessageTypeRegistry registry) {
+        if (this.codec instanceof ITypedEventMessageCodec) {
+            ((ITypedEventMessageCodec) this.codec).setMessageTypeRegistry(registry);
+        }
+    }
+
+    @Override
+    public byte[] serialize(NetworkMessage message) throws NetworkMessageSerializationException {
+        final ByteBuf out = ByteBufAllocator.DEFAULT.heapBuffer();
+        try {
+            this.serialize(message, out);
+            return ByteBufUtil.getBytes(out);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Override
+    public void serialize(NetworkMessage message, ByteBuf out) throws NetworkMessageSerializationException {
+        final int flagIndex = out.writerIndex();
+        out.writeByte(UNCOMPRESSED);
+        this.encode(message, out);
+        final int length = out.writerIndex() - flagIndex - 1;
+        if (length > this.threshold) {
+            // se reemplaza el mensaje por su forma comprimida
+            final byte[] encoded = ByteBufUtil.getBytes(out, flagIndex + 1, length);
+            out.writerIndex(flagIndex);
+            if (this.dictionary == null) {
+                out.writeByte(DEFLATE);
+            } else {
+                out.writeByte(DEFLATE_DICTIONARY);
+                out.writeByte(this.dictionary.getVersion());
+            }
+            this.deflate(encoded, out);
+        }
+    }
+
+    @Override
+    public NetworkMessage deserealize(byte[] protocolMessage) throws NetworkMessageDeserializationException {
+        return this.deserealize(Unpooled.wrappedBuffer(protocolMessage));
+    }
+
+    @Override
+    public NetworkMessage deserealize(ByteBuf content) throws NetworkMessageDeserializationException {
+        if (!content.isReadable()) {
+            throw new NetworkMessageDeserializationException("Empty compressed message");
+        }
+        final byte flag = content.getByte(content.readerIndex());
+        final ByteBuf encoded = content.slice(content.readerIndex() + 1, content.readableBytes() - 1);
+        switch (flag) {
+        case UNCOMPRESSED:
+            return this.decode(encoded);
+        case DEFLATE:
+            return this.decodeCompressed(encoded, null);
+        case DEFLATE_DICTIONARY:
+            final int version = encoded.isReadable() ? encoded.getUnsignedByte(encoded.readerIndex()) : 0;
+            final CompressionDictionary dictionary = this.dictionaries[version];
+            if (dictionary == null) {
+                throw new NetworkMessageDeserializationException("Unknown compression dictionary " + version);
+            }
+            return this.decodeCompressed(encoded.slice(encoded.readerIndex() + 1, encoded.readableBytes() - 1),
+                    dictionary);
+        default:
+            throw new NetworkMessageDeserializationException("Unknown compression flag " + flag);
+        }
+    }
+
+    private NetworkMessage decodeCompressed(final ByteBuf compressed, final CompressionDictionary dictionary)
+            throws NetworkMessageDeserializationException {
+        final ByteBuf inflated = this.inflate(compressed, dictionary);
+        try {
+            return this.decode(inflated);
+        } finally {
+            inflated.release();
+        }
+    }
+
+    private void encode(final NetworkMessage message, final ByteBuf out)
+            throws NetworkMessageSerializationException {
+        if (this.codec instanceof IStreamEventMessageCodec) {
+            ((IStreamEventMessageCodec) this.codec).serialize(message, out);
+            return;
+        }
+        final Object protocolMessage = this.codec.serialize(message);
+        out.writeBytes(protocolMessage instanceof String ? ((String) protocolMessage).getBytes(CharsetUtil.UTF_8)
+                : (byte[]) protocolMessage);
+    }
+
+    private NetworkMessage decode(final ByteBuf encoded) throws NetworkMessageDeserializationException {
+        if (this.codec instanceof IStreamEventMessageCodec) {
+            return ((IStreamEventMessageCodec) this.codec).deserealize(encoded);
+        }
+        if (this.codec.protocolClass() == byte[].class) {
+            return this.codec.deserealize(ByteBufUtil.getBytes(encoded));
+        }
+        return this.codec.deserealize(encoded.toString(CharsetUtil.UTF_8));
+    }
+
+    private void deflate(final byte[] encoded, final ByteBuf out) {
+        final Deflater deflater = this.deflaters.acquire();
+        try {
+            if (this.dictionary != null) {
+                deflater.setDictionary(this.dictionary.getContent());
+            }
+            deflater.setInput(encoded);
+            deflater.finish();
+            final byte[] chunk = out.hasArray() ? null : new byte[CHUNK_SIZE];
+            while (!deflater.finished()) {
+                if (chunk == null) {
+                    out.ensureWritable(CHUNK_SIZE);
+                    final int written = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(),
+                            out.writableBytes());
+                    out.writerIndex(out.writerIndex() + written);
+                } else {
+                    out.writeBytes(chunk, 0, deflater.deflate(chunk));
+                }
+            }
+        } finally {
+            this.deflaters.release(deflater);
+        }
+    }
+
+    private ByteBuf inflate(final ByteBuf compressed, final CompressionDictionary dictionary)
+            throws NetworkMessageDeserializationException {
+        final Inflater inflater = this.inflaters.acquire();
+        final ByteBuf out = ByteBufAllocator.DEFAULT.heapBuffer(Math.min(compressed.readableBytes() * 4,
+                this.maxInflatedSize));
+        try {
+            if (compressed.hasArray()) {
+                inflater.setInput(compressed.array(), compressed.arrayOffset() + compressed.readerIndex(),
+                        compressed.readableBytes());
+            } else {
+                inflater.setInput(ByteBufUtil.getBytes(compressed));
+            }
+            while (!inflater.finished()) {
+                if (out.writerIndex() >= this.maxInflatedSize) {
+                    throw new NetworkMessageDeserializationException(
+                            "Compressed message exceeds " + this.maxInflatedSize + " bytes");
+                }
+                out.ensureWritable(Math.min(CHUNK_SIZE, this.maxInflatedSize - out.writerIndex()));
+                final int written = inflater.inflate(out.array(), out.arrayOffset() + out.writerIndex(),
+                        Math.min(out.writableBytes(), this.maxInflatedSize - out.writerIndex()));
+                if (written == 0 && inflater.needsDictionary()) {
+                    this.setDictionary(inflater, dictionary);
+                } else if (written == 0 && inflater.needsInput()) {
+                    throw new NetworkMessageDeserializationException("Truncated compressed message");
+                }
+                out.writerIndex(out.writerIndex() + written);
+            }
+            return out;
+        } catch (DataFormatException e) {
+            out.release();
+            throw new NetworkMessageDeserializationException("Invalid compressed message", e);
+        } catch (NetworkMessageDeserializationException | RuntimeException e) {
+            out.release();
+            throw e;
+        } finally {
+            this.inflaters.release(inflater);
+        }
+    }
+
+    private void setDictionary(final Inflater inflater, final CompressionDictionary dictionary)
+            throws NetworkMessageDeserializationException {
+        if (dictionary == null || (inflater.getAdler() & 0xFFFFFFFFL) != dictionary.getChecksum()) {
+            throw new NetworkMessageDeserializationException("Compression dictionary "
+                    + (dictionary == null ? "missing" : dictionary.getVersion() + " doesn't match"));
+        }
+        inflater.setDictionary(dictionary.getContent());
+    }
+
+    /**
+     * The decorated codec defines the version, compression doesn't depend on
+     * shared state (dictionaries have their own subprotocols).
+     */
+    @Override
+    public String getSubprotocolVersion() {
+        return this.codec.getSubprotocolVersion();
+    }
+
+    /**
+     * Messages are compatible with other decorators of the same codec class that
+     * write with the same dictionary, whatever its threshold is.
+     */
+    @Override
+    public boolean isCompatible(IEventMessageCodec codec) {
+        return codec instanceof CompressedMessageCodec
+                && ((CompressedMessageCodec) codec).dictionary == this.dictionary
+                && this.codec.isCompatible(((CompressedMessageCodec) codec).codec);
+    }
+
+    /**
+     * @return dictionary used to write messages or null
+     */
+    public CompressionDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return codec that encodes the messages
+     */
+    public IEventMessageCodec getCodec() {
+        return codec;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    public Class<byte[]> protocolClass() {
+        return byte[].class;
+    }
+
+    /**
+     * Bounded pool of zlib streams, the streams released when the pool is full
+     * are ended so their native memory doesn't wait for the garbage collector.
+     */
+    private abstract static class ZStreamPool<T> {
+
+        private final Queue<T> idle = new ArrayBlockingQueue<>(POOL_SIZE);
+
+        T acquire() {
+            final T stream = this.idle.poll();
+            return stream == null ? this.create() : stream;
+        }
+
+        void release(final T stream) {
+            this.reset(stream);
+            if (!this.idle.offer(stream)) {
+                this.end(stream);
+            }
+        }
+
+        protected abstract T create();
+
+        protected abstract void reset(T stream);
+
+        protected abstract void end(T stream);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.Adler32;
+
+/**
+ * Versioned dictionary shared by both ends of a link to compress small
+ * messages. The dictionary is built from sampled traffic, deflate uses its
+ * last 32 KB so the most frequent content (envelopes, event names, field names)
+ * should be placed at the end.
+ *
+ * @see CompressedMessageCodec#withDictionary(CompressionDictionary)
+ * @author egacl
+ */
+public final class CompressionDictionary {
+
+    public static final int MAX_VERSION = 255;
+
+    private final int version;
+
+    private final byte[] content;
+
+    /**
+     * adler32 checksum of the content, deflate streams reference the dictionary
+     * with it
+     */
+    private final long checksum;
+
+    /**
+     * @param version
+     *            dictionary version (1-255), it is sent with every message
+     *            compressed with the dictionary
+     * @param content
+     *            dictionary content
+     */
+    public CompressionDictionary(final int version, final byte[] content) {
+        if (version < 1 || version > MAX_VERSION) {
+            throw new IllegalArgumentException("Invalid dictionary version " + version);
+        }
+        if (content == null || content.length == 0) {
+            throw new IllegalArgumentException("Dictionary " + version + " is empty");
+        }
+        this.version = version;
+        this.content = content;
+        final Adler32 adler = new Adler32();
+        adler.update(content);
+        this.checksum = adler.getValue();
+    }
+
+    /**
+     * Reads a dictionary from a file.
+     *
+     * @param version
+     *            dictionary version
+     * @param path
+     *            dictionary file path
+     * @return dictionary
+     * @throws IOException
+     *             if the file can't be read
+     */
+    public static CompressionDictionary load(final int version, final String path) throws IOException {
+        return new CompressionDictionary(version, Files.readAllBytes(Paths.get(path)));
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    byte[] getContent() {
+        return content;
+    }
+
+    long getChecksum() {
+        return checksum;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionDictionary{version=" + version + ", size=" + content.length + "}";
+    }
+}
@@ -15,49 +15,164 @@
  */
 package cl.io.gateway.network.codec;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import cl.io.gateway.network.NetworkMessage;
-import cl.io.gateway.network.driver.IEventMessageCodec;
+import cl.io.gateway.network.NetworkMessageTypeRegistry;
+import cl.io.gateway.network.driver.IBatchEventMessageCodec;
+import cl.io.gateway.network.driver.IStreamEventMessageCodec;
+import cl.io.gateway.network.driver.ITypedEventMessageCodec;
 import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
 import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+import io.netty.buffer.ByteBuf;
 
 /**
  * Gson codec message implementation that transform messages object into json
- * string object.
+ * string object. A batch envelope is written as a json array of messages.
+ * Message payloads are decoded into the type registered for their event.
+ *
+ * Messages are written and read with the cached gson type adapters through
+ * json streams, when the network driver works with buffers the json is encoded
+ * to and decoded from them in utf-8 without intermediate strings or byte
+ * arrays.
  * 
  * @author egacl
  */
-@SuppressWarnings("rawtypes")
-public class GSonMessageCodec implements IEventMessageCodec<String> {
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class GSonMessageCodec
+        implements IStreamEventMessageCodec<String>, ITypedEventMessageCodec<String>, IBatchEventMessageCodec<String> {
 
     private static final Logger logger = LoggerFactory.getLogger(GSonMessageCodec.class);
 
-    private final Gson gson = new Gson();
+    private final TypedNetworkMessageAdapterFactory messageAdapterFactory = new TypedNetworkMessageAdapterFactory();
+
+    private final Gson gson = new GsonBuilder().registerTypeAdapterFactory(messageAdapterFactory).create();
+
+    private final TypeAdapter<NetworkMessage> messageAdapter = gson.getAdapter(NetworkMessage.class);
+
+    private final TypeAdapter<List<NetworkMessage>> batchAdapter = gson
+            .getAdapter(new TypeToken<List<NetworkMessage>>() {
+            });
+
+    @Override
+    public void setMessageTypeRegistry(NetworkMessageTypeRegistry registry) {
+        this.messageAdapterFactory.setRegistry(registry);
+    }
 
     @Override
     public String serialize(NetworkMessage message) throws NetworkMessageSerializationException {
-        return gson.toJson(message);
+        final StringWriter writer = new StringWriter();
+        this.toJson(writer, message);
+        return writer.toString();
+    }
+
+    @Override
+    public void serialize(NetworkMessage message, ByteBuf out) throws NetworkMessageSerializationException {
+        this.toJson(new ByteBufUtf8Writer(out), message);
+    }
+
+    @Override
+    public void serializeBatch(List<ByteBuf> messages, ByteBuf out) throws NetworkMessageSerializationException {
+        BatchEnvelopes.writeJsonArray(messages, out);
     }
 
     @Override
     public NetworkMessage deserealize(String protocolMessage) throws NetworkMessageDeserializationException {
         try {
-            NetworkMessage message = gson.fromJson(protocolMessage, NetworkMessage.class);
-            if (message == null) {
-                throw new NetworkMessageDeserializationException("Json deserialization error, message is null?");
-            }
-            return message;
-        } catch (JsonSyntaxException e) {
+            return this.fromJson(new StringReader(protocolMessage), this.isJsonArray(protocolMessage));
+        } catch (IOException | JsonParseException | IllegalStateException e) {
             logger.error("error processing message '" + protocolMessage + "'", e);
             throw new NetworkMessageDeserializationException("Json deserialization error", e);
         }
     }
 
+    @Override
+    public NetworkMessage deserealize(ByteBuf content) throws NetworkMessageDeserializationException {
+        try {
+            return this.fromJson(new ByteBufUtf8Reader(content), this.isJsonArray(content));
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            logger.error("error processing message of " + content.readableBytes() + " bytes", e);
+            throw new NetworkMessageDeserializationException("Json deserialization error", e);
+        }
+    }
+
+    private void toJson(final Writer writer, final NetworkMessage message)
+            throws NetworkMessageSerializationException {
+        try {
+            // same writer settings of gson.toJson
+            final JsonWriter jsonWriter = gson.newJsonWriter(writer);
+            jsonWriter.setLenient(true);
+            jsonWriter.setHtmlSafe(true);
+            if (message.isBatch()) {
+                this.batchAdapter.write(jsonWriter, (List<NetworkMessage>) message.getMessage());
+            } else {
+                this.messageAdapter.write(jsonWriter, message);
+            }
+            jsonWriter.flush();
+        } catch (IOException | JsonParseException e) {
+            throw new NetworkMessageSerializationException("Json serialization error for " + message, e);
+        }
+    }
+
+    private NetworkMessage fromJson(final Reader reader, final boolean batch)
+            throws IOException, NetworkMessageDeserializationException {
+        final JsonReader jsonReader = gson.newJsonReader(reader);
+        jsonReader.setLenient(true);
+        if (batch) {
+            final List<NetworkMessage> messages = this.batchAdapter.read(jsonReader);
+            if (messages == null) {
+                throw new NetworkMessageDeserializationException("Json deserialization error, batch is null?");
+            }
+            return NetworkMessage.createBatch(messages);
+        }
+        final NetworkMessage message = this.messageAdapter.read(jsonReader);
+        if (message == null) {
+            throw new NetworkMessageDeserializationException("Json deserialization error, message is null?");
+        }
+        if (NetworkMessage.BATCH_EVENT.equals(message.getEvent())) {
+            // solo un arreglo json es un sobre de mensajes
+            message.release();
+            throw new NetworkMessageDeserializationException("Json deserialization error, reserved event "
+                    + NetworkMessage.BATCH_EVENT);
+        }
+        return message;
+    }
+
+    private boolean isJsonArray(final String json) {
+        for (int i = 0; i < json.length(); i++) {
+            if (!Character.isWhitespace(json.charAt(i))) {
+                return json.charAt(i) == '[';
+            }
+        }
+        return false;
+    }
+
+    private boolean isJsonArray(final ByteBuf content) {
+        for (int i = content.readerIndex(); i < content.writerIndex(); i++) {
+            final byte b = content.getByte(i);
+            if (!Character.isWhitespace(b)) {
+                return b == '[';
+            }
+        }
+        return false;
+    }
+
     @Override
     public Class<String> protocolClass() {
         return String.class;
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessageTypeRegistry;
+
+/**
+ * Gson adapter factory for network messages. Messages are written with the
+ * reflective gson adapter, and they are read field by field so the payload is
+ * decoded with the adapter of the type registered for the message event (it
+ * only needs an intermediate tree if the payload comes before the event).
+ *
+ * @author egacl
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+final class TypedNetworkMessageAdapterFactory implements TypeAdapterFactory {
+
+    private static final Type CONTEXT_TYPE = new TypeToken<Map<String, Object>>() {
+    }.getType();
+
+    private volatile NetworkMessageTypeRegistry registry = new NetworkMessageTypeRegistry();
+
+    void setRegistry(final NetworkMessageTypeRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public <T> TypeAdapter<T> create(final Gson gson, final TypeToken<T> type) {
+        if (type.getRawType() != NetworkMessage.class) {
+            return null;
+        }
+        return (TypeAdapter<T>) new NetworkMessageAdapter(gson, gson.getDelegateAdapter(this, type));
+    }
+
+    private final class NetworkMessageAdapter extends TypeAdapter<NetworkMessage> {
+
+        private final Gson gson;
+
+        private final TypeAdapter<NetworkMessage> delegate;
+
+        private final TypeAdapter<Map<String, Object>> contextAdapter;
+
+        private final TypeAdapter<String> stringAdapter;
+
+        private final TypeAdapter<Long> longAdapter;
+
+        private final TypeAdapter<JsonElement> treeAdapter;
+
+        /**
+         * payload adapters by type
+         */
+        private final Map<Type, TypeAdapter<?>> payloadAdapters = new ConcurrentHashMap<>();
+
+        private NetworkMessageAdapter(final Gson gson, final TypeAdapter delegate) {
+            this.gson = gson;
+            this.delegate = delegate;
+            this.contextAdapter = (TypeAdapter<Map<String, Object>>) gson.getAdapter(TypeToken.get(CONTEXT_TYPE));
+            this.stringAdapter = gson.getAdapter(String.class);
+            this.longAdapter = gson.getAdapter(Long.class);
+            this.treeAdapter = gson.getAdapter(JsonElement.class);
+        }
+
+        @Override
+        public void write(final JsonWriter out, final NetworkMessage value) throws IOException {
+            if (value != null && !value.isMessageDecoded()) {
+                // payload received by a lazy codec, the reflective adapter writes the field
+                value.getMessage();
+            }
+            this.delegate.write(out, value);
+        }
+
+        @Override
+        public NetworkMessage read(final JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            final NetworkMessage message = registry.newMessage();
+            try {
+                this.read(in, message);
+            } catch (IOException | RuntimeException e) {
+                // a pooled message is returned to its pool
+                message.release();
+                throw e;
+            }
+            return message;
+        }
+
+        private void read(final JsonReader in, final NetworkMessage message) throws IOException {
+            JsonElement pendingPayload = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                final String name = in.nextName();
+                switch (name) {
+                case "event":
+                    // known events share the registered instance
+                    message.setEvent(registry.getEvent(this.stringAdapter.read(in)));
+                    break;
+                case "message":
+                    if (message.getEvent() == null) {
+                        // the event is unknown yet
+                        pendingPayload = this.treeAdapter.read(in);
+                    } else {
+                        message.setMessage(this.payloadAdapter(message.getEvent()).read(in));
+                    }
+                    break;
+                case "context":
+                    final Map<String, Object> context = this.contextAdapter.read(in);
+                    if (context != null) {
+                        for (Map.Entry<String, Object> entry : context.entrySet()) {
+                            message.putContext(entry.getKey(), entry.getValue());
+                        }
+                    }
+                    break;
+                case "source":
+                    message.setSource(this.stringAdapter.read(in));
+                    break;
+                case "target":
+                    message.setTarget(this.stringAdapter.read(in));
+                    break;
+                case "channelId":
+                    message.setChannelId(this.stringAdapter.read(in));
+                    break;
+                case "correlationId":
+                    message.setCorrelationId(this.longAdapter.read(in));
+                    break;
+                case "replyTo":
+                    message.setReplyTo(this.longAdapter.read(in));
+                    break;
+                default:
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            if (pendingPayload != null) {
+                message.setMessage(this.payloadAdapter(message.getEvent()).fromJsonTree(pendingPayload));
+            }
+        }
+
+        private TypeAdapter<?> payloadAdapter(final String event) {
+            Type type = registry.getType(event);
+            if (type == null) {
+                type = Object.class;
+            }
+            TypeAdapter<?> adapter = this.payloadAdapters.get(type);
+            if (adapter == null) {
+                adapter = this.gson.getAdapter(TypeToken.get(type));
+                this.payloadAdapters.put(type, adapter);
+            }
+            return adapter;
+        }
+    }
+}
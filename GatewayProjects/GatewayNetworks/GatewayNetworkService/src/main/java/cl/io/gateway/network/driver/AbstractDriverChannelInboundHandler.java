@@ -51,9 +51,23 @@ public abstract class AbstractDriverChannelInboundHandler<T> extends SimpleChann
     @Override
     public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
         super.channelReadComplete(ctx);
+        this.networkDriver.onNetworkReadComplete(this.networkDriver.getChannelId(ctx.channel()));
         ctx.flush();
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        super.channelWritabilityChanged(ctx);
+        if (ctx.channel().isWritable()) {
+            // Se envian los mensajes pendientes del canal
+            final DriverChannel driverChannel = this.networkDriver
+                    .getDriverChannel(this.networkDriver.getChannelId(ctx.channel()));
+            if (driverChannel != null) {
+                driverChannel.getOutboundQueue().drain();
+            }
+        }
+    }
+
     @Override
     public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
         super.channelRegistered(ctx);
@@ -17,7 +17,11 @@ package cl.io.gateway.network.driver;
 
 import cl.io.gateway.network.IDeliveryStatusListener;
 import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessagePriority;
+import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
 import io.netty.util.concurrent.GenericFutureListener;
 
 /**
@@ -51,9 +55,56 @@ public abstract class AbstractDriverChannelOutboundHandler<T, P> implements IDri
     @SuppressWarnings("unchecked")
     public void write(final NetworkMessage msg, final DriverChannel channel, final IDeliveryStatusListener deliveryStatus)
             throws Exception {
-        final ChannelFuture channelFuture = channel.getChannel().writeAndFlush(this.messageToSend(msg));
+        final ChannelPromise promise = this.newPromise(msg, channel, deliveryStatus);
+        final NetworkMessagePriority priority = this.getPriority(msg);
+        if (this.isBatched(channel, priority)) {
+            // high priority messages never wait for a batch
+            channel.getOutboundBatcher().add(msg, priority, promise);
+        } else {
+            channel.getOutboundQueue().write(this.messageToSend(msg, promise, channel), priority, promise);
+        }
+    }
+
+    @Override
+    public void forward(final ByteBuf content, final NetworkMessage msg, final DriverChannel channel,
+            final IDeliveryStatusListener deliveryStatus) throws Exception {
+        final NetworkMessagePriority priority = this.getPriority(msg);
+        if (this.isBatched(channel, priority)) {
+            // the message is encoded into the batch envelope to keep the order with the
+            // batched messages
+            this.write(msg, channel, deliveryStatus);
+            return;
+        }
+        final ChannelPromise promise = this.newPromise(msg, channel, deliveryStatus);
+        channel.getOutboundQueue().write(this.frameToSend(content.retainedDuplicate(), channel), priority, promise);
+    }
+
+    private boolean isBatched(final DriverChannel channel, final NetworkMessagePriority priority) {
+        return channel.getOutboundBatcher() != null && priority != NetworkMessagePriority.HIGH
+                && OutboundMessageBatcher.isBatchable(channel);
+    }
+
+    /**
+     * Encodes the message, the promise of the write fails if the message can't be
+     * encoded.
+     */
+    private T messageToSend(final NetworkMessage msg, final ChannelPromise promise, final DriverChannel channel)
+            throws NetworkMessageSerializationException {
+        try {
+            return this.messageToSend(msg, channel);
+        } catch (NetworkMessageSerializationException | RuntimeException err) {
+            promise.tryFailure(err);
+            throw err;
+        }
+    }
+
+    private ChannelPromise newPromise(final NetworkMessage msg, final DriverChannel channel,
+            final IDeliveryStatusListener deliveryStatus) {
+        final ChannelPromise promise = channel.getChannel().newPromise();
         if (deliveryStatus != null) {
-            channelFuture.addListener(new GenericFutureListener<ChannelFuture>() {
+            // the message is notified to the listener after the write
+            msg.retain();
+            promise.addListener(new GenericFutureListener<ChannelFuture>() {
 
                 @Override
                 public void operationComplete(final ChannelFuture future) throws Exception {
@@ -65,11 +116,28 @@ public abstract class AbstractDriverChannelOutboundHandler<T, P> implements IDri
                         }
                     } finally {
                         // se escribe estadistica de envio de mensaje
-                        driver.countSendEvent(msg.getEvent(), future.isSuccess());
+                        driver.countSendEvent(msg, future.isSuccess());
+                        msg.release();
                     }
                 }
             });
         }
+        return promise;
+    }
+
+    /**
+     * Message priority, if the message doesn't define it the priority configured
+     * for its event is used.
+     *
+     * @param msg
+     *            message to send
+     * @return message priority
+     */
+    protected NetworkMessagePriority getPriority(final NetworkMessage msg) {
+        if (msg.getPriority() != null) {
+            return msg.getPriority();
+        }
+        return this.driver.getConfiguration().getEventPriority(msg.getEvent());
     }
 
     @Override
@@ -15,6 +15,7 @@
  */
 package cl.io.gateway.network.driver;
 
+import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
@@ -25,20 +26,32 @@ import org.slf4j.LoggerFactory;
 
 import cl.io.gateway.network.IConnectionStatus;
 import cl.io.gateway.network.IDeliveryStatusListener;
+import cl.io.gateway.network.INetworkMessageFrame;
 import cl.io.gateway.network.IServiceDriverCommunication;
 import cl.io.gateway.network.NetworkConfiguration;
 import cl.io.gateway.network.NetworkConnection;
 import cl.io.gateway.network.NetworkEvent;
+import cl.io.gateway.network.NetworkEventDictionary;
+import cl.io.gateway.network.NetworkEventTable;
 import cl.io.gateway.network.NetworkEventType;
 import cl.io.gateway.network.NetworkMessage;
 import cl.io.gateway.network.driver.exception.NetworkDriverException;
 import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
 import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
 import cl.io.gateway.stats.Counter;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.util.AttributeKey;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.concurrent.GenericFutureListener;
 
 /**
@@ -66,6 +79,24 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
 
     private static final String STATS_COUNTER_OUTPUT_MSG_PREFIX_ERROR = "OutputMsgEventCounterERROR.";
 
+    /**
+     * Driver channel instance of the netty channel
+     */
+    private static final AttributeKey<DriverChannel> DRIVER_CHANNEL = AttributeKey
+            .valueOf(AbstractNetworkDriver.class.getName() + ".driverChannel");
+
+    /**
+     * Frame whose message is being delivered to the messaging service by the
+     * thread, used to relay the message without encoding it again
+     */
+    private static final FastThreadLocal<ReceivedFrame> RECEIVED_FRAME = new FastThreadLocal<ReceivedFrame>() {
+
+        @Override
+        protected ReceivedFrame initialValue() {
+            return new ReceivedFrame(false);
+        }
+    };
+
     private final EventLoopGroup bossGroup;
 
     private final EventLoopGroup workerGroup;
@@ -90,6 +121,11 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
      */
     private final ConcurrentHashMap<Class, IEventMessageCodec> eventMessageCodecMap;
 
+    /**
+     * Codec bound to channels that don't negotiate a subprotocol
+     */
+    private final IEventMessageCodec defaultCodec;
+
     /**
      * Server instance for client connection piping
      */
@@ -115,6 +151,12 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
      */
     private final Counter messageCounter = new Counter();
 
+    /**
+     * Statistics counter keys of the registered events indexed by event id, it
+     * avoids building the keys on every message
+     */
+    private final NetworkEventTable<String[]> counterKeys;
+
     /**
      * It allows to attach a counter for the collection of statistics (optional)
      */
@@ -130,6 +172,7 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
             final EventLoopGroup workerGroup) {
         this.configuration = configuration;
         this.IServiceDriverCommunication = IServiceDriverCommunication;
+        this.counterKeys = new NetworkEventTable<>(configuration.getEventDictionary());
         this.channelsMap = new ConcurrentHashMap<>(50, 0.5f);
         this.eventMessageCodecMap = new ConcurrentHashMap<>(50, 0.5f);
         if (this.configuration.getCodecs() != null) {
@@ -140,7 +183,12 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
                 } else {
                     this.eventMessageCodecMap.put(codec.protocolClass(), codec);
                 }
+                if (codec instanceof ITypedEventMessageCodec) {
+                    ((ITypedEventMessageCodec) codec).setMessageTypeRegistry(this.configuration.getMessageTypes());
+                }
             }
+            this.defaultCodec = this.configuration.getCodecs().isEmpty() ? null
+                    : this.configuration.getCodecs().get(0);
         } else {
             logger.error("No exists event message codec?");
             throw new IllegalStateException("IEventMessageCodecs not found");
@@ -254,6 +302,33 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
         }
     }
 
+    @Override
+    public void forward(final String channelId, final NetworkMessage message) throws NetworkDriverException {
+        this.forward(channelId, message, null);
+    }
+
+    @Override
+    public void forward(final String channelId, final NetworkMessage message,
+            final IDeliveryStatusListener deliveryStatus) throws NetworkDriverException {
+        final DriverChannel channel = this.channelsMap.get(channelId);
+        if (channel == null) {
+            throw new NetworkDriverException("Unknown channel: " + channelId);
+        }
+        // Los bytes recibidos solo sirven si el canal destino usa el mismo codec
+        final INetworkMessageFrame receivedFrame = message.getReceivedFrame();
+        final ByteBuf frame = receivedFrame instanceof ReceivedFrame
+                ? ((ReceivedFrame) receivedFrame).getContent(channel.getCodec()) : null;
+        if (frame == null) {
+            this.send(channelId, message, deliveryStatus);
+            return;
+        }
+        try {
+            this.outboundHandler.forward(frame, message, channel, deliveryStatus);
+        } catch (Exception err) {
+            throw new NetworkDriverException("Error forwarding message to '" + channelId + "'", err);
+        }
+    }
+
     @Override
     public void broadcast(NetworkMessage message) throws NetworkDriverException {
         final List<DriverChannel> channels = new ArrayList<>(this.channelsMap.values());
@@ -269,7 +344,9 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
 
     /**
      * It allows you to process an incoming message from the network, add context
-     * data and deliver it to the network messaging service.
+     * data and deliver it to the network messaging service. Messages of a batch
+     * envelope are delivered one by one keeping their order. The message is
+     * released after its delivery.
      *
      * @param channelId
      *            channel that sends the message
@@ -277,20 +354,79 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
      *            message received
      */
     public <T> void onNetworkMessage(final String channelId, final NetworkMessage<T> message) {
+        this.onNetworkMessage(channelId, message, null, null);
+    }
+
+    /**
+     * It allows you to process an incoming message from the network as
+     * {@link #onNetworkMessage(String, NetworkMessage)} does. While the message
+     * is delivered to the messaging service the received frame can be relayed to
+     * other channels without encoding the message again.
+     *
+     * @param channelId
+     *            channel that sends the message
+     * @param message
+     *            message received
+     * @param frame
+     *            content of the received frame or null
+     * @param codec
+     *            codec that decoded the frame
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void onNetworkMessage(final String channelId, final NetworkMessage<T> message, final ByteBuf frame,
+            final IEventMessageCodec codec) {
+        if (message.isBatch()) {
+            // Se procesan los mensajes del sobre en el orden en que fueron enviados
+            for (final NetworkMessage batchMessage : (List<NetworkMessage>) message.getMessage()) {
+                this.onNetworkMessage(channelId, batchMessage, null, null);
+            }
+            return;
+        }
         try {
-            // se aumenta la secuencia de mensajes del cliente y se entrega como dato de
-            // contexto
-            message.putContext(NetworkMessage.CHANNEL_MESSAGE_SEQUENCE,
-                    this.channelsMap.get(channelId).addAndGetMessageCounter());
-            // se aumenta la secuencia de mensajes asociados al evento recibido
-            message.putContext(NetworkMessage.EVENT_MESSAGE_SEQUENCE,
-                    this.countReceivedEvent(message.getEvent(), true));
+            // se aumentan las secuencias de mensajes del cliente y del evento recibido,
+            // son datos locales del mensaje y no se envian por la red
+            message.setMessageSequences(this.channelsMap.get(channelId).addAndGetMessageCounter(),
+                    this.countReceivedEvent(message, true));
             // Se setea el channelId
             message.setChannelId(channelId);
-            this.IServiceDriverCommunication.onNetworkMessage(message);
+            if (frame == null) {
+                this.IServiceDriverCommunication.onNetworkMessage(message);
+            } else {
+                this.deliverReceivedFrame(message, frame, codec);
+            }
         } catch (NetworkDriverException err) {
-            this.countReceivedEvent(message.getEvent(), false);
+            this.countReceivedEvent(message, false);
             logger.error("Error processing message " + message, err);
+        } finally {
+            // los mensajes del pool vuelven a el si el handler no los retuvo
+            message.release();
+        }
+    }
+
+    private <T> void deliverReceivedFrame(final NetworkMessage<T> message, final ByteBuf frame,
+            final IEventMessageCodec codec) throws NetworkDriverException {
+        final ReceivedFrame receivedFrame = RECEIVED_FRAME.get();
+        receivedFrame.set(frame, codec);
+        message.setReceivedFrame(receivedFrame);
+        try {
+            this.IServiceDriverCommunication.onNetworkMessage(message);
+        } finally {
+            // los handlers que retuvieron el mensaje mantienen una copia del frame
+            message.removeReceivedFrame(receivedFrame);
+            receivedFrame.clear();
+        }
+    }
+
+    /**
+     * It allows you to notify the network messaging service that a network read
+     * of the channel ended.
+     *
+     * @param channelId
+     *            channel that was read
+     */
+    public void onNetworkReadComplete(final String channelId) {
+        if (channelId != null) {
+            this.IServiceDriverCommunication.onNetworkReadComplete(channelId);
         }
     }
 
@@ -327,11 +463,46 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
      *            network event
      */
     public void onNetworkEvent(final String channelId, final Channel channel, final NetworkEventType eventType) {
+        this.onNetworkEvent(channelId, channel, eventType, null);
+    }
+
+    /**
+     * It allows you to notify the network messaging service that an event has
+     * occurred in a channel of the network. When the channel is activated the
+     * codec of the negotiated subprotocol is bound to it.
+     *
+     * @param channelId
+     *            channel identifier
+     * @param channel
+     *            channel
+     * @param eventType
+     *            network event
+     * @param subprotocol
+     *            subprotocol negotiated by the channel or null
+     */
+    public void onNetworkEvent(final String channelId, final Channel channel, final NetworkEventType eventType,
+            final String subprotocol) {
         final NetworkEvent networkEvent = new NetworkEvent(channelId, eventType);
         if (eventType == NetworkEventType.ACTIVE) {
-            this.channelsMap.put(channelId, new DriverChannel(channelId, channel));
+            final DriverChannel driverChannel = new DriverChannel(channelId, channel);
+            driverChannel.setCodec(this.getSubprotocolCodec(subprotocol));
+            channel.attr(DRIVER_CHANNEL).set(driverChannel);
+            if (this.configuration.isBatchEnabled()) {
+                driverChannel.setOutboundBatcher(new OutboundMessageBatcher(driverChannel, this.outboundHandler,
+                        this.configuration.getBatchMaxMessages(), this.configuration.getBatchMaxBytes(),
+                        this.configuration.getBatchMaxDelayMillis()));
+            }
+            this.channelsMap.put(channelId, driverChannel);
         } else if (eventType == NetworkEventType.INACTIVE) {
-            this.channelsMap.remove(channelId);
+            final DriverChannel driverChannel = this.channelsMap.remove(channelId);
+            if (driverChannel != null) {
+                // Se descartan los mensajes pendientes de envio
+                final ClosedChannelException cause = new ClosedChannelException();
+                if (driverChannel.getOutboundBatcher() != null) {
+                    driverChannel.getOutboundBatcher().failAll(cause);
+                }
+                driverChannel.getOutboundQueue().failAll(cause);
+            }
         }
         try {
             this.IServiceDriverCommunication.onNetworkEvent(networkEvent);
@@ -351,6 +522,56 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
         return this.channelsMap.get(channelId);
     }
 
+    /**
+     * Binds the codec of the subprotocol negotiated at handshake to an active
+     * channel, all the messages of the channel are encoded and decoded with it.
+     *
+     * @param channelId
+     *            channel identifier
+     * @param subprotocol
+     *            negotiated subprotocol or null to use the default codec
+     */
+    public void bindCodec(final String channelId, final String subprotocol) {
+        final DriverChannel driverChannel = this.channelsMap.get(channelId);
+        if (driverChannel != null) {
+            driverChannel.setCodec(this.getSubprotocolCodec(subprotocol));
+            logger.info("Channel " + channelId + " codec bound to '" + (subprotocol == null ? "default" : subprotocol)
+                    + "' subprotocol");
+        }
+    }
+
+    private IEventMessageCodec getSubprotocolCodec(final String subprotocol) {
+        if (subprotocol == null || subprotocol.isEmpty()) {
+            return this.defaultCodec;
+        }
+        final IEventMessageCodec codec = this.configuration.getSubprotocolCodec(subprotocol);
+        if (codec == null) {
+            logger.warn("Codec not found for '" + subprotocol + "' subprotocol, default codec is used");
+            return this.defaultCodec;
+        }
+        return codec;
+    }
+
+    /**
+     * Codec to decode the messages of the given protocol received by the channel:
+     * the codec bound to the channel if it works with the protocol, otherwise the
+     * codec registered for the protocol class.
+     *
+     * @param channel
+     *            channel that receives the message
+     * @param protocolClass
+     *            protocol class of the message
+     * @return codec or null if there is no codec for the protocol
+     */
+    public IEventMessageCodec getCodec(final Channel channel, final Class<?> protocolClass) {
+        final DriverChannel driverChannel = channel.attr(DRIVER_CHANNEL).get();
+        if (driverChannel != null && driverChannel.getCodec() != null
+                && driverChannel.getCodec().protocolClass() == protocolClass) {
+            return driverChannel.getCodec();
+        }
+        return this.eventMessageCodecMap.get(protocolClass);
+    }
+
     public EventLoopGroup getBossGroup() {
         return bossGroup;
     }
@@ -368,6 +589,82 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
         return configuration;
     }
 
+    /**
+     * Buffer allocator for outgoing messages, the configured one or netty default
+     * allocator.
+     *
+     * @return buffer allocator
+     */
+    public ByteBufAllocator getAllocator() {
+        final ByteBufAllocator allocator = this.configuration.getAllocator();
+        return allocator == null ? ByteBufAllocator.DEFAULT : allocator;
+    }
+
+    /**
+     * Applies the socket and allocator options defined in the network
+     * configuration to the server bootstrap. The server socket receives backlog
+     * option and accepted channels receive the rest of them.
+     *
+     * @param bootstrap
+     *            server bootstrap instance
+     * @return server bootstrap instance
+     */
+    public ServerBootstrap configureServerBootstrap(final ServerBootstrap bootstrap) {
+        if (this.configuration.getBacklog() != null) {
+            bootstrap.option(ChannelOption.SO_BACKLOG, this.configuration.getBacklog());
+        }
+        if (this.configuration.getAllocator() != null) {
+            bootstrap.option(ChannelOption.ALLOCATOR, this.configuration.getAllocator());
+            bootstrap.childOption(ChannelOption.ALLOCATOR, this.configuration.getAllocator());
+        }
+        if (this.configuration.getTcpNoDelay() != null) {
+            bootstrap.childOption(ChannelOption.TCP_NODELAY, this.configuration.getTcpNoDelay());
+        }
+        if (this.configuration.getSendBufferSize() != null) {
+            bootstrap.childOption(ChannelOption.SO_SNDBUF, this.configuration.getSendBufferSize());
+        }
+        if (this.configuration.getReceiveBufferSize() != null) {
+            bootstrap.childOption(ChannelOption.SO_RCVBUF, this.configuration.getReceiveBufferSize());
+        }
+        if (this.configuration.getRecvByteBufAllocator() != null) {
+            bootstrap.childOption(ChannelOption.RCVBUF_ALLOCATOR, this.configuration.getRecvByteBufAllocator());
+        }
+        if (this.configuration.getWriteBufferWaterMark() != null) {
+            bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, this.configuration.getWriteBufferWaterMark());
+        }
+        return bootstrap;
+    }
+
+    /**
+     * Applies the socket and allocator options defined in the network
+     * configuration to a client connection bootstrap.
+     *
+     * @param bootstrap
+     *            client bootstrap instance
+     * @return client bootstrap instance
+     */
+    public Bootstrap configureClientBootstrap(final Bootstrap bootstrap) {
+        if (this.configuration.getAllocator() != null) {
+            bootstrap.option(ChannelOption.ALLOCATOR, this.configuration.getAllocator());
+        }
+        if (this.configuration.getTcpNoDelay() != null) {
+            bootstrap.option(ChannelOption.TCP_NODELAY, this.configuration.getTcpNoDelay());
+        }
+        if (this.configuration.getSendBufferSize() != null) {
+            bootstrap.option(ChannelOption.SO_SNDBUF, this.configuration.getSendBufferSize());
+        }
+        if (this.configuration.getReceiveBufferSize() != null) {
+            bootstrap.option(ChannelOption.SO_RCVBUF, this.configuration.getReceiveBufferSize());
+        }
+        if (this.configuration.getRecvByteBufAllocator() != null) {
+            bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, this.configuration.getRecvByteBufAllocator());
+        }
+        if (this.configuration.getWriteBufferWaterMark() != null) {
+            bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, this.configuration.getWriteBufferWaterMark());
+        }
+        return bootstrap;
+    }
+
     /**
      * A method for serializing a message so that it can be sent over the network.
      *
@@ -390,6 +687,89 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
         return codec.serialize(msg);
     }
 
+    /**
+     * A method for serializing a message writing its bytes directly into a buffer.
+     *
+     * @param protocolClass
+     *            Network protocol objecto type
+     * @param msg
+     *            message to serialize
+     * @param out
+     *            buffer where the message bytes are written
+     * @throws NetworkMessageSerializationException
+     *             if codec doesn't exists or it doesn't support stream encoding
+     */
+    @SuppressWarnings("unchecked")
+    public <P> void serialize(final Class<P> protocolClass, final NetworkMessage msg, final ByteBuf out)
+            throws NetworkMessageSerializationException {
+        final IEventMessageCodec<P> codec = this.eventMessageCodecMap.get(protocolClass);
+        if (!(codec instanceof IStreamEventMessageCodec)) {
+            throw new NetworkMessageSerializationException(
+                    "Stream codec not found for '" + protocolClass.getSimpleName() + "' class");
+        }
+        ((IStreamEventMessageCodec<P>) codec).serialize(msg, out);
+    }
+
+    /**
+     * Encodes a message with a codec into the buffer to send over the network.
+     * The first time a message is sent it is encoded directly into a pooled
+     * buffer, if the same message is sent again its bytes are kept in the message
+     * and reused by the next sends while it is not modified. Batch envelopes are
+     * always encoded.
+     *
+     * @param codec
+     *            codec of the destination channel
+     * @param msg
+     *            message to encode
+     * @return buffer with the encoded message
+     * @throws NetworkMessageSerializationException
+     *             if an error ocurrs
+     */
+    public ByteBuf encode(final IEventMessageCodec codec, final NetworkMessage msg)
+            throws NetworkMessageSerializationException {
+        if (msg.isBatch()) {
+            return this.encodeMessage(codec, msg);
+        }
+        final byte[] encoded = (byte[]) msg.getEncoded(codec);
+        if (encoded != null) {
+            return Unpooled.wrappedBuffer(encoded);
+        }
+        if (!msg.isEncodedBy(codec)) {
+            // se registra el envio, los bytes se guardan si el mensaje se envia nuevamente
+            final ByteBuf content = this.encodeMessage(codec, msg);
+            msg.putEncoded(codec, null);
+            return content;
+        }
+        final byte[] bytes = this.encodeBytes(codec, msg);
+        msg.putEncoded(codec, bytes);
+        return Unpooled.wrappedBuffer(bytes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ByteBuf encodeMessage(final IEventMessageCodec codec, final NetworkMessage msg)
+            throws NetworkMessageSerializationException {
+        if (codec instanceof IStreamEventMessageCodec) {
+            // the message is encoded directly into the buffer
+            final ByteBuf content = this.getAllocator().buffer();
+            try {
+                ((IStreamEventMessageCodec) codec).serialize(msg, content);
+                return content;
+            } catch (NetworkMessageSerializationException | RuntimeException err) {
+                content.release();
+                throw err;
+            }
+        }
+        return Unpooled.wrappedBuffer(this.encodeBytes(codec, msg));
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] encodeBytes(final IEventMessageCodec codec, final NetworkMessage msg)
+            throws NetworkMessageSerializationException {
+        final Object protocolMessage = codec.serialize(msg);
+        return protocolMessage instanceof String ? ((String) protocolMessage).getBytes(CharsetUtil.UTF_8)
+                : (byte[]) protocolMessage;
+    }
+
     /**
      * A method for deserializing a message so that it can be sent to network
      * messaging service.
@@ -415,6 +795,53 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
         return codec.deserealize(protocolMessage);
     }
 
+    /**
+     * A method for deserializing a message from its raw bytes. The bytes are read
+     * as a stream so a composite buffer made of several network fragments is
+     * decoded without being copied into a contiguous buffer.
+     *
+     * @param protocolClass
+     *            Network protocol objecto type
+     * @param content
+     *            message bytes
+     * @return java object instance representation for the message
+     * @throws NetworkMessageDeserializationException
+     *             if codec doesn't exists or it doesn't support stream decoding
+     */
+    @SuppressWarnings("unchecked")
+    public <P> NetworkMessage deserealize(final Class<P> protocolClass, final ByteBuf content)
+            throws NetworkMessageDeserializationException {
+        final IEventMessageCodec<P> codec = this.eventMessageCodecMap.get(protocolClass);
+        if (!(codec instanceof IStreamEventMessageCodec)) {
+            throw new NetworkMessageDeserializationException(
+                    "Stream codec not found for '" + protocolClass.getSimpleName() + "' class");
+        }
+        return ((IStreamEventMessageCodec<P>) codec).deserealize(content);
+    }
+
+    /**
+     * Returns true if the codec registered for the protocol class can deserialize
+     * messages from raw bytes.
+     *
+     * @param protocolClass
+     *            Network protocol objecto type
+     * @return true if the codec supports stream decoding
+     */
+    public boolean isStreamCodec(final Class<?> protocolClass) {
+        return this.eventMessageCodecMap.get(protocolClass) instanceof IStreamEventMessageCodec;
+    }
+
+    /**
+     * Returns true if there is a codec registered for the protocol class.
+     *
+     * @param protocolClass
+     *            Network protocol objecto type
+     * @return true if the codec exists
+     */
+    public boolean hasCodec(final Class<?> protocolClass) {
+        return this.eventMessageCodecMap.containsKey(protocolClass);
+    }
+
     /**
      * Instance for channeling connections to other servers on the network.
      *
@@ -478,19 +905,21 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
      * @return event message quantity sended by the driver
      */
     public long countSendEvent(final String event, boolean ok) {
-        String key;
-        long value;
-        if (ok) {
-            key = STATS_COUNTER_OUTPUT_MSG_PREFIX + event;
-            value = this.messageCounter.increment(STATS_COUNTER_OUTPUT_MSG_PREFIX + event);
-        } else {
-            key = STATS_COUNTER_OUTPUT_MSG_PREFIX_ERROR + event;
-            value = this.messageCounter.increment(STATS_COUNTER_OUTPUT_MSG_PREFIX_ERROR + event);
-        }
-        if (attachedMessageCounter != null) {
-            attachedMessageCounter.setValue(key, value);
-        }
-        return value;
+        return this.count(this.counterKeys(event, this.configuration.getEventDictionary().getId(event))[ok ? 2 : 3]);
+    }
+
+    /**
+     * Method that takes statistics of messages sent over the network, using the
+     * event id resolved by the message.
+     *
+     * @param message
+     *            message sended
+     * @param ok
+     *            true sended without error
+     * @return event message quantity sended by the driver
+     */
+    public long countSendEvent(final NetworkMessage message, boolean ok) {
+        return this.count(this.counterKeys(message.getEvent(), this.eventId(message))[ok ? 2 : 3]);
     }
 
     /**
@@ -503,18 +932,105 @@ public abstract class AbstractNetworkDriver implements INetworkDriver {
      * @return event message quantity sended by the driver
      */
     public long countReceivedEvent(final String event, boolean ok) {
-        String key;
-        long value;
-        if (ok) {
-            key = STATS_COUNTER_INPUT_MSG_PREFIX + event;
-            value = this.messageCounter.increment(STATS_COUNTER_INPUT_MSG_PREFIX + event);
-        } else {
-            key = STATS_COUNTER_INPUT_MSG_PREFIX_ERROR + event;
-            value = this.messageCounter.increment(STATS_COUNTER_INPUT_MSG_PREFIX_ERROR + event);
-        }
+        return this.count(this.counterKeys(event, this.configuration.getEventDictionary().getId(event))[ok ? 0 : 1]);
+    }
+
+    /**
+     * Method that takes statistics of messages received over the network, using
+     * the event id resolved by the message.
+     *
+     * @param message
+     *            message received
+     * @param ok
+     *            true received without error
+     * @return event message quantity received by the driver
+     */
+    public long countReceivedEvent(final NetworkMessage message, boolean ok) {
+        return this.count(this.counterKeys(message.getEvent(), this.eventId(message))[ok ? 0 : 1]);
+    }
+
+    private long count(final String key) {
+        final long value = this.messageCounter.increment(key);
         if (attachedMessageCounter != null) {
             attachedMessageCounter.setValue(key, value);
         }
         return value;
     }
+
+    private int eventId(final NetworkMessage message) {
+        return message.getEventId(this.configuration.getEventDictionary());
+    }
+
+    private String[] counterKeys(final String event, final int eventId) {
+        String[] keys = this.counterKeys.get(eventId);
+        if (keys == null) {
+            keys = new String[] { STATS_COUNTER_INPUT_MSG_PREFIX + event, STATS_COUNTER_INPUT_MSG_PREFIX_ERROR + event,
+                    STATS_COUNTER_OUTPUT_MSG_PREFIX + event, STATS_COUNTER_OUTPUT_MSG_PREFIX_ERROR + event };
+            // solo se guardan las llaves de los eventos registrados, los eventos
+            // recibidos de la red no deben hacer crecer la tabla
+            if (eventId != NetworkEventDictionary.UNKNOWN_EVENT) {
+                this.counterKeys.putIfAbsent(event, keys);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Frame received by the thread, it is valid only while its message is being
+     * delivered. A retained message keeps a detached frame with a retained slice
+     * of the content, it is released when the message is released or recycled.
+     */
+    private static final class ReceivedFrame implements INetworkMessageFrame {
+
+        private ByteBuf content;
+
+        private IEventMessageCodec codec;
+
+        private final boolean detached;
+
+        private ReceivedFrame(final boolean detached) {
+            this.detached = detached;
+        }
+
+        private void set(final ByteBuf content, final IEventMessageCodec codec) {
+            this.content = content;
+            this.codec = codec;
+        }
+
+        private void clear() {
+            this.content = null;
+            this.codec = null;
+        }
+
+        @Override
+        public INetworkMessageFrame detach() {
+            if (this.detached || this.content == null) {
+                return this.detached ? this : null;
+            }
+            final ReceivedFrame frame = new ReceivedFrame(true);
+            frame.set(this.content.retainedSlice(), this.codec);
+            return frame;
+        }
+
+        @Override
+        public void release() {
+            final ByteBuf content = this.content;
+            if (this.detached && content != null) {
+                this.content = null;
+                content.release();
+            }
+        }
+
+        /**
+         * Returns the frame content if the target codec reads the messages of the
+         * codec that decoded it.
+         */
+        @SuppressWarnings("unchecked")
+        private ByteBuf getContent(final IEventMessageCodec targetCodec) {
+            if (this.content == null || !this.codec.isCompatible(targetCodec)) {
+                return null;
+            }
+            return this.content;
+        }
+    }
 }
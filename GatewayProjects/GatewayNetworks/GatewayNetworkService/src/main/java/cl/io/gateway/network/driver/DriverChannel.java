@@ -36,9 +36,17 @@ public class DriverChannel {
 
     private AtomicLong channelMessageSequence = new AtomicLong(0);
 
+    private final PriorityOutboundQueue outboundQueue;
+
+    private volatile OutboundMessageBatcher outboundBatcher;
+
+    @SuppressWarnings("rawtypes")
+    private volatile IEventMessageCodec codec;
+
     public DriverChannel(final String channelId, final Channel channel) {
         this.channelId = channelId;
         this.channel = channel;
+        this.outboundQueue = new PriorityOutboundQueue(channel);
     }
 
     public int addAndGetReconnectCounter() {
@@ -65,12 +73,43 @@ public class DriverChannel {
         return channelId;
     }
 
+    public PriorityOutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    /**
+     * @return batcher for outgoing messages or null if batch envelopes are not
+     *         enabled
+     */
+    public OutboundMessageBatcher getOutboundBatcher() {
+        return outboundBatcher;
+    }
+
+    public void setOutboundBatcher(OutboundMessageBatcher outboundBatcher) {
+        this.outboundBatcher = outboundBatcher;
+    }
+
+    /**
+     * @return codec bound to the channel at handshake, used to encode and decode
+     *         all its messages
+     */
+    @SuppressWarnings("rawtypes")
+    public IEventMessageCodec getCodec() {
+        return codec;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public void setCodec(IEventMessageCodec codec) {
+        this.codec = codec;
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("DriverChannel{");
         sb.append("channel=").append(channel);
         sb.append(", channelId='").append(channelId).append('\'');
         sb.append(", reconnectCounter=").append(reconnectCounter);
+        sb.append(", codec=").append(codec);
         sb.append('}');
         return sb.toString();
     }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.driver;
+
+import java.util.List;
+
+import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Codec that is able to pack messages already encoded by itself in a batch
+ * envelope, so the outbound batcher encodes every message when it is sent and
+ * only joins the encoded bytes when the batch is flushed. The envelope is
+ * decoded as a batch created by {@link cl.io.gateway.network.NetworkMessage#createBatch(List)}.
+ *
+ * @author egacl
+ * @param <P>
+ *            Network protocol type.
+ */
+public interface IBatchEventMessageCodec<P extends Object> extends IEventMessageCodec<P> {
+
+    /**
+     * Writes a batch envelope with the messages encoded by this codec. The message
+     * buffers are neither read nor released by this method.
+     *
+     * @param messages
+     *            bytes of every message in send order
+     * @param out
+     *            buffer where the envelope bytes are written
+     * @throws NetworkMessageSerializationException
+     */
+    void serializeBatch(List<ByteBuf> messages, ByteBuf out) throws NetworkMessageSerializationException;
+}
@@ -17,6 +17,8 @@ package cl.io.gateway.network.driver;
 
 import cl.io.gateway.network.IDeliveryStatusListener;
 import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+import io.netty.buffer.ByteBuf;
 
 /**
  * Interface that allows you to create an instance for the processing of
@@ -35,7 +37,48 @@ public interface IDriverChannelOutboundHandler<T, P> {
 
     void write(final NetworkMessage msg, DriverChannel channel, IDeliveryStatusListener deliveryStatus) throws Exception;
 
-    T messageToSend(NetworkMessage msg);
+    /**
+     * Encodes the message with the codec bound to the channel.
+     *
+     * @param msg
+     *            message to send
+     * @param channel
+     *            destination channel
+     * @return object to write in the network channel
+     * @throws NetworkMessageSerializationException
+     *             if the message can't be encoded
+     */
+    T messageToSend(NetworkMessage msg, DriverChannel channel) throws NetworkMessageSerializationException;
+
+    /**
+     * Sends the content of a received frame, already encoded with the codec of
+     * the destination channel, without encoding the message again.
+     *
+     * @param content
+     *            received frame content, it is retained while it is written
+     * @param msg
+     *            message decoded from the frame
+     * @param channel
+     *            destination channel
+     * @param deliveryStatus
+     *            delivery status listener or null
+     * @throws Exception
+     *             if the frame can't be written
+     */
+    void forward(ByteBuf content, NetworkMessage msg, DriverChannel channel, IDeliveryStatusListener deliveryStatus)
+            throws Exception;
+
+    /**
+     * Wraps the content of a received frame into an object to write in the
+     * network channel.
+     *
+     * @param content
+     *            frame content encoded with the codec bound to the channel
+     * @param channel
+     *            destination channel
+     * @return object to write in the network channel
+     */
+    T frameToSend(ByteBuf content, DriverChannel channel);
 
     AbstractNetworkDriver getDriver();
 
@@ -54,4 +54,29 @@ public interface IEventMessageCodec<P extends Object> {
     NetworkMessage deserealize(P protocolMessage) throws NetworkMessageDeserializationException;
 
     Class<P> protocolClass();
+
+    /**
+     * Returns true if the messages encoded by this codec can be decoded by the
+     * given codec, network drivers relay the received bytes between channels of
+     * compatible codecs without encoding the messages again.
+     *
+     * @param codec
+     *            codec of another channel
+     * @return true if the codec reads the messages written by this codec
+     */
+    default boolean isCompatible(IEventMessageCodec codec) {
+        return codec != null && codec.getClass() == this.getClass();
+    }
+
+    /**
+     * Returns the version of the state that both sides of a link must share to
+     * read the messages of this codec (as the registered message types), it is
+     * appended to the subprotocol names of the codec so links only negotiate the
+     * codec if both sides have the same version.
+     *
+     * @return version or null if the messages don't depend on shared state
+     */
+    default String getSubprotocolVersion() {
+        return null;
+    }
 }
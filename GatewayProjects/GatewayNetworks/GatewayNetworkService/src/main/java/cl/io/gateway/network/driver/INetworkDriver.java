@@ -60,6 +60,39 @@ public interface INetworkDriver {
      */
     void send(String channelId, NetworkMessage message, IDeliveryStatusListener deliveryStatus) throws NetworkDriverException;
 
+    /**
+     * Relays a received message to a specific channel. If the message was not
+     * modified since it was received and the channel works with the codec of the
+     * origin channel, the bytes of the received frame are sent without encoding
+     * the message again, otherwise the message is sent as {@link #send} does.
+     *
+     * @param channelId
+     *            channel
+     * @param message
+     *            received message to relay
+     * @throws NetworkDriverException
+     *             if any error occurs
+     */
+    void forward(String channelId, NetworkMessage message) throws NetworkDriverException;
+
+    /**
+     * Relays a received message to a specific channel, see
+     * {@link #forward(String, NetworkMessage)}. The IDeliveryStatus instance acts
+     * as a callback for the driver to communicate when the message was actually
+     * sent over the network.
+     *
+     * @param channelId
+     *            channel
+     * @param message
+     *            received message to relay
+     * @param deliveryStatus
+     *            DeliveryStatus instance
+     * @throws NetworkDriverException
+     *             if any error occurs
+     */
+    void forward(String channelId, NetworkMessage message, IDeliveryStatusListener deliveryStatus)
+            throws NetworkDriverException;
+
     /**
      * It allows to distribute the message to all the channels registered in the
      * network.
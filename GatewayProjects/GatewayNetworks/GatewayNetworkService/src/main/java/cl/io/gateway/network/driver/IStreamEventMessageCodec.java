@@ -0,0 +1,58 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.driver;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
+import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Codec that is able to serialize and deserialize a message writing and reading
+ * its bytes as a stream. Network drivers use it to encode messages directly
+ * into network buffers and to decode messages received in several fragments
+ * without copying the fragments into one contiguous buffer.
+ *
+ * @author egacl
+ * @param <P>
+ *            Network protocol type.
+ */
+@SuppressWarnings("rawtypes")
+public interface IStreamEventMessageCodec<P extends Object> extends IEventMessageCodec<P> {
+
+    /**
+     * Allows you to transform the bytes of a network message (possibly a composite
+     * buffer made of several fragments) to an object type that can be processed by
+     * java applications. The buffer is not released by this method.
+     *
+     * @param content
+     *            message bytes
+     * @return object to process by java applications
+     * @throws NetworkMessageDeserializationException
+     */
+    NetworkMessage deserealize(ByteBuf content) throws NetworkMessageDeserializationException;
+
+    /**
+     * Allows you to write the bytes of a network message into a buffer.
+     *
+     * @param message
+     *            java object message
+     * @param out
+     *            buffer where the message bytes are written
+     * @throws NetworkMessageSerializationException
+     */
+    void serialize(NetworkMessage message, ByteBuf out) throws NetworkMessageSerializationException;
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.driver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessagePriority;
+import cl.io.gateway.network.driver.exception.NetworkMessageSerializationException;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.concurrent.GenericFutureListener;
+
+/**
+ * Packs the outgoing messages of a channel in batch envelopes, one batch by
+ * priority. Messages are encoded when they are added, so they can be modified
+ * or recycled as soon as they are sent, and the envelope only joins the
+ * encoded bytes. A batch is sent through the channel outbound queue when it
+ * reaches the configured max messages or max bytes, or when its first message
+ * waited the configured max delay. The promise of every packed message is
+ * notified with the result of the envelope write.
+ *
+ * Only channels bound to an {@link IBatchEventMessageCodec} pack their
+ * messages, see {@link #isBatchable(DriverChannel)}.
+ *
+ * @author egacl
+ */
+@SuppressWarnings("rawtypes")
+public class OutboundMessageBatcher {
+
+    private final DriverChannel channel;
+
+    private final IDriverChannelOutboundHandler outboundHandler;
+
+    private final int maxMessages;
+
+    /**
+     * max encoded bytes of a batch, 0 without limit
+     */
+    private final int maxBytes;
+
+    private final long maxDelayMillis;
+
+    /**
+     * Batches indexed by priority ordinal
+     */
+    private final Batch[] batches;
+
+    public OutboundMessageBatcher(final DriverChannel channel, final IDriverChannelOutboundHandler outboundHandler,
+            final int maxMessages, final long maxDelayMillis) {
+        this(channel, outboundHandler, maxMessages, 0, maxDelayMillis);
+    }
+
+    public OutboundMessageBatcher(final DriverChannel channel, final IDriverChannelOutboundHandler outboundHandler,
+            final int maxMessages, final int maxBytes, final long maxDelayMillis) {
+        this.channel = channel;
+        this.outboundHandler = outboundHandler;
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.maxDelayMillis = maxDelayMillis;
+        this.batches = new Batch[NetworkMessagePriority.values().length];
+        for (NetworkMessagePriority priority : NetworkMessagePriority.values()) {
+            this.batches[priority.ordinal()] = new Batch(priority);
+        }
+    }
+
+    /**
+     * @param channel
+     *            destination channel
+     * @return true if the codec bound to the channel writes batch envelopes
+     */
+    public static boolean isBatchable(final DriverChannel channel) {
+        return channel.getCodec() instanceof IBatchEventMessageCodec;
+    }
+
+    /**
+     * Encodes a message and adds it to the batch of its priority. If the message
+     * can't be encoded the promise fails with the error.
+     *
+     * @param msg
+     *            message to send
+     * @param priority
+     *            message priority
+     * @param promise
+     *            promise notified when the batch is written
+     * @throws NetworkMessageSerializationException
+     *             if the message can't be encoded
+     */
+    public void add(final NetworkMessage msg, final NetworkMessagePriority priority, final ChannelPromise promise)
+            throws NetworkMessageSerializationException {
+        final IBatchEventMessageCodec codec = (IBatchEventMessageCodec) this.channel.getCodec();
+        final ByteBuf encoded;
+        try {
+            encoded = this.outboundHandler.getDriver().encode(codec, msg);
+        } catch (NetworkMessageSerializationException | RuntimeException err) {
+            promise.tryFailure(err);
+            throw err;
+        }
+        this.batches[priority.ordinal()].add(codec, encoded, promise);
+    }
+
+    /**
+     * Discards every message waiting in a batch notifying the error to its promise.
+     *
+     * @param cause
+     *            error cause
+     */
+    public void failAll(final Throwable cause) {
+        for (Batch batch : this.batches) {
+            final Pending pending = batch.take();
+            release(pending.messages);
+            for (ChannelPromise promise : pending.promises) {
+                promise.tryFailure(cause);
+            }
+        }
+    }
+
+    private void send(final Pending pending, final NetworkMessagePriority priority) {
+        if (pending.messages.isEmpty()) {
+            return;
+        }
+        try {
+            this.write(pending, priority);
+        } catch (NetworkMessageSerializationException | RuntimeException err) {
+            // nothing was written, the messages of the batch fail with the error
+            for (ChannelPromise promise : pending.promises) {
+                promise.tryFailure(err);
+            }
+        } finally {
+            release(pending.messages);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write(final Pending pending, final NetworkMessagePriority priority)
+            throws NetworkMessageSerializationException {
+        if (pending.messages.size() == 1) {
+            // a single message is sent without envelope
+            this.channel.getOutboundQueue().write(
+                    this.outboundHandler.frameToSend(pending.messages.get(0).retain(), this.channel), priority,
+                    pending.promises.get(0));
+            return;
+        }
+        final ByteBuf content = this.channel.getChannel().alloc().buffer(pending.bytes + pending.messages.size() + 2);
+        try {
+            pending.codec.serializeBatch(pending.messages, content);
+        } catch (NetworkMessageSerializationException | RuntimeException err) {
+            content.release();
+            throw err;
+        }
+        final ChannelPromise batchPromise = this.channel.getChannel().newPromise();
+        batchPromise.addListener(new GenericFutureListener<ChannelFuture>() {
+
+            @Override
+            public void operationComplete(final ChannelFuture future) throws Exception {
+                for (ChannelPromise promise : pending.promises) {
+                    if (future.isSuccess()) {
+                        promise.trySuccess();
+                    } else {
+                        promise.tryFailure(future.cause());
+                    }
+                }
+            }
+        });
+        this.channel.getOutboundQueue().write(this.outboundHandler.frameToSend(content, this.channel), priority,
+                batchPromise);
+    }
+
+    private static void release(final List<ByteBuf> messages) {
+        for (ByteBuf msg : messages) {
+            msg.release();
+        }
+    }
+
+    /**
+     * Encoded messages taken from a batch to be sent together
+     */
+    private static final class Pending {
+
+        private final IBatchEventMessageCodec codec;
+
+        private final List<ByteBuf> messages;
+
+        private final List<ChannelPromise> promises;
+
+        private final int bytes;
+
+        private Pending(final IBatchEventMessageCodec codec, final List<ByteBuf> messages,
+                final List<ChannelPromise> promises, final int bytes) {
+            this.codec = codec;
+            this.messages = messages;
+            this.promises = promises;
+            this.bytes = bytes;
+        }
+    }
+
+    private final class Batch implements Runnable {
+
+        private final NetworkMessagePriority priority;
+
+        /**
+         * codec that encoded the messages of the batch
+         */
+        private IBatchEventMessageCodec codec;
+
+        private List<ByteBuf> messages;
+
+        private List<ChannelPromise> promises;
+
+        private int bytes;
+
+        private boolean flushScheduled = false;
+
+        private Batch(final NetworkMessagePriority priority) {
+            this.priority = priority;
+            this.messages = new ArrayList<>(maxMessages);
+            this.promises = new ArrayList<>(maxMessages);
+        }
+
+        // batches are sent holding the lock so they reach the outbound queue in order
+        private synchronized void add(final IBatchEventMessageCodec codec, final ByteBuf encoded,
+                final ChannelPromise promise) {
+            if (this.codec != codec && !this.messages.isEmpty()) {
+                // the channel codec changed, messages of an envelope share its codec
+                send(this.take(), this.priority);
+            }
+            this.codec = codec;
+            this.messages.add(encoded);
+            this.promises.add(promise);
+            this.bytes += encoded.readableBytes();
+            if (this.messages.size() >= maxMessages || (maxBytes > 0 && this.bytes >= maxBytes)) {
+                send(this.take(), this.priority);
+            } else if (!this.flushScheduled) {
+                this.flushScheduled = true;
+                channel.getChannel().eventLoop().schedule(this, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private synchronized Pending take() {
+            final Pending pending = new Pending(this.codec, this.messages, this.promises, this.bytes);
+            this.messages = new ArrayList<>(maxMessages);
+            this.promises = new ArrayList<>(maxMessages);
+            this.bytes = 0;
+            return pending;
+        }
+
+        @Override
+        public synchronized void run() {
+            this.flushScheduled = false;
+            send(this.take(), this.priority);
+        }
+    }
+}
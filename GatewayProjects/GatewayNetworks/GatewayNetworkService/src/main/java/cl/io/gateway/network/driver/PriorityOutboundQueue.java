@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.driver;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import cl.io.gateway.network.NetworkMessagePriority;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Outbound messages of a channel, separated in one lane by priority. Lanes are
+ * always drained in the channel event loop, from the highest priority to the
+ * lowest one and while the channel is writable, so control messages don't wait
+ * behind bulk data already accepted by the channel. When the channel becomes
+ * writable again the pending messages are drained by
+ * {@link AbstractDriverChannelInboundHandler#channelWritabilityChanged}.
+ *
+ * @author egacl
+ */
+public class PriorityOutboundQueue {
+
+    private final Channel channel;
+
+    /**
+     * Lanes indexed by priority ordinal
+     */
+    private final Queue<PendingWrite>[] lanes;
+
+    /**
+     * Avoids scheduling more than one drain task at a time
+     */
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    private final Runnable drainTask = new Runnable() {
+
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    public PriorityOutboundQueue(final Channel channel) {
+        this.channel = channel;
+        this.lanes = new Queue[NetworkMessagePriority.values().length];
+        for (int i = 0; i < this.lanes.length; i++) {
+            this.lanes[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Adds a message to its priority lane and drains the lanes. It can be invoked
+     * from any thread.
+     *
+     * @param msg
+     *            message to write on the channel
+     * @param priority
+     *            message priority
+     * @param promise
+     *            promise notified when the message is written
+     */
+    public void write(final Object msg, final NetworkMessagePriority priority, final ChannelPromise promise) {
+        this.lanes[priority.ordinal()].offer(new PendingWrite(msg, promise));
+        if (this.channel.eventLoop().inEventLoop()) {
+            this.drain();
+        } else if (this.drainScheduled.compareAndSet(false, true)) {
+            this.channel.eventLoop().execute(this.drainTask);
+        }
+    }
+
+    /**
+     * Writes pending messages while the channel is writable. If the channel is
+     * closed pending messages are failed. Must be invoked from the channel event
+     * loop.
+     */
+    public void drain() {
+        this.drainScheduled.set(false);
+        if (!this.channel.isOpen()) {
+            this.failAll(new ClosedChannelException());
+            return;
+        }
+        boolean written = false;
+        PendingWrite pending;
+        while (this.channel.isWritable() && (pending = this.poll()) != null) {
+            this.channel.write(pending.msg, pending.promise);
+            written = true;
+        }
+        if (written) {
+            this.channel.flush();
+        }
+    }
+
+    /**
+     * Discards every pending message notifying the error to its promise.
+     *
+     * @param cause
+     *            error cause
+     */
+    public void failAll(final Throwable cause) {
+        PendingWrite pending;
+        while ((pending = this.poll()) != null) {
+            ReferenceCountUtil.release(pending.msg);
+            pending.promise.tryFailure(cause);
+        }
+    }
+
+    private PendingWrite poll() {
+        for (final Queue<PendingWrite> lane : this.lanes) {
+            final PendingWrite pending = lane.poll();
+            if (pending != null) {
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    private static final class PendingWrite {
+
+        private final Object msg;
+
+        private final ChannelPromise promise;
+
+        private PendingWrite(final Object msg, final ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+}
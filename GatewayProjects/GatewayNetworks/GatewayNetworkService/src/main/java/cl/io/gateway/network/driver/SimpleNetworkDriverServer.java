@@ -54,6 +54,8 @@ public class SimpleNetworkDriverServer implements INetworkDriverServer {
                 .channel(NioServerSocketChannel.class).handler(new LoggingHandler(LogLevel.INFO))
                 // Call network driver implementation initializer
                 .childHandler(initializer);
+        // Socket and allocator tuning
+        networkDriver.configureServerBootstrap(this.bootstrap);
     }
 
     @Override
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.handler;
+
+import java.util.Collections;
+import java.util.List;
+
+import cl.io.gateway.network.NetworkMessage;
+
+/**
+ * Message handler that receives together the messages of its event read from a
+ * channel in one network read operation, so it can amortize per call costs
+ * (database writes, queue publishing, etc.) over several messages. It is
+ * registered as any other message handler.
+ *
+ * Messages of the list belong to the same channel and keep their arrival order.
+ *
+ * @author egacl
+ * @param <T>
+ *            Internal network message object type.
+ */
+public interface INetworkBatchMessageHandler<T> extends INetworkMessageHandler<T> {
+
+    /**
+     * This method is called with the messages received by a channel in one network
+     * read.
+     *
+     * @param messages
+     *            Network messages.
+     */
+    void onMessages(List<NetworkMessage<T>> messages) throws Exception;
+
+    @Override
+    default void onMessage(NetworkMessage<T> message) throws Exception {
+        this.onMessages(Collections.singletonList(message));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+public class PendingRequestTableTest {
+
+    private final PendingRequestTable table = new PendingRequestTable();
+
+    @Test
+    public void requestWithoutResponseTimesOut() throws Exception {
+        final NetworkMessage<String> request = new NetworkMessage<>("ping", "hello");
+        final CompletableFuture<NetworkMessage<String>> future = this.table.register("channel-1", request, 50,
+                TimeUnit.MILLISECONDS);
+        assertTrue(request.isRequest());
+        assertTimeout(future);
+        // a late response is not accepted
+        assertFalse(this.table.complete(response(request, "channel-1")));
+    }
+
+    @Test
+    public void requestWithoutTimeIsExpired() throws Exception {
+        final NetworkMessage<String> request = new NetworkMessage<>("ping", "hello");
+        assertTimeout(this.table.register("channel-1", request, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void responseCompletesRequestAndCancelsTimeout() throws Exception {
+        final NetworkMessage<String> request = new NetworkMessage<>("ping", "hello");
+        final CompletableFuture<NetworkMessage<String>> future = this.table.register("channel-1", request, 100,
+                TimeUnit.MILLISECONDS);
+        final NetworkMessage<String> response = response(request, "channel-1");
+        assertTrue(this.table.complete(response));
+        assertSame(response, future.get(1, TimeUnit.SECONDS));
+        // the cancelled timeout doesn't fail the completed request
+        Thread.sleep(200);
+        assertFalse(future.isCompletedExceptionally());
+        assertFalse(this.table.complete(response));
+    }
+
+    @Test
+    public void responseOfAnotherChannelIsIgnored() throws Exception {
+        final NetworkMessage<String> request = new NetworkMessage<>("ping", "hello");
+        final CompletableFuture<NetworkMessage<String>> future = this.table.register("channel-1", request, 100,
+                TimeUnit.MILLISECONDS);
+        assertFalse(this.table.complete(response(request, "channel-2")));
+        assertTimeout(future);
+    }
+
+    @Test
+    public void closedChannelFailsItsRequests() throws Exception {
+        final NetworkMessage<String> request1 = new NetworkMessage<>("ping", "1");
+        final NetworkMessage<String> request2 = new NetworkMessage<>("ping", "2");
+        final CompletableFuture<NetworkMessage<String>> future1 = this.table.register("channel-1", request1, 10,
+                TimeUnit.SECONDS);
+        final CompletableFuture<NetworkMessage<String>> future2 = this.table.register("channel-2", request2, 10,
+                TimeUnit.SECONDS);
+        assertTrue(request1.getCorrelationId() != request2.getCorrelationId().longValue());
+        final IOException cause = new IOException("closed");
+        this.table.failChannel("channel-1", cause);
+        try {
+            future1.get(1, TimeUnit.SECONDS);
+            fail("Request of the closed channel completed");
+        } catch (ExecutionException e) {
+            assertSame(cause, e.getCause());
+        }
+        assertFalse(future2.isDone());
+        assertTrue(this.table.complete(response(request2, "channel-2")));
+        assertEquals("2", future2.get(1, TimeUnit.SECONDS).getMessage());
+    }
+
+    private static NetworkMessage<String> response(final NetworkMessage<String> request, final String channelId) {
+        final NetworkMessage<String> response = request.createResponse(request.getMessage());
+        response.setChannelId(channelId);
+        return response;
+    }
+
+    private static void assertTimeout(final CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(2, TimeUnit.SECONDS);
+            fail("Request completed without response");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+}
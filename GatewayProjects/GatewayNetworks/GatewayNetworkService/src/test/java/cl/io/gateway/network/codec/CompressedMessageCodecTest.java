@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import org.junit.Test;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
+
+public class CompressedMessageCodecTest {
+
+    private static final String DICTIONARY = "{\"event\":\"quote\",\"message\":\"{currency: , value: }\"}";
+
+    @Test
+    public void smallMessageIsNotCompressed() throws Exception {
+        final CompressedMessageCodec codec = new CompressedMessageCodec(new GSonMessageCodec(), 1024);
+        final byte[] encoded = codec.serialize(new NetworkMessage<>("small", "value"));
+        assertEquals(CompressedMessageCodec.UNCOMPRESSED, encoded[0]);
+        assertEquals("value", codec.deserealize(encoded).getMessage());
+    }
+
+    @Test
+    public void bigMessageIsCompressed() throws Exception {
+        final CompressedMessageCodec codec = new CompressedMessageCodec(new GSonMessageCodec(), 1024);
+        final String value = repeat("compressible payload ", 1000);
+        final byte[] encoded = codec.serialize(new NetworkMessage<>("big", value));
+        assertEquals(CompressedMessageCodec.DEFLATE, encoded[0]);
+        assertTrue(encoded.length < value.length() / 10);
+        assertEquals(value, codec.deserealize(encoded).getMessage());
+    }
+
+    @Test
+    public void inflatedSizeIsLimited() throws Exception {
+        final String value = repeat("a", 64 * 1024);
+        final byte[] encoded = new CompressedMessageCodec(new GSonMessageCodec(), 0)
+                .serialize(new NetworkMessage<>("bomb", value));
+        final CompressedMessageCodec limited = new CompressedMessageCodec(new GSonMessageCodec(), 0,
+                Deflater.DEFAULT_COMPRESSION, 16 * 1024);
+        assertFails(limited, encoded, "exceeds 16384 bytes");
+        // the limit doesn't reject the messages that fit in it
+        final CompressedMessageCodec exact = new CompressedMessageCodec(new GSonMessageCodec(), 0,
+                Deflater.DEFAULT_COMPRESSION, value.length() + 64);
+        assertEquals(value, exact.deserealize(encoded).getMessage());
+    }
+
+    @Test
+    public void invalidMessagesFail() throws Exception {
+        final CompressedMessageCodec codec = new CompressedMessageCodec(new GSonMessageCodec(), 0);
+        final byte[] encoded = codec.serialize(new NetworkMessage<>("event", repeat("value ", 100)));
+        assertEquals(CompressedMessageCodec.DEFLATE, encoded[0]);
+        assertFails(codec, Arrays.copyOf(encoded, encoded.length / 2), "Truncated compressed message");
+        final byte[] corrupted = encoded.clone();
+        corrupted[1] ^= 0xFF;
+        assertFails(codec, corrupted, "Invalid compressed message");
+        assertFails(codec, new byte[] { 9, '{', '}' }, "Unknown compression flag 9");
+        assertFails(codec, new byte[0], "Empty compressed message");
+    }
+
+    @Test
+    public void dictionaryCompressesSmallMessages() throws Exception {
+        final CompressedMessageCodec codec = dictionaryCodec(DICTIONARY);
+        final CompressedMessageCodec writer = codec.forDictionary(3, 0);
+        final NetworkMessage<String> message = new NetworkMessage<>("quote", "{currency: CLP, value: 812}");
+        final byte[] encoded = writer.serialize(message);
+        assertEquals(CompressedMessageCodec.DEFLATE_DICTIONARY, encoded[0]);
+        assertEquals(3, encoded[1]);
+        assertTrue(encoded.length < new CompressedMessageCodec(new GSonMessageCodec(), 0).serialize(message).length);
+        // the codec that doesn't write with the dictionary still reads its messages
+        assertEquals(message.getMessage(), codec.deserealize(encoded).getMessage());
+        assertEquals(message.getMessage(), writer.deserealize(encoded).getMessage());
+    }
+
+    @Test
+    public void dictionaryChecksumMismatchFails() throws Exception {
+        final byte[] encoded = dictionaryCodec(DICTIONARY).forDictionary(3, 0)
+                .serialize(new NetworkMessage<>("quote", "{currency: CLP, value: 812}"));
+        // same version with another content
+        assertFails(dictionaryCodec("\"event\":\"trade\",\"message\":"), encoded,
+                "Compression dictionary 3 doesn't match");
+    }
+
+    @Test
+    public void unknownDictionaryFails() throws Exception {
+        final byte[] encoded = dictionaryCodec(DICTIONARY).forDictionary(3, 0)
+                .serialize(new NetworkMessage<>("quote", "{currency: CLP, value: 812}"));
+        assertFails(new CompressedMessageCodec(new GSonMessageCodec(), 0), encoded,
+                "Unknown compression dictionary 3");
+        // a deflate stream that references a dictionary without the dictionary flag
+        encoded[1] = CompressedMessageCodec.DEFLATE;
+        assertFails(new CompressedMessageCodec(new GSonMessageCodec(), 0),
+                Arrays.copyOfRange(encoded, 1, encoded.length), "Compression dictionary missing");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void writingWithUnknownDictionaryFails() {
+        dictionaryCodec(DICTIONARY).forDictionary(4);
+    }
+
+    private static CompressedMessageCodec dictionaryCodec(final String content) {
+        return new CompressedMessageCodec(new GSonMessageCodec(), 0)
+                .withDictionary(new CompressionDictionary(3, content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static String repeat(final String value, final int times) {
+        final StringBuilder builder = new StringBuilder(value.length() * times);
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    static void assertFails(final CompressedMessageCodec codec, final byte[] encoded, final String error) {
+        try {
+            codec.deserealize(encoded);
+            fail("Message decoded, expected: " + error);
+        } catch (NetworkMessageDeserializationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(error));
+        }
+    }
+}
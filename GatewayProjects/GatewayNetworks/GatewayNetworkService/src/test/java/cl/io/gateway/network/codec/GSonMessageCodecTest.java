@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.network.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cl.io.gateway.network.NetworkMessage;
+import cl.io.gateway.network.NetworkMessageTypeRegistry;
+import cl.io.gateway.network.driver.exception.NetworkMessageDeserializationException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class GSonMessageCodecTest {
+
+    private final GSonMessageCodec codec = new GSonMessageCodec();
+
+    @Before
+    public void setUp() {
+        final NetworkMessageTypeRegistry registry = new NetworkMessageTypeRegistry();
+        registry.register("quote", Quote.class);
+        this.codec.setMessageTypeRegistry(registry);
+    }
+
+    @Test
+    public void stringRoundTripDecodesRegisteredType() throws Exception {
+        final NetworkMessage<Quote> message = new NetworkMessage<>("quote", new Quote("CLP", 812.5));
+        message.setCorrelationId(7L);
+        message.setSource("origin");
+        final NetworkMessage decoded = this.codec.deserealize(this.codec.serialize(message));
+        assertEquals("quote", decoded.getEvent());
+        assertEquals(Long.valueOf(7), decoded.getCorrelationId());
+        assertEquals("origin", decoded.getSource());
+        assertEquals(new Quote("CLP", 812.5), decoded.getMessage());
+    }
+
+    @Test
+    public void bufferRoundTripKeepsMultibyteCharacters() throws Exception {
+        final String text = "año € 😀 \"quoted\" \\ end";
+        final NetworkMessage<Quote> message = new NetworkMessage<>("quote", new Quote(text, 1));
+        final ByteBuf out = Unpooled.buffer(8);
+        try {
+            this.codec.serialize(message, out);
+            assertEquals(this.codec.serialize(message), out.toString(StandardCharsets.UTF_8));
+            final NetworkMessage decoded = this.codec.deserealize(out);
+            assertEquals(text, ((Quote) decoded.getMessage()).currency);
+        } finally {
+            out.release();
+        }
+    }
+
+    @Test
+    public void unregisteredEventIsDecodedAsTree() throws Exception {
+        final NetworkMessage decoded = this.codec.deserealize("{\"event\":\"other\",\"message\":{\"value\":2}}");
+        assertEquals("other", decoded.getEvent());
+        assertEquals(2.0, ((Map) decoded.getMessage()).get("value"));
+    }
+
+    @Test
+    public void batchEnvelopeRoundTrip() throws Exception {
+        final ByteBuf first = Unpooled.buffer();
+        final ByteBuf second = Unpooled.buffer();
+        final ByteBuf envelope = Unpooled.buffer();
+        try {
+            this.codec.serialize(new NetworkMessage<>("quote", new Quote("USD", 1)), first);
+            this.codec.serialize(new NetworkMessage<>("quote", new Quote("EUR", 0.9)), second);
+            this.codec.serializeBatch(Arrays.asList(first, second), envelope);
+            final NetworkMessage decoded = this.codec.deserealize(envelope);
+            assertTrue(decoded.isBatch());
+            final List<NetworkMessage> messages = (List<NetworkMessage>) decoded.getMessage();
+            assertEquals(2, messages.size());
+            assertEquals(new Quote("USD", 1), messages.get(0).getMessage());
+            assertEquals(new Quote("EUR", 0.9), messages.get(1).getMessage());
+        } finally {
+            first.release();
+            second.release();
+            envelope.release();
+        }
+    }
+
+    @Test(expected = NetworkMessageDeserializationException.class)
+    public void malformedJsonFails() throws Exception {
+        this.codec.deserealize("{\"event\":\"quote\",\"message\":{\"currency\":");
+    }
+
+    @Test(expected = NetworkMessageDeserializationException.class)
+    public void batchEventOutsideEnvelopeFails() throws Exception {
+        this.codec.deserealize("{\"event\":\"" + NetworkMessage.BATCH_EVENT + "\"}");
+    }
+
+    @Test(expected = NetworkMessageDeserializationException.class)
+    public void emptyBufferFails() throws Exception {
+        this.codec.deserealize(Unpooled.EMPTY_BUFFER);
+    }
+
+    static final class Quote {
+
+        String currency;
+
+        double value;
+
+        Quote(final String currency, final double value) {
+            this.currency = currency;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof Quote && ((Quote) obj).currency.equals(this.currency)
+                    && ((Quote) obj).value == this.value;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.currency.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return this.currency + "=" + this.value;
+        }
+    }
+}
@@ -16,6 +16,8 @@
 package cl.io.gateway;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import cl.io.gateway.exception.GatewayProcessException;
 import cl.io.gateway.messaging.IGatewayMessageHandler;
@@ -36,11 +38,59 @@ public interface IGateway {
 
     <T> void addMessageHandler(String event, IGatewayMessageHandler<T> handler) throws GatewayProcessException;
 
+    /**
+     * Adds a message handler whose messages are decoded directly into the given
+     * type.
+     *
+     * @param event
+     *            event identifier
+     * @param messageType
+     *            object type contained in the network message
+     * @param handler
+     *            message handler
+     * @throws GatewayProcessException
+     *             if the event is already associated with another handler
+     */
+    <T> void addMessageHandler(String event, Class<T> messageType, IGatewayMessageHandler<T> handler)
+            throws GatewayProcessException;
+
     void removeMessageHandler(String event) throws GatewayProcessException;
 
     <T> void sendMessage(IGatewayClientSession client, NetworkMessage<T> message, NetworkServiceSource... origin)
             throws NetworkDriverException;
 
+    /**
+     * Relays a received message to the client through its network origin. If the
+     * message is relayed from its handler without changes, the received bytes
+     * are sent without encoding the message again.
+     *
+     * @param client
+     *            client session
+     * @param message
+     *            received message
+     * @throws NetworkDriverException
+     *             if an error occurs
+     */
+    <T> void forwardMessage(IGatewayClientSession client, NetworkMessage<T> message) throws NetworkDriverException;
+
+    /**
+     * Sends a request message to the client through its network origin and returns
+     * the response. The remote channel must answer with
+     * {@link NetworkMessage#createResponse(Object)}.
+     *
+     * @param client
+     *            client session
+     * @param message
+     *            request message
+     * @param timeout
+     *            max time to wait for the response
+     * @param unit
+     *            timeout time unit
+     * @return future completed with the response message
+     */
+    <T, R> CompletableFuture<NetworkMessage<R>> request(IGatewayClientSession client, NetworkMessage<T> message,
+            long timeout, TimeUnit unit);
+
     XProperties getProperties(String propertyFileName) throws IOException;
 
     <T> T getPlugin(String pluginId, Class<T> pluginType);
@@ -48,4 +48,12 @@ public @interface GatewayMessageHandler {
      * @return network sources for this event
      */
     NetworkServiceSource[] sources() default {};
+
+    /**
+     * Defines where the handler is executed. By default the handler uses the
+     * execution defined by its service.
+     *
+     * @return handler execution
+     */
+    MessageExecution execution() default MessageExecution.DEFAULT;
 }
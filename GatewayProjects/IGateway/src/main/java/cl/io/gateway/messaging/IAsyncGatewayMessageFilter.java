@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.messaging;
+
+import java.util.concurrent.CompletionStage;
+
+import cl.io.gateway.IGatewayClientSession;
+import cl.io.gateway.network.NetworkMessage;
+
+/**
+ * Message filter that answers asynchronously, for filters that depend on a
+ * cache, a rate limit store or a database. The gateway continues with the next
+ * filters and the handler or the network driver when the returned stage
+ * completes, without blocking the network threads. The filters of the event
+ * are still applied one after another in priority order.
+ *
+ * An exceptional completion of the stage is handled like an exception of a
+ * synchronous filter: the message is rejected and
+ * {@link #onError(NetworkMessage, IGatewayClientSession, Throwable)} is
+ * called.
+ *
+ * @see IGatewayMessageFilter
+ * @author egacl
+ *
+ * @param <T>
+ *            Object type contained in the network message to be filtered
+ */
+public interface IAsyncGatewayMessageFilter<T> extends IGatewayMessageFilter<T> {
+
+    /**
+     * Asynchronous version of
+     * {@link #doFilterRequest(NetworkMessage, IGatewayClientSession)}.
+     *
+     * @param message
+     *            message to be filtered
+     * @param session
+     *            session that sent the message
+     * @return stage completed with true if the message meets the criteria of the
+     *         filter and false otherwise
+     * @throws Exception
+     *             if an error ocurrs
+     */
+    CompletionStage<Boolean> doFilterRequestAsync(final NetworkMessage<T> message,
+            final IGatewayClientSession session) throws Exception;
+
+    /**
+     * Asynchronous version of
+     * {@link #doFilterResponse(NetworkMessage, IGatewayClientSession)}.
+     *
+     * @param message
+     *            message to be filtered
+     * @param session
+     *            session that sent the message
+     * @return stage completed with true if the message meets the criteria of the
+     *         filter and false otherwise
+     * @throws Exception
+     *             if an error ocurrs
+     */
+    CompletionStage<Boolean> doFilterResponseAsync(final NetworkMessage<T> message,
+            final IGatewayClientSession session) throws Exception;
+
+    /**
+     * Waits for {@link #doFilterRequestAsync(NetworkMessage, IGatewayClientSession)},
+     * the gateway doesn't use it.
+     */
+    @Override
+    default boolean doFilterRequest(final NetworkMessage<T> message, final IGatewayClientSession session)
+            throws Exception {
+        return Boolean.TRUE.equals(this.doFilterRequestAsync(message, session).toCompletableFuture().get());
+    }
+
+    /**
+     * Waits for {@link #doFilterResponseAsync(NetworkMessage, IGatewayClientSession)},
+     * the gateway doesn't use it.
+     */
+    @Override
+    default boolean doFilterResponse(final NetworkMessage<T> message, final IGatewayClientSession session)
+            throws Exception {
+        return Boolean.TRUE.equals(this.doFilterResponseAsync(message, session).toCompletableFuture().get());
+    }
+}
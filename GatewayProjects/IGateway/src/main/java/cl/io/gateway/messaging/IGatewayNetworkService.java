@@ -15,6 +15,9 @@
  */
 package cl.io.gateway.messaging;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 import cl.io.gateway.IGatewayClientSession;
 import cl.io.gateway.auth.IAuthenticationStatusListener;
 import cl.io.gateway.exception.GatewayProcessException;
@@ -45,6 +48,22 @@ public interface IGatewayNetworkService {
     <T> void addMessageHandler(final String event, final IGatewayMessageHandler<T> handler)
             throws GatewayProcessException;
 
+    /**
+     * This method allows adding a handler for a particular event whose messages
+     * are decoded directly into the given type.
+     *
+     * @param event
+     *            event identifier
+     * @param messageType
+     *            object type contained in the network message
+     * @param handler
+     *            handler or listener
+     * @throws GatewayProcessException
+     *             if an error occurs
+     */
+    <T> void addMessageHandler(final String event, final Class<T> messageType,
+            final IGatewayMessageHandler<T> handler) throws GatewayProcessException;
+
     /**
      * This method allows removing a handler or listener for a particular event.
      *
@@ -83,6 +102,56 @@ public interface IGatewayNetworkService {
     <T> void sendNetworkMessage(final IGatewayClientSession session, final NetworkMessage<T> message,
             final IDeliveryStatusListener deliveryStatus) throws NetworkDriverException;
 
+    /**
+     * This method allows relaying a received message to an specific session. The
+     * message is filtered as any other outgoing message, and if it is not
+     * modified the received bytes are sent without encoding it again.
+     *
+     * @param session
+     *            session to sent the message
+     * @param message
+     *            received message
+     * @throws NetworkDriverException
+     *             if an error occurs
+     */
+    <T> void forwardNetworkMessage(final IGatewayClientSession session, final NetworkMessage<T> message)
+            throws NetworkDriverException;
+
+    /**
+     * This method allows relaying a received message to an specific session, see
+     * {@link #forwardNetworkMessage(IGatewayClientSession, NetworkMessage)}. A
+     * callback delivery is received to get notification when the message is sent
+     * over the network.
+     *
+     * @param session
+     *            session to sent the message
+     * @param message
+     *            received message
+     * @param deliveryStatus
+     *            delivery status listener.
+     * @throws NetworkDriverException
+     *             if an error occurs
+     */
+    <T> void forwardNetworkMessage(final IGatewayClientSession session, final NetworkMessage<T> message,
+            final IDeliveryStatusListener deliveryStatus) throws NetworkDriverException;
+
+    /**
+     * This method allows sending a request message to an specific session and
+     * getting its response. The message is filtered as any other outgoing message.
+     *
+     * @param session
+     *            session to sent the request
+     * @param message
+     *            request message
+     * @param timeout
+     *            max time to wait for the response
+     * @param unit
+     *            timeout time unit
+     * @return future completed with the response message
+     */
+    <T, R> CompletableFuture<NetworkMessage<R>> requestNetworkMessage(final IGatewayClientSession session,
+            final NetworkMessage<T> message, long timeout, TimeUnit unit);
+
     /**
      * This method allows you to add a listener to get status change updates on
      * sessions connected to the gateway.
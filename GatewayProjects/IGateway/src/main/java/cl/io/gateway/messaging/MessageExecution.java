@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 GetSoftware (http://www.getsoftware.cl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cl.io.gateway.messaging;
+
+/**
+ * Enumeration of the ways a gateway message handler can be executed. Handlers
+ * that block (database calls, remote services, etc.) must not run inline, as
+ * they would stall every connection served by the same network thread.
+ *
+ * @author egacl
+ *
+ */
+public enum MessageExecution {
+    /**
+     * the handler uses the execution of its service
+     */
+    DEFAULT,
+    /**
+     * the handler runs in the network thread that received the message
+     */
+    INLINE,
+    /**
+     * the handler runs in the bounded thread pool of the gateway
+     */
+    POOL,
+    /**
+     * the handler runs in a new virtual thread per message, if the java runtime
+     * doesn't support virtual threads the pool is used
+     */
+    VIRTUAL;
+}
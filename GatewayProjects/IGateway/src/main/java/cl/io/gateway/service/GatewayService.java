@@ -22,6 +22,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 import cl.io.gateway.messaging.GatewayMessageHandler;
+import cl.io.gateway.messaging.MessageExecution;
 
 /**
  * Annotation interface representing a gateway service. A service is a high
@@ -44,4 +45,12 @@ public @interface GatewayService {
      * @return service id
      */
     String value();
+
+    /**
+     * Defines where the message handlers of the service are executed, a handler
+     * can define its own execution.
+     *
+     * @return execution of the service message handlers
+     */
+    MessageExecution execution() default MessageExecution.INLINE;
 }